@@ -0,0 +1,39 @@
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Assigns a waiting rider to the car the dispatch policy picks, then takes them back off
+ * it, so every call dispatches into the same building.
+ */
+public class DispatchWorkload extends SimulationWorkload {
+
+    private static final int POOL_SIZE = 1024;
+
+    private final Rider[] waitingRiders = new Rider[POOL_SIZE];
+    private int nextRider;
+
+    @Override
+    public void setUp(final int floors, final int cars, final int ridersInFlight, final
+            String dispatchPolicy) throws ReflectiveOperationException, InterruptedException {
+
+        setUpSimulation(floors, cars, dispatchPolicy);
+        for (int i = 0; i < ridersInFlight; i++) {
+            boardNewRider(this.cars.get(i % cars));
+        }
+
+        for (int i = 0; i < POOL_SIZE; i++) {
+            int startFloor = randomFloor();
+            waitingRiders[i] = new Rider(simulation.getRiderStore(), startFloor,
+                    randomFloorOtherThan(startFloor));
+        }
+    }
+
+    @Override
+    public void run(final Blackhole bh) {
+
+        Rider r = waitingRiders[nextRider++ & (POOL_SIZE - 1)];
+        Elevator e = simulation.getDispatchPolicy().chooseCar(simulation, r);
+        e.acceptRiderRequest(r);
+        bh.consume(e);
+        ((ClosestAcceptElevator) e).withdrawRiderRequest(r);
+    }
+}
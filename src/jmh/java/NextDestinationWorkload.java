@@ -0,0 +1,34 @@
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Picks the next floor for a car carrying ridersInFlight riders, from each
+ * floor of a sweep of the building, alternately going up and down.
+ */
+public class NextDestinationWorkload extends SimulationWorkload {
+
+    private ClosestAcceptElevator car;
+    private Sweep sweep;
+    private boolean goingUp;
+
+    @Override
+    public void setUp(final int floors, final int cars, final int ridersInFlight, final
+            String dispatchPolicy) throws InterruptedException {
+
+        setUpSimulation(floors, cars);
+        this.car = this.cars.get(0);
+        this.sweep = new Sweep(floors);
+
+        for (int i = 0; i < ridersInFlight; i++) {
+            boardNewRider(car);
+        }
+    }
+
+    @Override
+    public void run(final Blackhole bh) {
+
+        car.setPosition(sweep.next(), goingUp ? Elevator.Direction.UP : Elevator.Direction.DOWN);
+        goingUp = !goingUp;
+
+        bh.consume(car.figureOutNextDestination());
+    }
+}
@@ -0,0 +1,22 @@
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Builds a random rider the way a simulation does, and releases them again
+ */
+public class RiderGenerationWorkload extends SimulationWorkload {
+
+    @Override
+    public void setUp(final int floors, final int cars, final int ridersInFlight, final
+            String dispatchPolicy) throws InterruptedException {
+
+        setUpSimulation(floors, cars);
+    }
+
+    @Override
+    public void run(final Blackhole bh) {
+
+        Rider r = simulation.manufactureRandomRider();
+        bh.consume(r.riderId);
+        r.release();
+    }
+}
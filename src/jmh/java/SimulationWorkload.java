@@ -0,0 +1,98 @@
+import benchmarks.Workload;
+
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Shared set-up for the benchmark workloads: a simulation that isn't
+ * running, with its elevators built and spread around the building.
+ */
+public abstract class SimulationWorkload implements Workload {
+
+    private static final Elevator.Direction[] DIRECTIONS = {Elevator.Direction.UP,
+            Elevator.Direction.DOWN, Elevator.Direction.NOT_MOVING};
+
+    // Seeded, so every fork benchmarks the same building
+    protected final Random random = new Random(42);
+
+    protected BuildingSimulation simulation;
+    protected List<ClosestAcceptElevator> cars;
+    protected int floors;
+
+    protected void setUpSimulation(final int floors, final int numCars) throws
+            InterruptedException {
+
+        this.floors = floors;
+        simulation = new BuildingSimulation(numCars, 0, BuildingSimulation
+                .DEFAULT_TIMEOUT_SECONDS, floors);
+        cars = simulation.buildElevators();
+
+        for (ClosestAcceptElevator car : cars) {
+            car.setPosition(randomFloor(), DIRECTIONS[random.nextInt(DIRECTIONS.length)]);
+            simulation.getElevatorIndex().update(car);
+        }
+    }
+
+    /**
+     * Sets up the simulation as above, assigning riders with the given policy
+     *
+     * @param dispatchPolicy the class name of a DispatchPolicy with a no-argument constructor
+     */
+    protected void setUpSimulation(final int floors, final int numCars, final String
+            dispatchPolicy) throws ReflectiveOperationException, InterruptedException {
+
+        setUpSimulation(floors, numCars);
+        simulation.setDispatchPolicy(Class.forName(dispatchPolicy).asSubclass(DispatchPolicy
+                .class).getDeclaredConstructor().newInstance());
+    }
+
+    protected int randomFloor() {
+        return random.nextInt(floors) + 1;
+    }
+
+    /**
+     * A random floor other than the given one
+     */
+    protected int randomFloorOtherThan(final int floor) {
+
+        int other = random.nextInt(floors - 1) + 1;
+        return other >= floor ? other + 1 : other;
+    }
+
+    /**
+     * Puts a new rider in the given car, the same way boarding at their
+     * start floor would
+     */
+    protected Rider boardNewRider(final ClosestAcceptElevator car) {
+
+        int startFloor = randomFloor();
+        Rider r = new Rider(simulation.getRiderStore(), startFloor, randomFloorOtherThan
+                (startFloor));
+        car.acceptRiderRequest(r);
+        car.riderBoarded(r);
+        return r;
+    }
+
+    /**
+     * The floors of a car sweeping up and down the building, one per call
+     */
+    protected static class Sweep {
+
+        private final int floors;
+        private int floor = 1;
+        private int step = 1;
+
+        Sweep(final int floors) {
+            this.floors = floors;
+        }
+
+        int next() {
+
+            if (floor + step < 1 || floor + step > floors) {
+                step = -step;
+            }
+            floor += step;
+            return floor;
+        }
+    }
+}
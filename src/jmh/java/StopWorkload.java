@@ -0,0 +1,43 @@
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Stops a car at each floor in turn as it sweeps the building: riders for
+ * that floor get off, and riders waiting there get on. Before each stop, the
+ * car is topped back up to ridersInFlight riders with new riders waiting on
+ * the floor, so the cost of building them is part of each call.
+ */
+public class StopWorkload extends SimulationWorkload {
+
+    private ClosestAcceptElevator car;
+    private Sweep sweep;
+    private int ridersInFlight;
+
+    @Override
+    public void setUp(final int floors, final int cars, final int ridersInFlight, final
+            String dispatchPolicy) throws InterruptedException {
+
+        setUpSimulation(floors, cars);
+        this.car = this.cars.get(0);
+        this.sweep = new Sweep(floors);
+        this.ridersInFlight = ridersInFlight;
+
+        for (int i = 0; i < ridersInFlight; i++) {
+            boardNewRider(car);
+        }
+    }
+
+    @Override
+    public void run(final Blackhole bh) {
+
+        int floor = sweep.next();
+        car.setPosition(floor, car.travelDirection);
+
+        while (car.getNumberOfRiders() < ridersInFlight) {
+            Rider r = new Rider(simulation.getRiderStore(), floor, randomFloorOtherThan(floor));
+            car.acceptRiderRequest(r);
+            simulation.getHallCalls().enqueue(r);
+        }
+
+        bh.consume(car.arriveAtFloor(floor));
+    }
+}
@@ -0,0 +1,93 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks for the hot paths of the simulation: dispatching a rider,
+ * stopping at a floor, picking the next destination and building riders.
+ * <p/>
+ * Every benchmark runs over each combination of floor count, car count and
+ * riders in flight, so a change that makes one of them scale worse shows up
+ * as a regression at the larger sizes. It also runs under each dispatch
+ * policy, which is what the dispatch benchmark measures.
+ * <p/>
+ * Usage: mvn -P jmh package -DskipTests && java -jar target/benchmarks.jar
+ * <p/>
+ * JMH options go after the jar, e.g. -p cars=64 to run a single size, or
+ * -p policy=EtaDispatchPolicy to run a single policy.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ElevatorBenchmarks {
+
+    @Param({"20", "100"})
+    int floors;
+
+    @Param({"4", "64"})
+    int cars;
+
+    @Param({"16", "1024"})
+    int ridersInFlight;
+
+    @Param({"ClosestAcceptPolicy", "EtaDispatchPolicy", "DestinationDispatchPolicy"})
+    String policy;
+
+    private Workload dispatch;
+    private Workload stop;
+    private Workload nextDestination;
+    private Workload riderGeneration;
+
+    @Setup
+    public void setUp() throws Exception {
+
+        dispatch = load("DispatchWorkload");
+        stop = load("StopWorkload");
+        nextDestination = load("NextDestinationWorkload");
+        riderGeneration = load("RiderGenerationWorkload");
+    }
+
+    @Benchmark
+    public void dispatch(Blackhole bh) {
+        dispatch.run(bh);
+    }
+
+    @Benchmark
+    public void arriveAtFloor(Blackhole bh) {
+        stop.run(bh);
+    }
+
+    @Benchmark
+    public void figureOutNextDestination(Blackhole bh) {
+        nextDestination.run(bh);
+    }
+
+    @Benchmark
+    public void manufactureRandomRider(Blackhole bh) {
+        riderGeneration.run(bh);
+    }
+
+    private Workload load(final String className) throws Exception {
+
+        Workload workload = Class.forName(className).asSubclass(Workload.class)
+                .getDeclaredConstructor().newInstance();
+        workload.setUp(floors, cars, ridersInFlight, policy);
+        return workload;
+    }
+}
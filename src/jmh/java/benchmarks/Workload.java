@@ -0,0 +1,36 @@
+package benchmarks;
+
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * One operation of the simulation, set up for a benchmark.
+ * <p/>
+ * JMH won't generate code for benchmarks in the default package, and code in
+ * a named package can't refer to the simulation's classes, which all live in
+ * the default package. So ElevatorBenchmarks only holds the JMH side, and
+ * each operation is a default-package class implementing this interface,
+ * loaded by name.
+ */
+public interface Workload {
+
+    /**
+     * Builds the state the operation runs against
+     *
+     * @param floors
+     * @param cars
+     * @param ridersInFlight riders assigned to, or riding in, the cars
+     * @param dispatchPolicy the class name of the DispatchPolicy that assigns
+     *                       riders to cars, for the operations that do
+     */
+    public void setUp(int floors, int cars, int ridersInFlight, String dispatchPolicy) throws
+            Exception;
+
+    /**
+     * Performs the operation once, leaving the state as it found it, or
+     * close enough that the next call costs the same
+     *
+     * @param bh
+     */
+    public void run(Blackhole bh);
+
+}
@@ -1,11 +1,18 @@
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
-import java.util.Random;
+import java.util.SplittableRandom;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
-import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
 import java.util.concurrent.TimeUnit;
+import java.util.function.IntConsumer;
+import java.util.stream.IntStream;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.logging.SimpleFormatter;
@@ -15,21 +22,20 @@ import java.util.logging.StreamHandler;
  * Building represents a building with a set of elevators, along with people
  * who make trips on those elevators.
  * <p/>
- * Usage: There is only one simulation running at a time. This is limiting, but
- * it allows for the use of static variables instead of having to pass around an
- * instance of BuildingSimulation.
- * <p/>
- * TODO: Allow for multiple BuildingSimulations to be running at once without
- * interfering with one another
+ * Usage: Every simulation keeps its own state, and the elevators,
+ * dispatcher and schedulers it creates are handed the instance they belong to.
+ * Any number of simulations can therefore run at once, in the same JVM,
+ * without interfering with one another.
  */
 public class BuildingSimulation {
 
     final static Logger logger = Logger.getLogger("BuildingSimulation.class");
 
-    SimpleFormatter fmt = new SimpleFormatter();
-    StreamHandler sh = new StreamHandler(System.out, fmt);
+    // Registered once for the class. A handler per simulation would write
+    // every line once for each simulation that has ever been built.
+    final static StreamHandler sh = new StreamHandler(System.out, new SimpleFormatter());
 
-    {
+    static {
         logger.addHandler(sh);
         logger.setLevel(Level.INFO);
     }
@@ -42,19 +48,84 @@ public class BuildingSimulation {
     final static int DEFAULT_TIMEOUT_SECONDS = 30;
     final int MILLISECONDS_PER_SECOND = 1000;
 
-    static int NUM_FLOORS;
-    static int NUM_ELEVATORS;
-    static int TIMEOUT_SECONDS;
+    // How many riders manufactureRandomRiders() draws from each split stream
+    static final int RIDERS_PER_STREAM = 4096;
+
+    private final int numFloors;
+    private final int numElevators;
+    private final int timeoutSeconds;
 
     // The wall-clock time, in milliseconds, that the job was started
-    private static volatile long startTime;
-    private static volatile long simulationDuration;
+    private volatile long startTime;
+    private final long simulationDuration;
+
+    private volatile List<Elevator> elevators = new ArrayList<>();
+
+    // The elevators by direction and floor, for finding the closest one quickly
+    private volatile ElevatorIndex elevatorIndex;
+
+    // Every rider in the building and the state of their trip. Delivered
+    // riders are dropped from it and have their slot in riderStore released,
+    // so a long run only holds on to the riders still in the building.
+    private final RiderRegistry riderRegistry;
+
+    // Holds the riders this simulation creates
+    private final RiderStore riderStore = new RiderStore();
+
+    private final List<CompletedRiderListener> completedRiderListeners = new
+            CopyOnWriteArrayList<>();
+
+    // Latencies of every rider in the building, across all elevators
+    private final LatencyHistogram waitTimes = new LatencyHistogram();
+    private final LatencyHistogram tripTimes = new LatencyHistogram();
+
+    private volatile Dispatcher dispatcher;
+
+    // Which car gets each rider, and how the cars move between their stops
+    private volatile DispatchPolicy dispatchPolicy = new ClosestAcceptPolicy();
+    private volatile CarMotionStrategy carMotionStrategy = SweepMotion.CIRCULAR_LOOK;
+
+    // Drives the virtual clock during a discrete-event run. Null when the simulation
+    // runs in real time.
+    private volatile EventScheduler eventScheduler;
+
+    // Moves each car of the current discrete-event run, by car id
+    private volatile List<CarStep> carSteps = Collections.emptyList();
+
+    // Every random stream of the simulation is split off this seed, so a
+    // simulation built with the same seed and riders repeats itself exactly
+    private final long seed;
+
+    // Guards riderRandom and runRandom
+    private final Object randomLock = new Object();
 
-    public static ArrayList<Elevator> elevators;
+    // Draws the floors of the riders built by manufactureRandomRider()
+    private SplittableRandom riderRandom;
 
+    // Each real-time run splits its own streams off this one
+    private SplittableRandom runRandom;
 
-    private static volatile List<Rider> activeRiders;
-    public static volatile List<Rider> unassignedRiders;
+    // Source of every random choice the dispatcher makes during a run. Only
+    // the thread dispatching touches it.
+    private volatile SplittableRandom dispatchRandom;
+
+    // Handed to a RiderSource that has no seed of its own
+    private final SplittableRandom sourceRandom;
+
+    // Where rider and car events go. Null when the run isn't being traced.
+    private volatile EventTracer eventTracer;
+
+    // Where every rider's trip is written as they ask for an elevator. Null
+    // when the workload isn't being recorded.
+    private volatile WorkloadRecorder workloadRecorder;
+
+    // Where counters and phase timers are recorded. Null when the run isn't
+    // being measured.
+    private volatile SimulationMetrics metrics;
+
+    // Riders who arrive while the simulation runs. Null if every rider is
+    // known up front.
+    private RiderSource riderSource;
 
     //TODO: Make this constructors more elegant, likely with a builder pattern
     public BuildingSimulation(final int NUM_ELEVATORS, final int NUM_RIDERS,
@@ -76,60 +147,369 @@ public class BuildingSimulation {
     public BuildingSimulation(final int NUM_ELEVATORS, List<Rider> riders, int TIMEOUT_SECONDS,
                               final int NUM_FLOORS) throws InterruptedException {
 
-        BuildingSimulation.simulationDuration = TIMEOUT_SECONDS * MILLISECONDS_PER_SECOND;
-        BuildingSimulation.NUM_FLOORS = NUM_FLOORS;
-        BuildingSimulation.TIMEOUT_SECONDS = TIMEOUT_SECONDS;
-        BuildingSimulation.NUM_ELEVATORS = NUM_ELEVATORS;
+        this(NUM_ELEVATORS, riders, TIMEOUT_SECONDS, NUM_FLOORS, newSeed());
+    }
+
+    /**
+     * Same as above, with every random choice of the simulation drawn from
+     * streams split off the given seed
+     *
+     * @param NUM_ELEVATORS
+     * @param riders
+     * @param TIMEOUT_SECONDS
+     * @param NUM_FLOORS
+     * @param seed
+     * @throws InterruptedException
+     */
+    public BuildingSimulation(final int NUM_ELEVATORS, List<Rider> riders, int TIMEOUT_SECONDS,
+                              final int NUM_FLOORS, final long seed) throws InterruptedException {
 
         if (NUM_ELEVATORS < 0 || TIMEOUT_SECONDS < 0 || NUM_FLOORS < 0 || riders == null) {
             throw new IllegalArgumentException("Invalid arguments for simulation");
         }
 
-        this.activeRiders = Collections.synchronizedList(riders);
+        this.simulationDuration = TIMEOUT_SECONDS * MILLISECONDS_PER_SECOND;
+        this.numFloors = NUM_FLOORS;
+        this.timeoutSeconds = TIMEOUT_SECONDS;
+        this.numElevators = NUM_ELEVATORS;
 
-        // All active riders are initially unassigned. We will go off of that list
-        BuildingSimulation.unassignedRiders = Collections.synchronizedList(BuildingSimulation
-                .getActiveRiders());
+        this.seed = seed;
+        SplittableRandom root = new SplittableRandom(seed);
+        this.riderRandom = root.split();
+        this.runRandom = root.split();
+        this.dispatchRandom = runRandom.split();
+        this.sourceRandom = root.split();
+
+        this.riderRegistry = new RiderRegistry(NUM_FLOORS);
+        for (Rider r : riders) {
+            riderRegistry.arrive(r);
+        }
 
+        // All active riders are initially unassigned
+        riderRegistry.getUnassignedRiders().addAll(riders);
     }
 
     public BuildingSimulation(final int NUM_ELEVATORS, final int NUM_RIDERS, int TIMEOUT_SECONDS,
                               final int NUM_FLOORS) throws InterruptedException {
 
-        BuildingSimulation.simulationDuration = TIMEOUT_SECONDS * MILLISECONDS_PER_SECOND;
-        BuildingSimulation.NUM_FLOORS = NUM_FLOORS;
-        BuildingSimulation.TIMEOUT_SECONDS = TIMEOUT_SECONDS;
-        BuildingSimulation.NUM_ELEVATORS = NUM_ELEVATORS;
+        this(NUM_ELEVATORS, NUM_RIDERS, TIMEOUT_SECONDS, NUM_FLOORS, newSeed());
+    }
+
+    /**
+     * Builds a simulation with the given number of random riders. The same
+     * seed always gives the same riders.
+     *
+     * @param NUM_ELEVATORS
+     * @param NUM_RIDERS
+     * @param TIMEOUT_SECONDS
+     * @param NUM_FLOORS
+     * @param seed
+     * @throws InterruptedException
+     */
+    public BuildingSimulation(final int NUM_ELEVATORS, final int NUM_RIDERS, int TIMEOUT_SECONDS,
+                              final int NUM_FLOORS, final long seed) throws InterruptedException {
+
+        this(NUM_ELEVATORS, new ArrayList<Rider>(), TIMEOUT_SECONDS, NUM_FLOORS, seed);
 
+        if (NUM_RIDERS < 0) {
+            throw new IllegalArgumentException("Invalid arguments for simulation");
+        }
 
         // Build a sample set of users in the main
-        activeRiders = Collections.synchronizedList(new ArrayList<Rider>(NUM_RIDERS));
-        for (int i = 0; i < NUM_RIDERS; i++) {
-            getActiveRiders().add(BuildingSimulation.manufactureRandomRider());
+        List<Rider> riders = manufactureRandomRiders(NUM_RIDERS);
+        for (Rider r : riders) {
+            riderRegistry.arrive(r);
         }
 
-        // All active riders are initially unassigned. We will go off of that list
-        BuildingSimulation.unassignedRiders = Collections.synchronizedList(BuildingSimulation
-                .getActiveRiders());
+        // All active riders are initially unassigned
+        riderRegistry.getUnassignedRiders().addAll(riders);
+    }
+
+    /**
+     * This constructor builds riders from the given source while the
+     * simulation runs, each one arriving at the time the source gives for them.
+     * Only a single run can read the source.
+     *
+     * @param NUM_ELEVATORS
+     * @param riderSource
+     * @param TIMEOUT_SECONDS
+     * @param NUM_FLOORS
+     * @throws InterruptedException
+     */
+    public BuildingSimulation(final int NUM_ELEVATORS, final RiderSource riderSource,
+                              int TIMEOUT_SECONDS, final int NUM_FLOORS) throws
+            InterruptedException {
+
+        this(NUM_ELEVATORS, riderSource, TIMEOUT_SECONDS, NUM_FLOORS, newSeed());
+    }
+
+    /**
+     * Same as above, with every random choice of the simulation drawn from
+     * streams split off the given seed
+     *
+     * @param NUM_ELEVATORS
+     * @param riderSource
+     * @param TIMEOUT_SECONDS
+     * @param NUM_FLOORS
+     * @param seed
+     * @throws InterruptedException
+     */
+    public BuildingSimulation(final int NUM_ELEVATORS, final RiderSource riderSource,
+                              int TIMEOUT_SECONDS, final int NUM_FLOORS, final long seed) throws
+            InterruptedException {
+
+        this(NUM_ELEVATORS, new ArrayList<Rider>(), TIMEOUT_SECONDS, NUM_FLOORS, seed);
+
+        if (riderSource == null) {
+            throw new IllegalArgumentException("Invalid arguments for simulation");
+        }
+        this.riderSource = riderSource;
+        riderSource.seedFrom(sourceRandom);
+    }
+
+    /**
+     * A seed for a simulation that wasn't given one. Logged at the start of
+     * every run, so any run can be repeated.
+     *
+     * @return
+     */
+    private static long newSeed() {
+        return new SplittableRandom().nextLong();
+    }
+
+    /**
+     * The seed every random stream of this simulation is split off
+     *
+     * @return
+     */
+    public long getSeed() {
+        return seed;
+    }
+
+    public int getNumFloors() {
+        return numFloors;
+    }
+
+    public int getNumElevators() {
+        return numElevators;
+    }
+
+    public int getTimeoutSeconds() {
+        return timeoutSeconds;
+    }
+
+    /**
+     * The elevators of the current (or most recent) run
+     *
+     * @return
+     */
+    public List<Elevator> getElevators() {
+        return elevators;
+    }
+
+    public ElevatorIndex getElevatorIndex() {
+        return elevatorIndex;
+    }
+
+    /**
+     * Every instance of a trip that hasn't been delivered yet
+     *
+     * @return
+     */
+    public Collection<Rider> getActiveRiders() {
+        return riderRegistry.getActiveRiders();
+    }
+
+    /**
+     * Every rider in the building, and the state of their trip
+     *
+     * @return
+     */
+    public RiderRegistry getRiderRegistry() {
+        return riderRegistry;
+    }
+
+    /**
+     * Where the riders built by manufactureRandomRider() are stored
+     *
+     * @return
+     */
+    public RiderStore getRiderStore() {
+        return riderStore;
+    }
+
+    /**
+     * How long riders waited to board an elevator, across the building.
+     * Safe to read while the simulation is running.
+     *
+     * @return
+     */
+    public LatencyHistogram getWaitTimes() {
+        return waitTimes;
+    }
+
+    /**
+     * How long riders took to reach their destination from the moment they
+     * asked for an elevator, across the building. Safe to read while the
+     * simulation is running.
+     *
+     * @return
+     */
+    public LatencyHistogram getTripTimes() {
+        return tripTimes;
     }
 
     /**
-     * Every instance of a trip
+     * Wait and trip time percentiles for the building
      *
      * @return
      */
-    public static List<Rider> getActiveRiders() {
-        return activeRiders;
+    public String getLatencySummary() {
+        return "Wait time: " + waitTimes.getSummary() + ". Trip time: " + tripTimes.getSummary();
+    }
+
+    public DispatchPolicy getDispatchPolicy() {
+        return dispatchPolicy;
+    }
+
+    /**
+     * Chooses how riders are assigned to cars in the runs that follow.
+     * ClosestAcceptPolicy is used if none is set.
+     *
+     * @param policy
+     */
+    public void setDispatchPolicy(final DispatchPolicy policy) {
+
+        if (policy == null) {
+            throw new IllegalArgumentException("A simulation needs a dispatch policy");
+        }
+        this.dispatchPolicy = policy;
+    }
+
+    public CarMotionStrategy getCarMotionStrategy() {
+        return carMotionStrategy;
+    }
+
+    /**
+     * Chooses how the cars of the runs that follow move between their stops.
+     * SweepMotion.CIRCULAR_LOOK is used if none is set.
+     *
+     * @param strategy
+     */
+    public void setCarMotionStrategy(final CarMotionStrategy strategy) {
+
+        if (strategy == null) {
+            throw new IllegalArgumentException("A simulation needs a car motion strategy");
+        }
+        this.carMotionStrategy = strategy;
+    }
+
+    /**
+     * Records every rider and car event of the runs that follow in the given
+     * tracer. The tracer is still the caller's to start and close.
+     *
+     * @param tracer the tracer to use, or null to stop tracing
+     */
+    public void setEventTracer(final EventTracer tracer) {
+        this.eventTracer = tracer;
+    }
+
+    /**
+     * Writes the trip of every rider of the runs that follow to the given
+     * recorder, as they ask for an elevator. The recorder is still the
+     * caller's to close.
+     *
+     * @param recorder the recorder to use, or null to stop recording
+     */
+    public void setWorkloadRecorder(final WorkloadRecorder recorder) {
+        this.workloadRecorder = recorder;
+    }
+
+    /**
+     * Records counters and phase timings of the runs that follow in the given
+     * metrics. The metrics are still the caller's to publish and close.
+     *
+     * @param metrics the metrics to use, or null to stop measuring
+     */
+    public void setMetrics(final SimulationMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * The metrics to record into, if the run is being measured
+     *
+     * @return the metrics, or null if there are none or they're switched off
+     */
+    SimulationMetrics getMetrics() {
+        return SimulationMetrics.ENABLED ? metrics : null;
+    }
+
+    /**
+     * Records an event at the current simulation time, if the run is being traced
+     *
+     * @param type
+     * @param carId
+     * @param riderId
+     * @param floor
+     */
+    void trace(final EventTracer.Type type, final int carId, final int riderId,
+               final int floor) {
+
+        EventTracer tracer = this.eventTracer;
+        if (tracer != null) {
+            tracer.record(type, currentTimeMillis(), carId, riderId, floor);
+        }
+    }
+
+    /**
+     * Registers a listener to be told about every rider this simulation delivers
+     *
+     * @param listener
+     */
+    public void addCompletedRiderListener(final CompletedRiderListener listener) {
+        completedRiderListeners.add(listener);
+    }
+
+    /**
+     * Retires a rider who has been delivered to their destination: the
+     * listeners are told, and their slot is released.
+     *
+     * @param r
+     */
+    void riderDelivered(final Rider r) {
+
+        for (CompletedRiderListener listener : completedRiderListeners) {
+            listener.riderCompleted(r);
+        }
+        r.release();
     }
 
     /**
      * Every instance of a trip that hasn't been
-     * assigned an elevator
+     * assigned an elevator, in the order they asked for one
      *
      * @return
      */
-    public static List<Rider> getUnassignedRiders() {
-        return unassignedRiders;
+    public BlockingQueue<Rider> getUnassignedRiders() {
+        return riderRegistry.getUnassignedRiders();
+    }
+
+    /**
+     * The dispatcher of the current (or most recent) run
+     *
+     * @return
+     */
+    public Dispatcher getDispatcher() {
+        return dispatcher;
+    }
+
+    /**
+     * Riders who are waiting at their start floor, indexed by floor and direction
+     *
+     * @return
+     */
+    public HallCallIndex getHallCalls() {
+        return riderRegistry.getHallCalls();
     }
 
     /**
@@ -137,97 +517,693 @@ public class BuildingSimulation {
      *
      * @return
      */
-    public static Rider manufactureRandomRider() {
-        Random rand = new Random();
-        int startFloor = rand.nextInt(BuildingSimulation.NUM_FLOORS) + 1;
+    public Rider manufactureRandomRider() {
+
+        synchronized (randomLock) {
+            int startFloor = randomStartFloor(riderRandom);
+            return new Rider(riderStore, startFloor, randomDestinationFloor(riderRandom,
+                    startFloor));
+        }
+    }
+
+    /**
+     * Creates a batch of test riders. The floors are drawn in parallel, in
+     * chunks that each get their own stream split off this simulation's, so
+     * the riders are the same however many cores draw them.
+     *
+     * @param numRiders
+     * @return the riders, in the order they were drawn
+     */
+    public List<Rider> manufactureRandomRiders(final int numRiders) {
+
+        final int numChunks = (numRiders + RIDERS_PER_STREAM - 1) / RIDERS_PER_STREAM;
+        final SplittableRandom[] streams = new SplittableRandom[numChunks];
+        synchronized (randomLock) {
+            for (int chunk = 0; chunk < numChunks; chunk++) {
+                streams[chunk] = riderRandom.split();
+            }
+        }
+
+        // Start and destination floor of each rider, side by side
+        final int[] floors = new int[2 * numRiders];
+        IntStream.range(0, numChunks).parallel().forEach(new IntConsumer() {
+            @Override
+            public void accept(final int chunk) {
+
+                SplittableRandom random = streams[chunk];
+                int end = Math.min(numRiders, (chunk + 1) * RIDERS_PER_STREAM);
+                for (int i = chunk * RIDERS_PER_STREAM; i < end; i++) {
+                    floors[2 * i] = randomStartFloor(random);
+                    floors[2 * i + 1] = randomDestinationFloor(random, floors[2 * i]);
+                }
+            }
+        });
+
+        // Slots are handed out one at a time, so the riders are stored in order
+        List<Rider> riders = new ArrayList<>(numRiders);
+        for (int i = 0; i < numRiders; i++) {
+            riders.add(new Rider(riderStore, floors[2 * i], floors[2 * i + 1]));
+        }
+        return riders;
+    }
+
+    private int randomStartFloor(final SplittableRandom random) {
+        return random.nextInt(numFloors) + 1;
+    }
+
+    /**
+     * Any floor but the start floor, each as likely as the others
+     */
+    private int randomDestinationFloor(final SplittableRandom random, final int startFloor) {
+
+        int endFloor = random.nextInt(numFloors - 1) + 1;
+        return endFloor < startFloor ? endFloor : endFloor + 1;
+    }
+
+    /**
+     * The current simulation time, in milliseconds. This is the wall clock
+     * for a real-time run and the virtual clock for a discrete-event run.
+     *
+     * @return
+     */
+    public long currentTimeMillis() {
+
+        EventScheduler scheduler = this.eventScheduler;
+        return scheduler == null ? System.currentTimeMillis() : scheduler.now();
+    }
+
+    /**
+     * The stream the dispatcher of the current run draws its random choices
+     * from. Not thread-safe: only the thread dispatching may use it.
+     *
+     * @return
+     */
+    SplittableRandom getDispatchRandom() {
+        return dispatchRandom;
+    }
+
+    /**
+     * Reseeds every random stream of the simulation from its own next value,
+     * and returns the new seeds: rider, run and dispatch stream, in that
+     * order. A SplittableRandom can't be saved as it is, but a stream that
+     * was just reseeded is fully described by its seed.
+     *
+     * @return
+     */
+    long[] rekeyRandomStreams() {
 
-        rand = new Random();
-        int endFloor = rand.nextInt(BuildingSimulation.NUM_FLOORS) + 1;
-        while (endFloor == startFloor) {
-            rand = new Random();
-            endFloor = rand.nextInt(BuildingSimulation.NUM_FLOORS) + 1;
+        synchronized (randomLock) {
+            long[] keys = {riderRandom.nextLong(), runRandom.nextLong(), dispatchRandom
+                    .nextLong()};
+            restoreRandomStreams(keys);
+            return keys;
         }
+    }
 
-        Rider rider = new Rider(startFloor, endFloor);
-        logger.info("Rider " + rider.riderId + " starting at floor " + rider.startFloor
-                + " going to " + endFloor);
+    /**
+     * Seeds every random stream of the simulation with the seeds returned by
+     * rekeyRandomStreams()
+     *
+     * @param keys
+     */
+    void restoreRandomStreams(final long[] keys) {
 
-        return rider;
+        synchronized (randomLock) {
+            riderRandom = new SplittableRandom(keys[0]);
+            runRandom = new SplittableRandom(keys[1]);
+            dispatchRandom = new SplittableRandom(keys[2]);
+        }
     }
 
-    public static boolean simulationStillRunning() {
 
-        long currentTime = System.currentTimeMillis();
-        long difference = currentTime - BuildingSimulation.startTime;
-        boolean shouldEnd = difference > BuildingSimulation.simulationDuration;
+    public boolean simulationStillRunning() {
+
+        long currentTime = currentTimeMillis();
+        long difference = currentTime - this.startTime;
+        boolean shouldEnd = difference > this.simulationDuration;
 
         return (!shouldEnd);
     }
 
     /**
-     * Utility method for add new riders while a simulation is running.
-     * Great for testing.
+     * How much simulation time is left before the run ends, in milliseconds
      *
-     * TODO: Rearchitect runSimulation to be async (i.e. return after call)
-     * so that we can add more riders w/o having to go into a new thread.
+     * @return
+     */
+    public long getRemainingMillis() {
+
+        long endTime = this.startTime + this.simulationDuration;
+        return Math.max(0, endTime - currentTimeMillis());
+    }
+
+    /**
+     * Riders built before the run started are treated as having asked for an
+     * elevator the moment it starts.
+     */
+    private void requestPendingRidersAt(final long time) {
+
+        for (Rider r : riderRegistry.getUnassignedRiders()) {
+            stampRequest(r, time);
+        }
+    }
+
+    /**
+     * Brings a new rider into the building while the simulation is running.
+     * They start waiting at their start floor, but it's up to the caller to
+     * get them assigned an elevator.
      *
-     * @param numRiders
+     * @param r
      */
-    public static void addNewRider(int numRiders) {
+    private void arrive(final Rider r) {
 
-        for (int i = 0; i < numRiders; i++) {
-            logger.info("Adding rider " + i);
-            Rider r = manufactureRandomRider();
-            getActiveRiders().add(r);
-            getUnassignedRiders().add(r);
+        stampRequest(r, currentTimeMillis());
+        riderRegistry.arrive(r);
+    }
+
+    /**
+     * Notes the time a rider asked for an elevator, and traces and records the request
+     */
+    private void stampRequest(final Rider r, final long time) {
+
+        r.setRequestTime(time);
+        trace(EventTracer.Type.RIDER_REQUESTED, EventTracer.NONE, r.riderId, r.getStartFloor());
+
+        SimulationMetrics metrics = getMetrics();
+        if (metrics != null) {
+            metrics.riderRequested();
         }
 
-        try {
-            Thread.sleep(50);
-        } catch (InterruptedException e) {
-            e.printStackTrace();
+        WorkloadRecorder recorder = this.workloadRecorder;
+        if (recorder != null) {
+            try {
+                recorder.record(time - startTime, r.getStartFloor(), r.getDestinationFloor());
+            } catch (IOException e) {
+                logger.warning("Stopped recording the workload: " + e);
+                this.workloadRecorder = null;
+            }
         }
     }
 
     /**
-     * Runs the simulation, once it's been constructed.
+     * Brings a rider into the building during a real-time run and queues them
+     * for the dispatcher. Safe to call from any number of threads at once.
+     *
+     * @param r
+     */
+    void submit(final Rider r) {
+
+        arrive(r);
+        riderRegistry.getUnassignedRiders().add(r);
+    }
+
+    /**
+     * Brings a batch of riders into the building during a real-time run and
+     * queues them for the dispatcher. Safe to call from any number of threads at once.
+     *
+     * @param riders
+     */
+    void submitAll(final Collection<Rider> riders) {
+
+        for (Rider r : riders) {
+            arrive(r);
+        }
+        riderRegistry.getUnassignedRiders().addAll(riders);
+    }
+
+    /**
+     * Utility method for add new riders while a simulation is running.
+     * Great for testing.
+     *
+     * @param numRiders
+     */
+    public void addNewRider(int numRiders) {
+
+        submitAll(manufactureRandomRiders(numRiders));
+    }
+
+    /**
+     * Starts the simulation, once it's been constructed.
      * I decoupled the running and the initialization
      * for flexibility
      *
-     * @throws InterruptedException
+     * @return a handle on the run, which goes on in the background
+     */
+    public SimulationHandle runSimulation() {
+        return runSimulation(CarExecutionMode.THREAD_PER_CAR);
+    }
+
+    /**
+     * Starts the simulation in real time, with the elevators getting CPU time
+     * according to the given mode.
+     * <p/>
+     * Returns as soon as the elevators and the dispatcher are running. The
+     * handle takes new riders while the run goes on, and its completion
+     * finishes once the run is over and every thread it started has stopped.
+     *
+     * @param mode
+     * @return a handle on the run, which goes on in the background
      */
-    public void runSimulation() throws InterruptedException {
+    public SimulationHandle runSimulation(final CarExecutionMode mode) {
         // Build the threadpool
 
-        BuildingSimulation.startTime = System.currentTimeMillis();
-        logger.info("Starting simulation at " + BuildingSimulation.startTime);
+        this.eventScheduler = null;
+        this.startTime = System.currentTimeMillis();
+        synchronized (randomLock) {
+            this.dispatchRandom = runRandom.split();
+        }
+        logger.info("Starting simulation at " + this.startTime + " with " + mode + " and seed " +
+                seed);
 
-        ExecutorService execService = Executors.newFixedThreadPool(NUM_ELEVATORS);
-        List<Future> futureList = new ArrayList<Future>();
-        elevators = new ArrayList<>();
-        for (int eId = 0; eId < NUM_ELEVATORS; eId++) {
-            Elevator e = new ClosestAcceptElevator(eId);
-            elevators.add(e);
+        requestPendingRidersAt(this.startTime);
 
-            // Start the elevator
-            futureList.add(execService.submit(e));
+        final ExecutorService execService;
+        final MultiplexedCarScheduler carScheduler;
+        if (mode == CarExecutionMode.MULTIPLEXED) {
+
+            // The cars share a pool sized to the machine, so only the dispatcher
+            // and the rider feeder need threads of their own
+            execService = Executors.newFixedThreadPool(2);
+            carScheduler = new MultiplexedCarScheduler(this, Runtime.getRuntime()
+                    .availableProcessors());
+        } else {
+
+            // One thread per elevator, plus one for the dispatcher and one for the
+            // rider feeder
+            execService = Executors.newFixedThreadPool(numElevators + 2);
+            carScheduler = null;
+        }
+
+        List<ClosestAcceptElevator> cars = buildElevators();
+
+        // Every rider known up front asks for an elevator at the start, before
+        // any car has moved, the same way they do in a discrete-event run
+        dispatcher = new Dispatcher(this, riderRegistry.getUnassignedRiders());
+        List<Rider> arrivals = new ArrayList<>();
+        if (riderRegistry.getUnassignedRiders().drainTo(arrivals) > 0) {
+            dispatcher.dispatchAll(arrivals);
         }
 
-        while (simulationStillRunning()) {
+        for (ClosestAcceptElevator e : cars) {
 
-            if (unassignedRiders.size() > 0) {
-                Rider rider = unassignedRiders.get(0);
-                logger.info("About to assign rider " + rider.riderId);
-                ClosestAcceptElevator.assignRiderToElevator(rider);
-                unassignedRiders.remove(rider);
+            // Start the elevator
+            if (carScheduler != null) {
+                carScheduler.start(e);
+            } else {
+                execService.submit(e);
             }
+        }
 
-            Thread.sleep(1000);
+        execService.submit(dispatcher);
+        if (riderSource != null) {
+            execService.submit(new RiderFeeder());
         }
-        execService.shutdown();
+
+        FutureTask<Void> completion = new FutureTask<>(new Callable<Void>() {
+            @Override
+            public Void call() throws InterruptedException {
+
+                try {
+                    long remainingMs;
+                    while ((remainingMs = getRemainingMillis()) > 0) {
+                        Thread.sleep(remainingMs);
+                    }
+                    execService.shutdown();
+                    if (carScheduler != null) {
+                        carScheduler.shutdown();
+                    }
+
+                    Thread.sleep(3000);
+                    logger.info("Simulation over. " + getLatencySummary());
+                    releaseRidersOnceStopped(execService, carScheduler);
+                    return null;
+
+                } catch (InterruptedException e) {
+
+                    // The run was cancelled, so stop everything it started right away
+                    execService.shutdownNow();
+                    if (carScheduler != null) {
+                        carScheduler.shutdown();
+                    }
+                    logger.info("Simulation cancelled. " + getLatencySummary());
+                    releaseRidersOnceStopped(execService, carScheduler);
+                    throw e;
+                }
+            }
+        });
+
+        Thread runner = new Thread(completion, "simulation-" + startTime);
+        runner.start();
+        return new SimulationHandle(this, completion);
+    }
+
+    /**
+     * Waits for the threads of a real-time run to stop, then releases the
+     * riders it never delivered. If a car is still running after the timeout,
+     * the riders are left alone rather than pulled out from under it.
+     */
+    private void releaseRidersOnceStopped(final ExecutorService execService,
+                                          final MultiplexedCarScheduler carScheduler)
+            throws InterruptedException {
+
         final int TIMEOUT_SECONDS = 90;
-        Thread.sleep(3000);
-        execService.awaitTermination(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        boolean stopped = execService.awaitTermination(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        if (carScheduler != null) {
+            stopped &= carScheduler.awaitTermination(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        }
+        if (stopped) {
+            riderRegistry.releaseActiveRiders();
+        } else {
+            logger.warning("Simulation threads still running after " + TIMEOUT_SECONDS +
+                    " seconds; keeping " + riderRegistry.getNumberInFlight() + " riders");
+        }
+    }
+
+    /**
+     * Runs the simulation as a discrete-event simulation on a virtual clock.
+     * <p/>
+     * Instead of a thread per elevator sleeping through every floor and door
+     * cycle, rider arrivals, dispatch decisions and elevator steps are all
+     * timestamped events in a single priority queue. The clock jumps straight
+     * to the next event, so the whole simulated duration runs as fast as the
+     * CPU allows, and simulations built with the same riders and seed give
+     * the same results. Every random choice of the run is split off the
+     * simulation's seed, so getSeed() is all it takes to repeat it.
+     */
+    public void runDiscreteEventSimulation() {
+
+        startDiscreteEventSimulation();
+        resumeDiscreteEventSimulation();
+    }
+
+    /**
+     * Same as above, with the dispatcher's random choices drawn from the given
+     * seed instead of the simulation's
+     *
+     * @param seed seeds the dispatcher's random choices during the run
+     */
+    public void runDiscreteEventSimulation(final long seed) {
+
+        startDiscreteEventSimulation(seed);
+        resumeDiscreteEventSimulation();
+    }
+
+    /**
+     * Sets up a discrete-event run without firing any of its events. Drive
+     * it with runDiscreteEventSimulationUntil() and resumeDiscreteEventSimulation().
+     */
+    public void startDiscreteEventSimulation() {
+
+        SplittableRandom random;
+        synchronized (randomLock) {
+            random = runRandom.split();
+        }
+        startDiscreteEventSimulation(random, "seed " + seed);
+    }
+
+    /**
+     * Same as above, with the dispatcher's random choices drawn from the given
+     * seed instead of the simulation's
+     *
+     * @param seed seeds the dispatcher's random choices during the run
+     */
+    public void startDiscreteEventSimulation(final long seed) {
+        startDiscreteEventSimulation(new SplittableRandom(seed), "dispatch seed " + seed);
+    }
+
+    private void startDiscreteEventSimulation(final SplittableRandom random,
+                                              final String seedDescription) {
+
+        final EventScheduler scheduler = new EventScheduler();
+        this.dispatchRandom = random;
+        this.eventScheduler = scheduler;
+        this.startTime = scheduler.now();
+        logger.info("Starting discrete-event simulation with " + seedDescription);
+        requestPendingRidersAt(this.startTime);
+        dispatcher = new Dispatcher(this, riderRegistry.getUnassignedRiders());
+        startCarSteps(buildElevators());
+
+        // Every rider known up front arrives at the start of the simulation
+        final List<Rider> arrivals = new ArrayList<>();
+        if (riderRegistry.getUnassignedRiders().drainTo(arrivals) > 0) {
+            scheduler.scheduleAt(startTime, new Runnable() {
+                @Override
+                public void run() {
+                    dispatcher.dispatchAll(arrivals);
+                }
+            });
+        }
+        scheduleNextArrival();
+    }
+
+    /**
+     * Fires the events of a discrete-event run up to the given point, and
+     * pauses the run there. A paused run can be written to a SimulationCheckpoint.
+     *
+     * @param elapsedMs simulated milliseconds from the start of the run
+     */
+    public void runDiscreteEventSimulationUntil(final long elapsedMs) {
+        checkDiscreteEventRun().runUntil(startTime + Math.min(elapsedMs, simulationDuration));
+    }
+
+    /**
+     * Runs a discrete-event run, fresh, paused or restored from a
+     * checkpoint, through to its end. Riders still in the building at the
+     * end are released, so an ended run can no longer be checkpointed.
+     */
+    public void resumeDiscreteEventSimulation() {
+
+        EventScheduler scheduler = checkDiscreteEventRun();
+        scheduler.runUntil(startTime + simulationDuration);
+        logger.info("Discrete-event simulation over after " + scheduler.getEventsProcessed() +
+                " events and " + (scheduler.now() - startTime) + " simulated ms. " +
+                dispatcher.getSummary() + ". " + getLatencySummary());
+        riderRegistry.releaseActiveRiders();
+    }
+
+    private EventScheduler checkDiscreteEventRun() {
+
+        EventScheduler scheduler = this.eventScheduler;
+        if (scheduler == null) {
+            throw new IllegalStateException("No discrete-event run has been started");
+        }
+        return scheduler;
+    }
+
+    /**
+     * The scheduler of the current discrete-event run, or null if the
+     * simulation last ran in real time
+     *
+     * @return
+     */
+    EventScheduler getEventScheduler() {
+        return eventScheduler;
+    }
+
+    /**
+     * When the current run started, in simulation time
+     *
+     * @return
+     */
+    long getStartTime() {
+        return startTime;
+    }
+
+    RiderSource getRiderSource() {
+        return riderSource;
+    }
+
+    /**
+     * The steps of the cars of the current discrete-event run, in order of car id
+     *
+     * @return
+     */
+    List<CarStep> getCarSteps() {
+        return carSteps;
+    }
+
+    /**
+     * Sets up a discrete-event run that carries on from a checkpoint, with
+     * nothing scheduled yet and a fresh set of elevators for the checkpoint
+     * to put back where they were
+     *
+     * @param runStartTime
+     * @param now the simulated time the checkpoint was taken at
+     * @return the new elevators, in order of id
+     */
+    List<ClosestAcceptElevator> restoreDiscreteEventSimulation(final long runStartTime,
+                                                               final long now) {
+
+        this.eventScheduler = new EventScheduler(now);
+        this.startTime = runStartTime;
+        logger.info("Restoring discrete-event simulation at " + (now - runStartTime) +
+                " simulated ms");
+        dispatcher = new Dispatcher(this, riderRegistry.getUnassignedRiders());
+        List<ClosestAcceptElevator> cars = buildElevators();
+        startCarSteps(cars);
+        return cars;
+    }
+
+    private void startCarSteps(final List<ClosestAcceptElevator> cars) {
+
+        List<CarStep> steps = new ArrayList<>(cars.size());
+        for (ClosestAcceptElevator e : cars) {
+            CarStep step = new CarStep(e, eventScheduler);
+            e.setWakeUpHook(step);
+            steps.add(step);
+        }
+        this.carSteps = steps;
+    }
+
+    /**
+     * Builds a fresh set of elevators, and an empty index for them, for a run
+     *
+     * @return the new elevators, in order of id
+     */
+    List<ClosestAcceptElevator> buildElevators() {
+
+        List<ClosestAcceptElevator> cars = new ArrayList<>(numElevators);
+        elevatorIndex = new ElevatorIndex(numElevators);
+        for (int eId = 0; eId < numElevators; eId++) {
+            cars.add(new ClosestAcceptElevator(this, eId));
+        }
+        elevators = new ArrayList<Elevator>(cars);
+        return cars;
+    }
+
+    /**
+     * Schedules the next rider from the rider source to arrive, if there is
+     * one. Only one arrival is pending at a time, so the source is read no
+     * faster than the simulation needs it.
+     */
+    private void scheduleNextArrival() {
+
+        if (riderSource == null || !riderSource.advance()) {
+            return;
+        }
+
+        long arrivalTime = Math.max(eventScheduler.now(), startTime + riderSource
+                .getArrivalTime());
+        scheduleArrivalAt(arrivalTime, riderSource.getStartFloor(), riderSource
+                .getDestinationFloor());
+    }
+
+    void scheduleArrivalAt(final long time, final int startFloor, final int destinationFloor) {
+        eventScheduler.scheduleAt(time, new Arrival(startFloor, destinationFloor));
+    }
+
+    /**
+     * A rider from the rider source arriving during a discrete-event run
+     */
+    class Arrival implements Runnable {
+
+        final int startFloor;
+        final int destinationFloor;
+
+        Arrival(final int startFloor, final int destinationFloor) {
+            this.startFloor = startFloor;
+            this.destinationFloor = destinationFloor;
+        }
+
+        @Override
+        public void run() {
+
+            Rider r = new Rider(riderStore, startFloor, destinationFloor);
+            arrive(r);
+            dispatcher.dispatchAll(Collections.singletonList(r));
+            scheduleNextArrival();
+        }
+    }
+
+    /**
+     * Brings the riders from the rider source into the building during a
+     * real-time run, each at their arrival time, for the dispatcher to assign
+     */
+    private class RiderFeeder implements Runnable {
+
+        @Override
+        public void run() {
+
+            try {
+                while (riderSource.advance()) {
+
+                    long arrivalTime = startTime + riderSource.getArrivalTime();
+                    long waitMs;
+                    while ((waitMs = arrivalTime - currentTimeMillis()) > 0) {
+
+                        if (!simulationStillRunning()) {
+                            return;
+                        }
+                        Thread.sleep(Math.min(waitMs, getRemainingMillis() + 1));
+                    }
+                    if (!simulationStillRunning()) {
+                        return;
+                    }
+
+                    Rider r = new Rider(riderStore, riderSource.getStartFloor(), riderSource
+                            .getDestinationFloor());
+                    arrive(r);
+                    riderRegistry.getUnassignedRiders().add(r);
+                }
+            } catch (InterruptedException e) {
+
+                logger.info("Rider feeder interrupted");
+            } catch (Throwable e) {
+
+                logger.severe("Caught an issue with the rider feeder");
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Moves one elevator through a discrete-event run. Each step is an event
+     * that schedules the next one after the time the step takes. A car with
+     * nowhere to go schedules nothing until it is woken by an assignment,
+     * which runs this as the car's wake-up hook.
+     */
+    static class CarStep implements Runnable {
+
+        final ClosestAcceptElevator elevator;
+        private final EventScheduler scheduler;
+        private boolean scheduled;
+
+        final Runnable step = new Runnable() {
+            @Override
+            public void run() {
+
+                long busyMs = elevator.step();
+                if (busyMs == ClosestAcceptElevator.IDLE) {
+                    scheduled = false;
+                } else {
+                    scheduler.schedule(busyMs, this);
+                }
+            }
+        };
+
+        CarStep(final ClosestAcceptElevator elevator, final EventScheduler scheduler) {
+            this.elevator = elevator;
+            this.scheduler = scheduler;
+        }
+
+        @Override
+        public void run() {
+
+            if (!scheduled) {
+                scheduled = true;
+                scheduler.schedule(0, step);
+            }
+        }
+
+        /**
+         * Puts back a step that was pending when a checkpoint was taken
+         *
+         * @param time
+         */
+        void scheduleAt(final long time) {
+
+            scheduled = true;
+            scheduler.scheduleAt(time, step);
+        }
     }
 
     public static void main(String args[]) throws InterruptedException {
@@ -237,6 +1213,6 @@ public class BuildingSimulation {
         final int TIMEOUT_SECONDS = 50;
 
         BuildingSimulation bs = new BuildingSimulation(NUM_ELEVATORS, NUM_RIDERS, TIMEOUT_SECONDS);
-        bs.runSimulation();
+        bs.runSimulation().awaitCompletion();
     }
 }
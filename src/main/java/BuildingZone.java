@@ -0,0 +1,81 @@
+/**
+ * A bank of cars that serves one contiguous range of a ZonedBuilding's
+ * floors. Zones are stacked: each zone's lowest floor is the top floor of
+ * the zone below it, and that shared floor is the sky lobby where riders
+ * change from one bank to the next.
+ * <p/>
+ * Within its zone, a bank runs as an ordinary BuildingSimulation whose
+ * floor 1 is the zone's lowest floor.
+ */
+public class BuildingZone {
+
+    private final int lowestFloor;
+    private final int highestFloor;
+    private final int numCars;
+
+    /**
+     * @param lowestFloor the ground floor, or the sky lobby the zone is entered from
+     * @param highestFloor
+     * @param numCars
+     */
+    public BuildingZone(final int lowestFloor, final int highestFloor, final int numCars) {
+
+        if (lowestFloor < 1 || highestFloor <= lowestFloor || numCars < 1) {
+            throw new IllegalArgumentException("Invalid zone: floors " + lowestFloor + " to " +
+                    highestFloor + " with " + numCars + " cars");
+        }
+        this.lowestFloor = lowestFloor;
+        this.highestFloor = highestFloor;
+        this.numCars = numCars;
+    }
+
+    public int getLowestFloor() {
+        return lowestFloor;
+    }
+
+    public int getHighestFloor() {
+        return highestFloor;
+    }
+
+    public int getNumCars() {
+        return numCars;
+    }
+
+    /**
+     * How many floors the zone's cars serve, its lowest floor included
+     *
+     * @return
+     */
+    public int getNumFloors() {
+        return highestFloor - lowestFloor + 1;
+    }
+
+    public boolean serves(final int floor) {
+        return floor >= lowestFloor && floor <= highestFloor;
+    }
+
+    /**
+     * The floor of the zone's own simulation that a floor of the building is
+     *
+     * @param buildingFloor a floor the zone serves
+     * @return
+     */
+    int toZoneFloor(final int buildingFloor) {
+        return buildingFloor - lowestFloor + 1;
+    }
+
+    /**
+     * The floor of the building that a floor of the zone's own simulation is
+     *
+     * @param zoneFloor
+     * @return
+     */
+    int toBuildingFloor(final int zoneFloor) {
+        return zoneFloor + lowestFloor - 1;
+    }
+
+    @Override
+    public String toString() {
+        return "floors " + lowestFloor + "-" + highestFloor + " with " + numCars + " cars";
+    }
+}
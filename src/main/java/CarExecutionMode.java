@@ -0,0 +1,12 @@
+/**
+ * How the elevators of a real-time simulation get CPU time.
+ */
+public enum CarExecutionMode {
+
+    // Every elevator runs on its own platform thread for the whole simulation
+    THREAD_PER_CAR,
+
+    // All elevators share a small pool of threads sized to the number of cores.
+    // A car only holds a thread while it is taking a step.
+    MULTIPLEXED;
+}
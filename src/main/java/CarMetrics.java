@@ -0,0 +1,87 @@
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * One car's share of a SimulationMetrics. The building's metrics record
+ * into it; it's only public so JMX can publish it.
+ */
+public class CarMetrics implements CarMetricsMBean {
+
+    private final int id;
+
+    final SimulationMetrics.PhaseTimer[] phases = SimulationMetrics.newPhaseTimers();
+    final LongAdder ridersBoarded = new LongAdder();
+    final LongAdder ridersDelivered = new LongAdder();
+    final LongAdder floorsTravelled = new LongAdder();
+
+    CarMetrics(final int id) {
+        this.id = id;
+    }
+
+    @Override
+    public int getId() {
+        return id;
+    }
+
+    @Override
+    public long getRidersDispatched() {
+        return phases[SimulationMetrics.Phase.DISPATCH.ordinal()].getCount();
+    }
+
+    @Override
+    public long getRidersBoarded() {
+        return ridersBoarded.sum();
+    }
+
+    @Override
+    public long getRidersDelivered() {
+        return ridersDelivered.sum();
+    }
+
+    @Override
+    public long getFloorsTravelled() {
+        return floorsTravelled.sum();
+    }
+
+    @Override
+    public long getDispatchNanos() {
+        return phases[SimulationMetrics.Phase.DISPATCH.ordinal()].getTotalNanos();
+    }
+
+    @Override
+    public long getStops() {
+        return phases[SimulationMetrics.Phase.STOP.ordinal()].getCount();
+    }
+
+    @Override
+    public long getStopNanos() {
+        return phases[SimulationMetrics.Phase.STOP.ordinal()].getTotalNanos();
+    }
+
+    @Override
+    public long getNextDestinationCalls() {
+        return phases[SimulationMetrics.Phase.NEXT_DESTINATION.ordinal()].getCount();
+    }
+
+    @Override
+    public long getNextDestinationNanos() {
+        return phases[SimulationMetrics.Phase.NEXT_DESTINATION.ordinal()].getTotalNanos();
+    }
+
+    @Override
+    public long getLockWaits() {
+        return phases[SimulationMetrics.Phase.LOCK_WAIT.ordinal()].getCount();
+    }
+
+    @Override
+    public long getLockWaitNanos() {
+        return phases[SimulationMetrics.Phase.LOCK_WAIT.ordinal()].getTotalNanos();
+    }
+
+    public String getSummary() {
+
+        return "car " + id + ": dispatched=" + getRidersDispatched() + " boarded=" +
+                getRidersBoarded() + " delivered=" + getRidersDelivered() + " floors=" +
+                getFloorsTravelled() + " stops=" + getStops() + " stopTime=" + getStopNanos() /
+                1000000 + "ms";
+    }
+}
@@ -0,0 +1,31 @@
+/**
+ * The metrics of one car, as published over JMX. Phase times are totals, in
+ * nanoseconds.
+ */
+public interface CarMetricsMBean {
+
+    public int getId();
+
+    public long getRidersDispatched();
+
+    public long getRidersBoarded();
+
+    public long getRidersDelivered();
+
+    public long getFloorsTravelled();
+
+    public long getDispatchNanos();
+
+    public long getStops();
+
+    public long getStopNanos();
+
+    public long getNextDestinationCalls();
+
+    public long getNextDestinationNanos();
+
+    public long getLockWaits();
+
+    public long getLockWaitNanos();
+
+}
@@ -0,0 +1,56 @@
+import java.util.BitSet;
+
+/**
+ * Decides where a car goes next, given the floors it has to stop at.
+ * <p/>
+ * A car asks its strategy again whenever it finishes a stop and whenever a
+ * stop is added, so the strategy only has to look at where the car is now.
+ * <p/>
+ * nextFloor() is called without any lock, from whatever is driving the car
+ * at the time: its own thread, a MultiplexedCarScheduler task, or an event of
+ * a discrete-event run. Only one of those drives a car at once, and the stops
+ * it is given are only safe to read for the length of the call. It must not
+ * change them. The other methods are called by dispatch, from any thread,
+ * so they must not depend on any one car.
+ */
+public interface CarMotionStrategy {
+
+    /**
+     * The floor the car should head for next
+     *
+     * @param currentFloor
+     * @param direction the way the car last travelled, or NOT_MOVING if it
+     *                  hasn't moved yet
+     * @param stops the floors the car has to stop at
+     * @param numFloors the highest floor of the building
+     * @return the floor, or -1 if the car has nowhere to go
+     */
+    public int nextFloor(int currentFloor, Elevator.Direction direction, BitSet stops,
+                         int numFloors);
+
+    /**
+     * Where a car travelling the given way turns back, once it has no stops
+     * left ahead of it. Used to estimate how long a car takes to reach a
+     * floor behind it. By default the car turns at its last stop, as LOOK does.
+     *
+     * @param direction UP or DOWN
+     * @param lastStop the car's highest stop going up, or lowest going down
+     * @param numFloors the highest floor of the building
+     * @return
+     */
+    public default int turnaroundFloor(final Elevator.Direction direction, final int lastStop,
+                                       final int numFloors) {
+        return lastStop;
+    }
+
+    /**
+     * Whether a car that has turned back stops at the floors behind it on its
+     * way, or runs straight past them to the far end of its stops
+     *
+     * @return
+     */
+    public default boolean stopsOnWayBack() {
+        return true;
+    }
+
+}
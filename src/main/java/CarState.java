@@ -0,0 +1,67 @@
+/**
+ * A car's position, packed into a single long so it can be published and
+ * read as one value.
+ * <p/>
+ * The thread driving a car is the only one that changes its position. It
+ * publishes a new snapshot after every change, and any other thread reads the
+ * latest one with a single volatile load: the floor, direction and next stop
+ * in it always belong together, with no lock taken on either side.
+ * <p/>
+ * Layout, from the lowest bit: the current floor (24 bits), the next floor to
+ * visit plus one, with 0 for none (24 bits), and the direction (2 bits), with
+ * 0 for a car that has never been given one.
+ */
+final class CarState {
+
+    static final int MAX_FLOOR = (1 << 24) - 2;
+
+    private static final int FLOOR_BITS = 24;
+    private static final long FLOOR_MASK = (1L << FLOOR_BITS) - 1;
+    private static final int NEXT_FLOOR_SHIFT = FLOOR_BITS;
+    private static final int DIRECTION_SHIFT = 2 * FLOOR_BITS;
+
+    // Indexed by the direction code, which is the ordinal plus one
+    private static final Elevator.Direction[] DIRECTIONS = {null, Elevator.Direction.DOWN,
+            Elevator.Direction.NOT_MOVING, Elevator.Direction.UP};
+
+    private CarState() {
+    }
+
+    /**
+     * @param floor
+     * @param direction null if the car has never been given one
+     * @param nextFloor null if the car has nowhere to go
+     * @return
+     */
+    static long pack(final int floor, final Elevator.Direction direction, final Integer
+            nextFloor) {
+
+        if (floor < 0 || floor > MAX_FLOOR || (nextFloor != null && (nextFloor < 0 ||
+                nextFloor > MAX_FLOOR))) {
+            throw new IllegalArgumentException("Floor out of range: " + floor + ", " +
+                    nextFloor);
+        }
+
+        long directionCode = direction == null ? 0 : direction.ordinal() + 1;
+        long nextFloorCode = nextFloor == null ? 0 : nextFloor + 1;
+        return floor | nextFloorCode << NEXT_FLOOR_SHIFT | directionCode << DIRECTION_SHIFT;
+    }
+
+    static int floorOf(final long state) {
+        return (int) (state & FLOOR_MASK);
+    }
+
+    /**
+     * @return the next floor to visit, or -1 if there is none
+     */
+    static int nextFloorOf(final long state) {
+        return (int) (state >>> NEXT_FLOOR_SHIFT & FLOOR_MASK) - 1;
+    }
+
+    /**
+     * @return the direction, or null if the car has never been given one
+     */
+    static Elevator.Direction directionOf(final long state) {
+        return DIRECTIONS[(int) (state >>> DIRECTION_SHIFT) & 3];
+    }
+}
@@ -1,17 +1,20 @@
 import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.logging.SimpleFormatter;
 import java.util.logging.StreamHandler;
 
 /**
- * This class is an implementation of the ClosestAccept algorithm,
- * in which an elevator will be assigned based on how close it is
- * to the target
+ * A car that serves the riders its simulation's DispatchPolicy assigns to it,
+ * stopping where the simulation's CarMotionStrategy tells it to.
  * <p/>
- * The algorithm is:
- * The elevator that is moving in the direction of the user, and is closest,
- * will be assigned that user.
+ * It started out as an implementation of the ClosestAccept algorithm, which
+ * now lives in ClosestAcceptPolicy.
  */
 public class ClosestAcceptElevator extends Elevator {
 
@@ -19,320 +22,537 @@ public class ClosestAcceptElevator extends Elevator {
     //      and which apply to just this implementation
     final static Logger logger = Logger.getLogger("ClosestAcceptElevator.class");
 
-    SimpleFormatter fmt = new SimpleFormatter();
-    StreamHandler sh = new StreamHandler(System.out, fmt);
+    // Registered once for the class. A handler per car would write every line
+    // once for each car that has ever been built.
+    final static StreamHandler sh = new StreamHandler(System.out, new SimpleFormatter());
 
-    {
+    static {
         logger.addHandler(sh);
         logger.setLevel(Level.INFO);
     }
 
-    public ClosestAcceptElevator(final int id) {
+    // Returned by step() when the car has no destination
+    static final long IDLE = -1;
 
-        this.id = id;
-        Elevator.Direction travelDirection = Elevator.Direction.NOT_MOVING;
-        this.riders = Collections.synchronizedSet(new HashSet<Rider>());
-    }
+    // An idle car parks on this condition until a rider is assigned to it
+    private final ReentrantLock idleLock = new ReentrantLock();
+    private final Condition riderAssigned = idleLock.newCondition();
 
-    @Override
-    public void acceptRiderRequest(Rider r) {
+    // Lets whatever is driving this car, other than its own thread, resume it
+    // when a rider is assigned
+    private volatile Runnable wakeUpHook;
 
-        logger.info("Elevator " + id + " has agreed to pick up rider " + r.riderId);
-        this.riders.add(r);
-    }
+    // Riders assigned to the car that it hasn't taken on yet. The dispatcher
+    // only ever adds to this, so assigning a rider never waits on the car.
+    private final Queue<Rider> mailbox = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger requestsInMailbox = new AtomicInteger();
 
-    @Override
-    public int getNumberOfRiders() {
-        return this.riders.size();
-    }
+    // Riders assigned to the car, whether they've boarded or not, including
+    // the ones still in the mailbox
+    private final AtomicInteger numberOfRiders = new AtomicInteger();
 
-    @Override
-    public void run() {
+    // Everything below is only touched by the thread driving the car.
 
-        try {
-            logger.info("Elevator " + this.id + " starting...");
+    // The floors this car has to stop at, and how many riders need each stop:
+    // the start floor of every rider waiting for the car, and the destination
+    // of every rider in it
+    private final BitSet stopFloors;
+    private final int[] stopsPerFloor;
 
-            // While...
+    // The riders in the car, by the floor they are getting off at. A floor's
+    // queue is created the first time someone rides to it.
+    private final ArrayDeque<Rider>[] ridingTo;
 
-            // Move towards the nextFloor
-            // Once you arrive at that floor, find the nextFloor and move towards it
+    // What stopFloors costs, kept up to date as stops come and go. Dispatch
+    // reads it from other threads.
+    private final RouteCost routeCost;
 
-            while (BuildingSimulation.simulationStillRunning()) {
+    // Picks the next floor from stopFloors
+    private final CarMotionStrategy motion;
 
-                // Wait until we know where we're going
-                while (nextFloorToVisit == null) {
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public ClosestAcceptElevator(final BuildingSimulation simulation, final int id) {
 
-                    if (riders.size() > 0) {
-                        nextFloorToVisit = figureOutNextDestination();
-                    }
+        this.simulation = simulation;
+        this.id = id;
+        Elevator.Direction travelDirection = Elevator.Direction.NOT_MOVING;
+        this.riders = new HashSet<>();
+
+        // Floors are numbered from 1, but elevators start out on floor 0
+        int numFloors = simulation.getNumFloors();
+        this.stopFloors = new BitSet(numFloors + 1);
+        this.stopsPerFloor = new int[numFloors + 1];
+        this.ridingTo = new ArrayDeque[numFloors + 1];
+        this.motion = simulation.getCarMotionStrategy();
+        this.routeCost = new RouteCost(stopFloors, numFloors, motion);
+    }
 
-                    if (!BuildingSimulation.simulationStillRunning()) {
-                        break;
-                    }
+    /**
+     * Assigns a rider to this car. The rider goes into the car's mailbox, and
+     * the car adds their stop the next time it takes a step. Safe to call
+     * from any thread, and never blocks on the car.
+     *
+     * @param r
+     */
+    @Override
+    public void acceptRiderRequest(Rider r) {
 
-                    Thread.sleep(3000);
-                }
+        simulation.getRiderRegistry().assign(r, this);
+        simulation.trace(EventTracer.Type.RIDER_ASSIGNED, id, r.riderId, r.getStartFloor());
+        numberOfRiders.incrementAndGet();
+        requestsInMailbox.incrementAndGet();
+        mailbox.add(r);
+
+        // Wake the car up if it's sitting idle
+        SimulationMetrics metrics = simulation.getMetrics();
+        long startNanos = metrics == null ? 0 : System.nanoTime();
+        idleLock.lock();
+        if (metrics != null) {
+            metrics.phaseEnded(SimulationMetrics.Phase.LOCK_WAIT, id, startNanos);
+        }
+        try {
+            riderAssigned.signal();
+        } finally {
+            idleLock.unlock();
+        }
 
-                if (!BuildingSimulation.simulationStillRunning()) {
-                    break;
-                }
+        Runnable hook = wakeUpHook;
+        if (hook != null) {
+            hook.run();
+        }
+    }
 
-                if (nextFloorToVisit > this.currentFloor) {
-                    upOneFloor();
+    /**
+     * Registers an action to run whenever a rider is assigned to this car.
+     * Schedulers that don't give the car a thread of its own use this to
+     * resume an idle car.
+     *
+     * @param hook
+     */
+    void setWakeUpHook(final Runnable hook) {
+        this.wakeUpHook = hook;
+    }
 
-                } else if (nextFloorToVisit < this.currentFloor) {
-                    downOneFloor();
+    /**
+     * Adds the stops of every rider waiting in the mailbox. If the car is on
+     * its way somewhere, it may now have to stop for one of them first.
+     */
+    private void takeRequests() {
 
-                } else if (nextFloorToVisit == this.currentFloor) {
-                    arriveAtFloor(this.currentFloor);
-                    this.nextFloorToVisit = figureOutNextDestination();
-                } else {
-                    this.nextFloorToVisit = null;
-                }
-            }
+        boolean tookAny = false;
+        Rider r;
+        while ((r = mailbox.poll()) != null) {
 
-            logger.info("Elevator " + id + " simulation over. Dropped off " +
-                    totalRidersTransported + " riders and had " + riders.size() + " " +
-                    "remaining riders");
+            requestsInMailbox.decrementAndGet();
+            riders.add(r);
+            addStop(r.getStartFloor());
+            tookAny = true;
+        }
 
-        } catch (Throwable e) {
+        if (tookAny && nextFloorToVisit != null) {
+            nextFloorToVisit = figureOutNextDestination();
+            publishState();
+        }
+    }
 
-            logger.severe("Caught an issue with elevator " + id);
-            e.printStackTrace();
+    /**
+     * Takes back a rider who was assigned to this car but hasn't boarded it,
+     * leaving them waiting to be assigned again. Called from the thread
+     * driving the car.
+     *
+     * @param r
+     */
+    void withdrawRiderRequest(Rider r) {
+
+        takeRequests();
+        if (r.getState() != Rider.State.ASSIGNED || r.getElevatorId() != id || !this.riders
+                .remove(r)) {
+            throw new IllegalArgumentException("Rider " + r.riderId + " isn't waiting for " +
+                    "elevator " + id);
         }
+        removeStop(r.getStartFloor());
+        numberOfRiders.decrementAndGet();
+        simulation.getRiderRegistry().unassign(r);
     }
 
-    private Integer figureOutNextDestination() {
+    @Override
+    void riderBoarded(Rider r) {
 
-        if (this.riders.size() == 0) {
-            logger.info("Elevator " + id + " going to do nothing b/c no more riders " +
-                    "assigned");
-            return null;
+        // The rider may have been assigned since the car last took a step
+        takeRequests();
+        simulation.getRiderRegistry().board(r, this);
+
+        int destinationFloor = r.getDestinationFloor();
+        removeStop(r.getStartFloor());
+        addStop(destinationFloor);
+
+        if (ridingTo[destinationFloor] == null) {
+            ridingTo[destinationFloor] = new ArrayDeque<>();
         }
+        ridingTo[destinationFloor].add(r);
 
-        Integer nextFloor = null;
-        if (this.travelDirection == Elevator.Direction.UP) {
-            nextFloor = getNextFloorGoingUp();
-        } else if (this.travelDirection == Elevator.Direction.DOWN) {
-            nextFloor = getNextFloorGoingDown();
-        } else {
-            if ((int) (Math.random() * 1000) % 2 == 0) {
-                this.travelDirection = Elevator.Direction.UP;
-                nextFloor = getNextFloorGoingUp();
-            } else {
-                this.travelDirection = Elevator.Direction.DOWN;
-                nextFloor = getNextFloorGoingDown();
-            }
+        simulation.trace(EventTracer.Type.RIDER_BOARDED, id, r.riderId, currentFloor);
+        SimulationMetrics metrics = simulation.getMetrics();
+        if (metrics != null) {
+            metrics.riderBoarded(id);
         }
-        return nextFloor;
+
+        long waitTime = r.getWaitTime();
+        waitTimes.record(waitTime);
+        simulation.getWaitTimes().record(waitTime);
     }
 
-    private synchronized void arriveAtFloor(int floor) throws InterruptedException {
+    /**
+     * Riders assigned to the car that it hasn't taken on yet, in order of assignment
+     *
+     * @return
+     */
+    Collection<Rider> getMailbox() {
+        return Collections.unmodifiableCollection(mailbox);
+    }
 
-        // Let remove all the users whose destination floor is this one -
-        // TODO: do this in a smarter way
-        logger.info("Elevator " + id + " arriving at " + floor);
+    /**
+     * Riders in the car, by the floor they're getting off at, and within a
+     * floor in the order they'll get off
+     *
+     * @return
+     */
+    List<Rider> getRidersOnBoard() {
 
-        List<Rider> ridersToDropOff = new ArrayList<Rider>();
-        for (Rider r : riders) {
-            if (r.getDestinationFloor() == floor) {
-                logger.info("Elevator " + this.id + " dropping off rider " + r.riderId + "" +
-                        " at " + floor);
-                ridersToDropOff.add(r);
+        List<Rider> onBoard = new ArrayList<>();
+        for (ArrayDeque<Rider> ridingToFloor : ridingTo) {
+            if (ridingToFloor != null) {
+                onBoard.addAll(ridingToFloor);
             }
         }
+        return onBoard;
+    }
 
-        for (Rider r : ridersToDropOff) {
-            r.getOffElevator(this);
-            this.riders.remove(r);
-            this.totalRidersTransported++;
+    /**
+     * Puts the car back where a SimulationCheckpoint found it
+     *
+     * @param state the car's CarState snapshot
+     * @param ridersTransported
+     */
+    void restorePosition(final long state, final int ridersTransported) {
+
+        this.currentFloor = CarState.floorOf(state);
+        this.travelDirection = CarState.directionOf(state);
+        int nextFloor = CarState.nextFloorOf(state);
+        this.nextFloorToVisit = nextFloor < 0 ? null : nextFloor;
+        this.totalRidersTransported = ridersTransported;
+        publishState();
+    }
+
+    /**
+     * Gives back a rider who was assigned to the car, or riding in it, when a
+     * SimulationCheckpoint was taken. Riders riding to the same floor have to
+     * be restored in the order they'll get off.
+     *
+     * @param r a rider who has been restored to their state in the checkpoint
+     * @param inMailbox whether the car hadn't taken the rider on yet
+     */
+    void restoreRider(final Rider r, final boolean inMailbox) {
+
+        numberOfRiders.incrementAndGet();
+        if (inMailbox) {
+            requestsInMailbox.incrementAndGet();
+            mailbox.add(r);
+            return;
         }
 
-        Thread.sleep(BuildingSimulation.UNLOAD_TIME_MS);
+        riders.add(r);
+        if (r.getState() == Rider.State.RIDING) {
 
-        // Accept all users whose destination is this one
-        boolean waitForLoading = false;
-        for (Rider r : BuildingSimulation.getActiveRiders()) {
-            if (r.getElevator() == null & r.startFloor == floor) {
-                r.getInElevator(this);
-                waitForLoading = true;
+            int destinationFloor = r.getDestinationFloor();
+            addStop(destinationFloor);
+            if (ridingTo[destinationFloor] == null) {
+                ridingTo[destinationFloor] = new ArrayDeque<>();
             }
+            ridingTo[destinationFloor].add(r);
+        } else {
+            addStop(r.getStartFloor());
         }
+    }
 
-        if (waitForLoading) {
-            Thread.sleep(BuildingSimulation.LOAD_TIME_MS);
-        }
+    private void addStop(final int floor) {
 
-        if (riders.size() != 0) {
+        if (stopsPerFloor[floor]++ == 0) {
+            stopFloors.set(floor);
+            routeCost.stopAdded(floor);
+        }
+    }
 
-            // Get the next floor you need to go to
-            if (this.travelDirection == Elevator.Direction.UP) {
-                this.nextFloorToVisit = getNextFloorGoingUp();
-            } else if (this.travelDirection == Elevator.Direction.DOWN) {
-                this.nextFloorToVisit = getNextFloorGoingDown();
-            } else {
-                // Not totally sure about this
-            }
-        } else {
+    private void removeStop(final int floor) {
 
-            // make available for assignment
-            this.nextFloorToVisit = null;
+        if (--stopsPerFloor[floor] == 0) {
+            stopFloors.clear(floor);
+            routeCost.stopRemoved(floor);
         }
     }
 
     /**
-     * This is a very important algorithm.
-     * Basically we look at the available elevators going
-     * in the direction of the rider and we pick the one
-     * closest (to minimize the wait time)
-     *
-     * If none are going that way, then we summon a stationary elevator.
-     *
-     * @param r
+     * Whether the car stops at the given floor. Riders still in the mailbox
+     * aren't counted.
      */
-    public static void assignRiderToElevator(Rider r) {
-
-        // default to a random elevator, because they're going to all be on the same one otherwise
-        Random rand = new Random();
-        int elevatorIndex = rand.nextInt((BuildingSimulation.elevators.size()));
+    @Override
+    public boolean hasStopAt(final int floor) {
+        return floor >= 0 && floor <= simulation.getNumFloors() && routeCost.stopsBetween
+                (floor, floor) > 0;
+    }
 
-        Elevator closestElevator = BuildingSimulation.elevators.get(elevatorIndex);
-        int smallest_distance = r.startFloor - closestElevator.currentFloor;
-        Elevator.Direction necessaryDirectionToTravel = Elevator.Direction.UP;
+    /**
+     * Every rider still in the mailbox is counted as an extra stop on the way
+     */
+    @Override
+    public long estimateTimeToReach(final int floor) {
 
-        for (Elevator e : BuildingSimulation.elevators) {
+        long state = getState();
+        return routeCost.timeToReach(CarState.floorOf(state), directionOf(state), floor) +
+                requestsInMailbox.get() * RouteCost.DOOR_CYCLE_MS;
+    }
 
-            if (e.travelDirection == Elevator.Direction.UP && e.currentFloor <= r.startFloor) {
+    @Override
+    public long estimateDelayFromStopAt(final int floor) {
 
-                // This person is above the elevator
-                int distance = r.startFloor - e.currentFloor;
-                if (distance < smallest_distance) {
+        long state = getState();
+        return routeCost.delayFromStopAt(CarState.floorOf(state), directionOf(state), floor);
+    }
 
-                    smallest_distance = distance;
-                    closestElevator = e;
-                }
+    private static Elevator.Direction directionOf(final long state) {
 
-                necessaryDirectionToTravel = Elevator.Direction.UP;
+        Elevator.Direction direction = CarState.directionOf(state);
+        return direction == null ? Elevator.Direction.NOT_MOVING : direction;
+    }
 
-            } else if (e.travelDirection == Elevator.Direction.DOWN && e.currentFloor >= r.startFloor) {
+    /**
+     * Whether the car has riders to serve or somewhere to go
+     *
+     * @return
+     */
+    boolean hasWork() {
+        return numberOfRiders.get() > 0 || nextFloorToVisit != null;
+    }
 
-                int distance = e.currentFloor - r.startFloor;
-                if (distance < smallest_distance) {
+    @Override
+    public int getNumberOfRiders() {
+        return numberOfRiders.get();
+    }
 
-                    smallest_distance = distance;
-                    closestElevator = e;
-                }
+    @Override
+    public void run() {
 
-                necessaryDirectionToTravel = Elevator.Direction.DOWN;
+        try {
+            logger.info("Elevator " + this.id + " starting...");
 
-            } else if (e.travelDirection == Elevator.Direction.NOT_MOVING) {
+            // Move towards the nextFloor
+            // Once you arrive at that floor, find the nextFloor and move towards it
 
-                int distance = Math.abs(e.currentFloor - r.startFloor);
-                if (distance < smallest_distance) {
+            while (simulation.simulationStillRunning()) {
 
-                    smallest_distance = distance;
-                    closestElevator = e;
-                }
+                long busyMs = step();
 
-                if (e.currentFloor > r.startFloor) {
-                    necessaryDirectionToTravel = Elevator.Direction.UP;
-                } else if (e.currentFloor < r.startFloor) {
-                    necessaryDirectionToTravel = Elevator.Direction.DOWN;
+                if (busyMs == IDLE) {
+                    // Wait until we know where we're going
+                    awaitRider();
                 } else {
-
-                    if (r.getDestinationFloor() < e.currentFloor) {
-                        necessaryDirectionToTravel = Elevator.Direction.DOWN; //they're on the same floor
-                    } else if (r.getDestinationFloor() > e.currentFloor) {
-                        necessaryDirectionToTravel = Elevator.Direction.UP;
-                    } else {
-                        logger.warning("Why are you using an elevator to stay on the same " +
-                                "floor!??");
-                        necessaryDirectionToTravel = Elevator.Direction.NOT_MOVING;
-                    }
+                    Thread.sleep(busyMs);
                 }
             }
+
+            logger.info("Elevator " + id + " simulation over. Dropped off " +
+                    totalRidersTransported + " riders and had " + getNumberOfRiders() + " " +
+                    "remaining riders. Wait time: " + waitTimes.getSummary());
+
+        } catch (Throwable e) {
+
+            logger.severe("Caught an issue with elevator " + id);
+            e.printStackTrace();
         }
+    }
 
-        if (closestElevator == null) {
+    /**
+     * Parks the car's thread until a rider is assigned to it or the simulation
+     * ends. An idle car uses no CPU while it waits.
+     *
+     * @throws InterruptedException
+     */
+    private void awaitRider() throws InterruptedException {
 
-            logger.warning("Not able to assign rider. Very strange.");
-        } else {
+        idleLock.lock();
+        try {
+            long remainingMs;
+            while (!hasWork() && (remainingMs = simulation.getRemainingMillis()) > 0) {
 
-            // We found an elevator. Excellent.
+                riderAssigned.await(remainingMs, TimeUnit.MILLISECONDS);
+            }
+        } finally {
+            idleLock.unlock();
+        }
+    }
 
-            // Check the next floor that this elevator will hit. It's probably after the floor
-            // where this user is. Adjust that, and we're all set.
+    /**
+     * Performs one unit of work for this car: travelling a single floor, or
+     * stopping at the floor it has arrived at.
+     * <p/>
+     * The car's state is updated right away. The return value is how long that
+     * work takes, so the caller decides how time passes: the thread-per-car
+     * mode sleeps for it, and the discrete-event mode schedules the next step
+     * that far ahead on its virtual clock.
+     *
+     * @return the simulated milliseconds the work takes, or IDLE if the car
+     * has nowhere to go
+     */
+    long step() {
 
-            if (necessaryDirectionToTravel == Elevator.Direction.UP) {
+        takeRequests();
+        long busyMs = move();
+        publishState();
+        return busyMs;
+    }
 
-                if (closestElevator.nextFloorToVisit == null || closestElevator.nextFloorToVisit > r
-                        .getDestinationFloor()) {
+    private long move() {
 
-                    closestElevator.nextFloorToVisit = r.getDestinationFloor();
-                }
-            } else if (necessaryDirectionToTravel == Elevator.Direction.DOWN) {
+        if (nextFloorToVisit == null) {
 
-                if (closestElevator.nextFloorToVisit == null || closestElevator.nextFloorToVisit < r
-                        .getDestinationFloor()) {
-                }
-            } else if (necessaryDirectionToTravel == Elevator.Direction.NOT_MOVING) {
+            nextFloorToVisit = figureOutNextDestination();
 
-                // If we don't need to move, then let's not mess with anything
+            if (nextFloorToVisit == null) {
+                return IDLE;
             }
+        }
+
+        if (nextFloorToVisit > this.currentFloor) {
+            return upOneFloor();
+
+        } else if (nextFloorToVisit < this.currentFloor) {
+            return downOneFloor();
 
-            logger.info("Assigned rider " + r.riderId + " to take elevator " +
-                    closestElevator.id + " because the distance is " + smallest_distance);
+        } else if (stopsPerFloor[this.currentFloor] == 0) {
 
-            closestElevator.acceptRiderRequest(r);
+            // Only passing through, like a SCAN car reaching the end of the building
+            this.nextFloorToVisit = figureOutNextDestination();
+            return nextFloorToVisit == null ? IDLE : 0;
+
+        } else {
+            long stopTime = arriveAtFloor(this.currentFloor);
+            this.nextFloorToVisit = figureOutNextDestination();
+            return stopTime;
         }
     }
 
-    private int getNextFloorGoingUp() {
-        int lowestDestinationFloor = BuildingSimulation.NUM_FLOORS + 1; //theoretical
-        logger.info("Initial value for lowest floor is " + lowestDestinationFloor);
-        // unattainable max value
-        for (Rider r : riders) {
-            int destinationFloor = r.getDestinationFloor();
-            if (destinationFloor < lowestDestinationFloor) {
-                lowestDestinationFloor = destinationFloor;
-            }
+    /**
+     * Asks the motion strategy where the car should go from here
+     *
+     * @return the floor, or null if the car has nowhere to go
+     */
+    Integer figureOutNextDestination() {
+
+        if (stopFloors.isEmpty()) {
+            return null;
+        }
+
+        SimulationMetrics metrics = simulation.getMetrics();
+        long startNanos = metrics == null ? 0 : System.nanoTime();
+
+        Elevator.Direction direction = travelDirection == null ? Elevator.Direction
+                .NOT_MOVING : travelDirection;
+        int nextFloor = motion.nextFloor(currentFloor, direction, stopFloors, simulation
+                .getNumFloors());
+
+        if (metrics != null) {
+            metrics.phaseEnded(SimulationMetrics.Phase.NEXT_DESTINATION, id, startNanos);
         }
-        return lowestDestinationFloor;
+        return nextFloor < 0 ? null : nextFloor;
     }
 
-    private int getNextFloorGoingDown() {
+    long arriveAtFloor(int floor) {
 
-        int lowestDestinationFloor = 0;
-        for (Rider r : riders) {
+        SimulationMetrics metrics = simulation.getMetrics();
+        long startNanos = metrics == null ? 0 : System.nanoTime();
 
-            int destinationFloor = r.getDestinationFloor();
-            if (destinationFloor > lowestDestinationFloor) {
-                lowestDestinationFloor = destinationFloor;
+        takeRequests();
+
+        // Let remove all the users whose destination floor is this one
+        simulation.trace(EventTracer.Type.CAR_STOPPED, id, EventTracer.NONE, floor);
+
+        ArrayDeque<Rider> ridersToDropOff = ridingTo[floor];
+        Rider r;
+        while (ridersToDropOff != null && (r = ridersToDropOff.poll()) != null) {
+
+            simulation.trace(EventTracer.Type.RIDER_DELIVERED, id, r.riderId, floor);
+            removeStop(floor);
+            simulation.getRiderRegistry().deliver(r, this);
+            this.riders.remove(r);
+            numberOfRiders.decrementAndGet();
+            this.totalRidersTransported++;
+
+            long tripTime = r.getTripTime();
+            tripTimes.record(tripTime);
+            simulation.getTripTimes().record(tripTime);
+            simulation.riderDelivered(r);
+            if (metrics != null) {
+                metrics.riderDelivered(id);
             }
         }
 
-        return lowestDestinationFloor;
+        // Pick up the users on this floor who are waiting for this car
+        boolean waitForLoading = simulation.getHallCalls().boardAssignedRiders(floor,
+                this) > 0;
+
+        if (metrics != null) {
+            metrics.phaseEnded(SimulationMetrics.Phase.STOP, id, startNanos);
+        }
+
+        return BuildingSimulation.UNLOAD_TIME_MS + (waitForLoading ? BuildingSimulation
+                .LOAD_TIME_MS : 0);
     }
 
-    private void upOneFloor() throws InterruptedException {
+    private long upOneFloor() {
 
         this.travelDirection = Elevator.Direction.UP;
-        logger.fine(this.id + ": going up from " + this.currentFloor + " to " +
-                (currentFloor + 1));
-        if (this.currentFloor < BuildingSimulation.NUM_FLOORS) {
-            Thread.sleep(BuildingSimulation.MS_PER_FLOOR_CLIMB);
+        if (this.currentFloor < simulation.getNumFloors()) {
             this.currentFloor++;
+            simulation.trace(EventTracer.Type.CAR_MOVED, id, EventTracer.NONE, currentFloor);
+            carMoved();
+            reindex();
+            return BuildingSimulation.MS_PER_FLOOR_CLIMB;
         }
+        reindex();
+        return 0;
     }
 
-    private void downOneFloor() throws InterruptedException {
+    private long downOneFloor() {
 
         this.travelDirection = Elevator.Direction.DOWN;
-        logger.fine(this.id + ": going down from " + this.currentFloor + " to " +
-                (currentFloor - 1));
-        Thread.sleep(BuildingSimulation.MS_PER_FLOOR_CLIMB);
         if (this.currentFloor > 0) {
             this.currentFloor--;
+            simulation.trace(EventTracer.Type.CAR_MOVED, id, EventTracer.NONE, currentFloor);
+            carMoved();
+        }
+        reindex();
+        return BuildingSimulation.MS_PER_FLOOR_CLIMB;
+    }
+
+    private void carMoved() {
+
+        SimulationMetrics metrics = simulation.getMetrics();
+        if (metrics != null) {
+            metrics.carMoved(id);
+        }
+    }
+
+    /**
+     * Publishes where this car is now, and lets the simulation's elevator
+     * index know
+     */
+    private void reindex() {
+
+        publishState();
+
+        ElevatorIndex index = simulation.getElevatorIndex();
+        if (index != null) {
+            index.update(this);
         }
     }
 
@@ -0,0 +1,30 @@
+import java.util.List;
+
+/**
+ * The ClosestAccept algorithm, in which a rider is assigned to whichever car
+ * is closest to them
+ * <p/>
+ * The algorithm is:
+ * The elevator that is moving in the direction of the user, and is closest,
+ * will be assigned that user. If none are going that way, then we summon a
+ * stationary elevator, and failing that a random one.
+ */
+public class ClosestAcceptPolicy implements DispatchPolicy {
+
+    @Override
+    public Elevator chooseCar(final BuildingSimulation simulation, final Rider r) {
+
+        // default to a random elevator, because they're going to all be on the same one otherwise
+        List<Elevator> elevators = simulation.getElevators();
+        int elevatorIndex = simulation.getDispatchRandom().nextInt(elevators.size());
+
+        Elevator closestElevator = elevators.get(elevatorIndex);
+        int startFloor = r.getStartFloor();
+        int smallestDistance = startFloor - closestElevator.getCurrentFloor();
+
+        // Look up the closest car heading our way, rather than checking every one of them
+        Elevator indexedElevator = simulation.getElevatorIndex().findClosest(startFloor,
+                smallestDistance);
+        return indexedElevator != null ? indexedElevator : closestElevator;
+    }
+}
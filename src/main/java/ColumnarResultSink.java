@@ -0,0 +1,208 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A ResultSink that writes trips in a compact binary format laid out in
+ * columns, so an analysis that only wants, say, the wait times reads them
+ * back as a run of longs instead of picking them out of every record.
+ * <p/>
+ * The file is a HEADER_SIZE-byte header (MAGIC, VERSION, then BLOCK_SIZE),
+ * followed by blocks of up to BLOCK_SIZE trips. A block is the number of
+ * trips in it as an int, then each column in turn: rider ids as ints, start
+ * and destination floors as shorts, car ids as ints, then request, board and
+ * alight times as longs. Every block but the last is full.
+ * <p/>
+ * read() feeds a file back through a TripVisitor.
+ */
+public class ColumnarResultSink extends ResultSink {
+
+    static final int MAGIC = 0x454c5253; // "ELRS"
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 4 + 4 + 4;
+
+    static final int BLOCK_SIZE = 1 << 13;
+
+    // rider id, start floor, destination floor, car id, request, board and alight times
+    static final int TRIP_SIZE = 4 + 2 + 2 + 4 + 8 + 8 + 8;
+
+    /**
+     * Is handed each trip read back from a file
+     */
+    public interface TripVisitor {
+
+        public void trip(int riderId, int startFloor, int destinationFloor, int carId,
+                         long requestTime, long boardTime, long alightTime);
+    }
+
+    // The block being filled, one array per column
+    private final int[] riderIds = new int[BLOCK_SIZE];
+    private final short[] startFloors = new short[BLOCK_SIZE];
+    private final short[] destinationFloors = new short[BLOCK_SIZE];
+    private final int[] carIds = new int[BLOCK_SIZE];
+    private final long[] requestTimes = new long[BLOCK_SIZE];
+    private final long[] boardTimes = new long[BLOCK_SIZE];
+    private final long[] alightTimes = new long[BLOCK_SIZE];
+    private int tripsInBlock;
+
+    public ColumnarResultSink(final File file) throws IOException {
+        this(file, DEFAULT_CAPACITY);
+    }
+
+    public ColumnarResultSink(final File file, final int capacity) throws IOException {
+
+        super(file, capacity);
+        buffer.putInt(MAGIC).putInt(VERSION).putInt(BLOCK_SIZE);
+    }
+
+    @Override
+    void writeTrip(final int riderId, final int startFloor, final int destinationFloor,
+                   final int carId, final long requestTime, final long boardTime,
+                   final long alightTime) throws IOException {
+
+        if (startFloor < 0 || startFloor > Short.MAX_VALUE || destinationFloor < 0 ||
+                destinationFloor > Short.MAX_VALUE) {
+            throw new IOException("Floors out of range for rider " + riderId + ": " +
+                    startFloor + " to " + destinationFloor);
+        }
+
+        riderIds[tripsInBlock] = riderId;
+        startFloors[tripsInBlock] = (short) startFloor;
+        destinationFloors[tripsInBlock] = (short) destinationFloor;
+        carIds[tripsInBlock] = carId;
+        requestTimes[tripsInBlock] = requestTime;
+        boardTimes[tripsInBlock] = boardTime;
+        alightTimes[tripsInBlock] = alightTime;
+        if (++tripsInBlock == BLOCK_SIZE) {
+            writeBlock();
+        }
+    }
+
+    @Override
+    void finish() throws IOException {
+
+        if (tripsInBlock > 0) {
+            writeBlock();
+        }
+    }
+
+    private void writeBlock() throws IOException {
+
+        int trips = tripsInBlock;
+        ensureRemaining(4 + trips * TRIP_SIZE);
+
+        buffer.putInt(trips);
+        buffer.asIntBuffer().put(riderIds, 0, trips);
+        buffer.position(buffer.position() + trips * 4);
+        buffer.asShortBuffer().put(startFloors, 0, trips);
+        buffer.position(buffer.position() + trips * 2);
+        buffer.asShortBuffer().put(destinationFloors, 0, trips);
+        buffer.position(buffer.position() + trips * 2);
+        buffer.asIntBuffer().put(carIds, 0, trips);
+        buffer.position(buffer.position() + trips * 4);
+        buffer.asLongBuffer().put(requestTimes, 0, trips);
+        buffer.position(buffer.position() + trips * 8);
+        buffer.asLongBuffer().put(boardTimes, 0, trips);
+        buffer.position(buffer.position() + trips * 8);
+        buffer.asLongBuffer().put(alightTimes, 0, trips);
+        buffer.position(buffer.position() + trips * 8);
+
+        tripsInBlock = 0;
+    }
+
+    /**
+     * Reads back every trip in a file written by a ColumnarResultSink, in
+     * the order they were written
+     *
+     * @param file
+     * @param visitor
+     * @return the number of trips read
+     * @throws IOException if the file is unreadable or isn't a result file
+     */
+    public static long read(final File file, final TripVisitor visitor) throws IOException {
+
+        try (FileChannel channel = FileChannel.open(Paths.get(file.getPath()),
+                StandardOpenOption.READ)) {
+
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            if (!readFully(channel, header) || header.getInt() != MAGIC || header.getInt() !=
+                    VERSION) {
+                throw new IOException("Not a result file: " + file);
+            }
+            int blockSize = header.getInt();
+            if (blockSize <= 0 || blockSize > BLOCK_SIZE) {
+                throw new IOException("Invalid block size " + blockSize + " in " + file);
+            }
+
+            ByteBuffer count = ByteBuffer.allocate(4);
+            ByteBuffer block = ByteBuffer.allocateDirect(blockSize * TRIP_SIZE);
+            int[] riderIds = new int[blockSize];
+            short[] startFloors = new short[blockSize];
+            short[] destinationFloors = new short[blockSize];
+            int[] carIds = new int[blockSize];
+            long[] requestTimes = new long[blockSize];
+            long[] boardTimes = new long[blockSize];
+            long[] alightTimes = new long[blockSize];
+
+            long tripsRead = 0;
+            while (readFully(channel, count)) {
+
+                int trips = count.getInt();
+                if (trips <= 0 || trips > blockSize) {
+                    throw new IOException("Invalid block of " + trips + " trips in " + file);
+                }
+                block.clear().limit(trips * TRIP_SIZE);
+                if (!readFully(channel, block)) {
+                    throw new IOException("Truncated result file: " + file);
+                }
+
+                block.asIntBuffer().get(riderIds, 0, trips);
+                block.position(block.position() + trips * 4);
+                block.asShortBuffer().get(startFloors, 0, trips);
+                block.position(block.position() + trips * 2);
+                block.asShortBuffer().get(destinationFloors, 0, trips);
+                block.position(block.position() + trips * 2);
+                block.asIntBuffer().get(carIds, 0, trips);
+                block.position(block.position() + trips * 4);
+                block.asLongBuffer().get(requestTimes, 0, trips);
+                block.position(block.position() + trips * 8);
+                block.asLongBuffer().get(boardTimes, 0, trips);
+                block.position(block.position() + trips * 8);
+                block.asLongBuffer().get(alightTimes, 0, trips);
+
+                for (int i = 0; i < trips; i++) {
+                    visitor.trip(riderIds[i], startFloors[i], destinationFloors[i], carIds[i],
+                            requestTimes[i], boardTimes[i], alightTimes[i]);
+                }
+                tripsRead += trips;
+                count.clear();
+            }
+            return tripsRead;
+        }
+    }
+
+    /**
+     * Fills the rest of a buffer from the channel and flips it
+     *
+     * @return false if the channel was already at its end, true if the buffer was filled
+     * @throws IOException if the channel ended part way through
+     */
+    private static boolean readFully(final FileChannel channel, final ByteBuffer buffer)
+            throws IOException {
+
+        int start = buffer.position();
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer) < 0) {
+                if (buffer.position() == start) {
+                    return false;
+                }
+                throw new IOException("Unexpected end of file");
+            }
+        }
+        buffer.flip();
+        return true;
+    }
+}
@@ -0,0 +1,11 @@
+/**
+ * Is told about every rider a simulation delivers. This is how completed
+ * trips are streamed out of a run: the simulation releases a rider's storage
+ * right after its listeners have been called, so anything a listener wants to
+ * keep has to be copied out of the rider then and there.
+ */
+public interface CompletedRiderListener {
+
+    public void riderCompleted(Rider r);
+
+}
@@ -0,0 +1,83 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A ResultSink that writes one line of comma-separated values per trip,
+ * under a header line naming the columns. Times are in milliseconds, as the
+ * simulation's clock reported them.
+ * <p/>
+ * Numbers are turned into ASCII digits straight in the write buffer, so
+ * writing a line doesn't build any Strings.
+ */
+public class CsvResultSink extends ResultSink {
+
+    static final String HEADER = "rider,start,destination,car,request,board,alight\n";
+
+    // The longest a line can be: four ints and three longs, each with a sign,
+    // and their separators
+    private static final int MAX_LINE_LENGTH = 4 * 11 + 3 * 20 + 7;
+
+    private final byte[] digits = new byte[20];
+
+    public CsvResultSink(final File file) throws IOException {
+        this(file, DEFAULT_CAPACITY);
+    }
+
+    public CsvResultSink(final File file, final int capacity) throws IOException {
+
+        super(file, capacity);
+        buffer.put(HEADER.getBytes(StandardCharsets.US_ASCII));
+    }
+
+    @Override
+    void writeTrip(final int riderId, final int startFloor, final int destinationFloor,
+                   final int carId, final long requestTime, final long boardTime,
+                   final long alightTime) throws IOException {
+
+        ensureRemaining(MAX_LINE_LENGTH);
+        putDecimal(riderId);
+        buffer.put((byte) ',');
+        putDecimal(startFloor);
+        buffer.put((byte) ',');
+        putDecimal(destinationFloor);
+        buffer.put((byte) ',');
+        putDecimal(carId);
+        buffer.put((byte) ',');
+        putDecimal(requestTime);
+        buffer.put((byte) ',');
+        putDecimal(boardTime);
+        buffer.put((byte) ',');
+        putDecimal(alightTime);
+        buffer.put((byte) '\n');
+    }
+
+    @Override
+    void finish() {
+        // Every line is written as it comes
+    }
+
+    private void putDecimal(final long value) {
+
+        if (value == Long.MIN_VALUE) {
+            buffer.put(Long.toString(value).getBytes(StandardCharsets.US_ASCII));
+            return;
+        }
+
+        long remaining = value;
+        if (remaining < 0) {
+            buffer.put((byte) '-');
+            remaining = -remaining;
+        }
+
+        int length = 0;
+        do {
+            digits[length++] = (byte) ('0' + remaining % 10);
+            remaining /= 10;
+        } while (remaining != 0);
+
+        while (length > 0) {
+            buffer.put(digits[--length]);
+        }
+    }
+}
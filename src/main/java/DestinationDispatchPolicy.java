@@ -0,0 +1,65 @@
+/**
+ * Destination dispatch: riders say where they are going when they ask for an
+ * elevator, and riders heading the same way are grouped into the same car.
+ * <p/>
+ * Every car is given a cost for taking the rider, in simulated milliseconds:
+ * the time to reach the rider's floor, plus a stop's worth of time for each
+ * of the rider's two floors the car doesn't already stop at. A car that is
+ * already going to the rider's destination is therefore cheaper than one
+ * that would have to make an extra stop for them, even if it is a little
+ * further away. The cheapest car wins, the lowest id on a tie.
+ */
+public class DestinationDispatchPolicy implements DispatchPolicy {
+
+    static final long STOP_MS = BuildingSimulation.LOAD_TIME_MS + BuildingSimulation
+            .UNLOAD_TIME_MS;
+
+    @Override
+    public Elevator chooseCar(final BuildingSimulation simulation, final Rider r) {
+
+        Elevator cheapest = null;
+        long cheapestCost = Long.MAX_VALUE;
+        for (Elevator e : simulation.getElevators()) {
+
+            long cost = costOf(e, r.getStartFloor(), r.getDestinationFloor());
+            if (cost < cheapestCost) {
+                cheapest = e;
+                cheapestCost = cost;
+            }
+        }
+        return cheapest;
+    }
+
+    /**
+     * What it costs the given car to take a rider between the two floors
+     */
+    static long costOf(final Elevator e, final int startFloor, final int destinationFloor) {
+
+        long cost = floorsToReach(e, startFloor) * BuildingSimulation.MS_PER_FLOOR_CLIMB;
+        if (!e.hasStopAt(startFloor)) {
+            cost += STOP_MS;
+        }
+        if (!e.hasStopAt(destinationFloor)) {
+            cost += STOP_MS;
+        }
+        return cost;
+    }
+
+    /**
+     * How many floors the car travels before it reaches the given floor. A car
+     * heading away from the floor is counted as going on to its next stop
+     * first, and then coming back.
+     */
+    static int floorsToReach(final Elevator e, final int floor) {
+
+        long state = e.getState();
+        int currentFloor = CarState.floorOf(state);
+        int nextFloor = CarState.nextFloorOf(state);
+        if (nextFloor < 0 || (nextFloor >= currentFloor) == (floor >= currentFloor)) {
+
+            // Idle, or already heading towards the floor
+            return Math.abs(floor - currentFloor);
+        }
+        return Math.abs(nextFloor - currentFloor) + Math.abs(floor - nextFloor);
+    }
+}
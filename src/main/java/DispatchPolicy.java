@@ -0,0 +1,24 @@
+/**
+ * Decides which car serves a rider who has just asked for an elevator.
+ * <p/>
+ * A policy only chooses. The dispatcher hands the rider to the car it
+ * returns, and the car's CarMotionStrategy decides when the car gets there.
+ * Keeping the two apart means any dispatch policy can be measured with any
+ * way of moving the cars, on the same workload.
+ * <p/>
+ * Only the simulation's dispatcher calls a policy, one rider at a time, but
+ * the cars it looks at keep moving while it decides.
+ */
+public interface DispatchPolicy {
+
+    /**
+     * Picks the car that should serve the given rider
+     *
+     * @param simulation the simulation the rider is in, whose elevators are
+     *                   the ones to choose from
+     * @param r a rider who is waiting at their start floor
+     * @return the car, or null if none can take the rider
+     */
+    public Elevator chooseCar(BuildingSimulation simulation, Rider r);
+
+}
@@ -0,0 +1,174 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/**
+ * Assigns riders waiting for an elevator to a car.
+ * <p/>
+ * When run on its own thread, the dispatcher blocks on the queue of
+ * unassigned riders and, as soon as one shows up, drains everything that is
+ * pending and assigns the whole batch. A rider wakes it straight away, so
+ * dispatch keeps up with however fast riders arrive; the wait is only cut
+ * short now and then to check whether the run is over.
+ * <p/>
+ * It also keeps track of dispatch latency: the time between a rider's request
+ * and their assignment to a car.
+ */
+public class Dispatcher implements Runnable {
+
+    final static Logger logger = Logger.getLogger("Dispatcher.class");
+
+    // The longest the dispatcher waits for a rider before checking whether
+    // the run is over. Never zero, so the last moment of a run isn't a busy loop.
+    static final long MAX_WAIT_MS = 100;
+
+    private final BuildingSimulation simulation;
+    private final BlockingQueue<Rider> unassignedRiders;
+    private final List<Rider> batch = new ArrayList<>();
+
+    // stats. Only the dispatching thread writes these.
+    private volatile long ridersDispatched;
+    private volatile long batchesDispatched;
+    private volatile long totalDispatchLatencyMs;
+    private volatile long maxDispatchLatencyMs;
+
+    public Dispatcher(final BuildingSimulation simulation,
+                      final BlockingQueue<Rider> unassignedRiders) {
+
+        if (simulation == null || unassignedRiders == null) {
+            throw new IllegalArgumentException("Dispatcher needs a simulation and a queue of " +
+                    "riders");
+        }
+        this.simulation = simulation;
+        this.unassignedRiders = unassignedRiders;
+    }
+
+    @Override
+    public void run() {
+
+        try {
+            while (simulation.simulationStillRunning()) {
+
+                long waitMs = Math.max(1, Math.min(MAX_WAIT_MS, simulation.getRemainingMillis()));
+                Rider first = unassignedRiders.poll(waitMs, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+
+                // Take everything else that has piled up, and assign it in one go
+                batch.add(first);
+                unassignedRiders.drainTo(batch);
+                dispatchAll(batch);
+                batch.clear();
+            }
+
+            logger.info("Dispatcher finished. " + getSummary());
+
+        } catch (InterruptedException e) {
+
+            logger.info("Dispatcher interrupted. " + getSummary());
+        } catch (Throwable e) {
+
+            logger.severe("Caught an issue with the dispatcher");
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Assigns a batch of riders, in order
+     *
+     * @param riders
+     * @return the elevators the riders were assigned to, in the same order
+     */
+    public List<Elevator> dispatchAll(List<Rider> riders) {
+
+        List<Elevator> assignedElevators = new ArrayList<>(riders.size());
+        for (Rider r : riders) {
+            assignedElevators.add(dispatch(r));
+        }
+        batchesDispatched++;
+        return assignedElevators;
+    }
+
+    /**
+     * Assigns a single rider to the elevator the simulation's dispatch policy
+     * picks, and records how long they waited for that assignment.
+     *
+     * @param r
+     * @return the elevator the rider was assigned to, or null if none could take them
+     */
+    public Elevator dispatch(Rider r) {
+
+        SimulationMetrics metrics = simulation.getMetrics();
+        long startNanos = metrics == null ? 0 : System.nanoTime();
+
+        Elevator e = simulation.getDispatchPolicy().chooseCar(simulation, r);
+        if (e == null) {
+            logger.warning("Not able to assign rider " + r.riderId + ". Very strange.");
+        } else {
+            e.acceptRiderRequest(r);
+        }
+
+        if (metrics != null) {
+            metrics.phaseEnded(SimulationMetrics.Phase.DISPATCH, e == null ? SimulationMetrics
+                    .NO_CAR : e.getId(), startNanos);
+        }
+
+        long latency = simulation.currentTimeMillis() - r.getRequestTime();
+        totalDispatchLatencyMs += latency;
+        if (latency > maxDispatchLatencyMs) {
+            maxDispatchLatencyMs = latency;
+        }
+        ridersDispatched++;
+
+        return e;
+    }
+
+    public long getRidersDispatched() {
+        return ridersDispatched;
+    }
+
+    public long getBatchesDispatched() {
+        return batchesDispatched;
+    }
+
+    public double getMeanDispatchLatencyMs() {
+
+        long dispatched = ridersDispatched;
+        return dispatched == 0 ? 0 : (double) totalDispatchLatencyMs / dispatched;
+    }
+
+    public long getMaxDispatchLatencyMs() {
+        return maxDispatchLatencyMs;
+    }
+
+    long getTotalDispatchLatencyMs() {
+        return totalDispatchLatencyMs;
+    }
+
+    /**
+     * Carries on the stats of the dispatcher a SimulationCheckpoint was taken from
+     *
+     * @param ridersDispatched
+     * @param batchesDispatched
+     * @param totalDispatchLatencyMs
+     * @param maxDispatchLatencyMs
+     */
+    void restoreStats(final long ridersDispatched, final long batchesDispatched,
+                      final long totalDispatchLatencyMs, final long maxDispatchLatencyMs) {
+
+        this.ridersDispatched = ridersDispatched;
+        this.batchesDispatched = batchesDispatched;
+        this.totalDispatchLatencyMs = totalDispatchLatencyMs;
+        this.maxDispatchLatencyMs = maxDispatchLatencyMs;
+    }
+
+    public String getSummary() {
+
+        return "Dispatched " + ridersDispatched + " riders in " + batchesDispatched +
+                " batches. Dispatch latency: mean " + getMeanDispatchLatencyMs() + " ms, max " +
+                maxDispatchLatencyMs + " ms";
+    }
+}
@@ -3,6 +3,7 @@
  */
 
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * An Elevator object represents the idea of a real-life elevator.
@@ -16,7 +17,11 @@ public abstract class Elevator implements ElevatorAlgorithm, Runnable {
         NOT_MOVING,
         UP;
     }
-    // state
+    // The simulation this elevator belongs to
+    protected BuildingSimulation simulation;
+
+    // state. Only the thread driving the elevator touches these; every other
+    // thread reads the snapshot in state, which publishState() brings up to date.
     protected int id;
     protected int currentFloor;
     protected Integer nextFloorToVisit; // could be null if the elevator is not needed
@@ -24,7 +29,127 @@ public abstract class Elevator implements ElevatorAlgorithm, Runnable {
 
     protected Set<Rider> riders;
 
+    // The latest CarState snapshot of currentFloor, travelDirection and nextFloorToVisit
+    private final AtomicLong state = new AtomicLong(CarState.pack(0, null, null));
+
     //stats
     int totalRidersTransported = 0;
+    final LatencyHistogram waitTimes = new LatencyHistogram();
+    final LatencyHistogram tripTimes = new LatencyHistogram();
+
+    /**
+     * Where this elevator is and where it's going, as a CarState snapshot.
+     * Reading the position through one snapshot, rather than through the
+     * getters below one after the other, gives values that belong together.
+     *
+     * @return
+     */
+    public long getState() {
+        return state.get();
+    }
+
+    public int getCurrentFloor() {
+        return CarState.floorOf(state.get());
+    }
+
+    /**
+     * The way this elevator last travelled
+     *
+     * @return the direction, or NOT_MOVING if it hasn't moved yet
+     */
+    public Elevator.Direction getTravelDirection() {
+
+        Elevator.Direction direction = CarState.directionOf(state.get());
+        return direction == null ? Elevator.Direction.NOT_MOVING : direction;
+    }
+
+    /**
+     * The floor this elevator is heading for
+     *
+     * @return the floor, or null if it has nowhere to go
+     */
+    public Integer getNextFloorToVisit() {
+
+        int nextFloor = CarState.nextFloorOf(state.get());
+        return nextFloor < 0 ? null : nextFloor;
+    }
+
+    /**
+     * Publishes the elevator's position for other threads to read. Called by
+     * the thread driving the elevator after it changes any of it.
+     */
+    void publishState() {
 
+        // Only one thread ever writes the snapshot, so an ordered store is enough
+        state.lazySet(CarState.pack(currentFloor, travelDirection, nextFloorToVisit));
+    }
+
+    /**
+     * Puts the elevator somewhere, as if it had travelled there. For setting
+     * up tests and benchmarks, from the thread driving the elevator.
+     *
+     * @param floor
+     * @param direction
+     */
+    void setPosition(final int floor, final Elevator.Direction direction) {
+
+        this.currentFloor = floor;
+        this.travelDirection = direction;
+        publishState();
+    }
+
+    /**
+     * Whether this elevator is going to stop at the given floor, to pick a
+     * rider up or to drop one off
+     *
+     * @param floor
+     * @return
+     */
+    public abstract boolean hasStopAt(int floor);
+
+    /**
+     * How long until this elevator could open its doors at the given floor,
+     * counting the stops it already has to make on the way
+     *
+     * @param floor
+     * @return simulated milliseconds
+     */
+    public abstract long estimateTimeToReach(int floor);
+
+    /**
+     * How much a new stop at the given floor would hold up the stops this
+     * elevator already has to make
+     *
+     * @param floor
+     * @return simulated milliseconds
+     */
+    public abstract long estimateDelayFromStopAt(int floor);
+
+    /**
+     * How long this elevator's riders waited to board it
+     *
+     * @return
+     */
+    public LatencyHistogram getWaitTimes() {
+        return waitTimes;
+    }
+
+    /**
+     * How long this elevator's riders took to reach their destination, from
+     * the moment they asked for an elevator
+     *
+     * @return
+     */
+    public LatencyHistogram getTripTimes() {
+        return tripTimes;
+    }
+
+    /**
+     * Boards a rider who was assigned to this elevator and is waiting on the
+     * floor it has stopped at
+     *
+     * @param r
+     */
+    void riderBoarded(Rider r) {
+    }
 }
\ No newline at end of file
@@ -0,0 +1,213 @@
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+
+/**
+ * The elevators of a simulation, indexed by travel direction and floor.
+ * <p/>
+ * Each direction keeps an ordered map from floor to the cars currently on it,
+ * so the closest car travelling towards a floor is found with a single
+ * floor/ceiling lookup instead of a scan over every car. Cars report every
+ * change of floor or direction through update(), which indexes the car's
+ * latest published state. Cars that have never been given a direction aren't
+ * indexed at all.
+ * <p/>
+ * Cars that are equally close are told apart by id, lowest first, which is
+ * the order a scan of the elevator list would find them in.
+ * <p/>
+ * Nothing is locked. The maps and the per-floor sets are concurrent skip
+ * lists, and each car only ever moves its own entry, so cars moving on
+ * different floors don't contend and dispatch reads never wait on a car.
+ * A lookup sees each car either where it was or where it is now.
+ */
+public class ElevatorIndex {
+
+    private static final Comparator<Elevator> BY_ID = new Comparator<Elevator>() {
+        @Override
+        public int compare(Elevator a, Elevator b) {
+            return Integer.compare(a.getId(), b.getId());
+        }
+    };
+
+    private final Map<Elevator.Direction, ConcurrentSkipListMap<Integer,
+            NavigableSet<Elevator>>> carsByDirection = new EnumMap<>(Elevator.Direction.class);
+
+    // Where each car is currently indexed, by car id. Only the car itself
+    // updates its entry.
+    private final int[] indexedFloors;
+    private final Elevator.Direction[] indexedDirections;
+
+    public ElevatorIndex(final int numElevators) {
+
+        if (numElevators < 0) {
+            throw new IllegalArgumentException("Invalid number of elevators: " + numElevators);
+        }
+
+        for (Elevator.Direction direction : Elevator.Direction.values()) {
+            carsByDirection.put(direction, new ConcurrentSkipListMap<Integer,
+                    NavigableSet<Elevator>>());
+        }
+        indexedFloors = new int[numElevators];
+        indexedDirections = new Elevator.Direction[numElevators];
+    }
+
+    /**
+     * Moves a car to the entry for its current floor and direction. Must not
+     * be called for the same car from two threads at once.
+     *
+     * @param e
+     */
+    public void update(final Elevator e) {
+
+        int id = e.getId();
+        long state = e.getState();
+        int floor = CarState.floorOf(state);
+        Elevator.Direction direction = CarState.directionOf(state);
+
+        if (indexedDirections[id] == direction && indexedFloors[id] == floor) {
+            return;
+        }
+
+        // Add the car to its new floor before taking it off the old one, so
+        // a lookup in between never misses it
+        if (direction != null) {
+            add(carsByDirection.get(direction), floor, e);
+        }
+
+        if (indexedDirections[id] != null) {
+
+            ConcurrentSkipListMap<Integer, NavigableSet<Elevator>> cars = carsByDirection.get
+                    (indexedDirections[id]);
+            NavigableSet<Elevator> carsOnFloor = cars.get(indexedFloors[id]);
+            carsOnFloor.remove(e);
+            if (carsOnFloor.isEmpty()) {
+                cars.remove(indexedFloors[id], carsOnFloor);
+            }
+        }
+
+        indexedFloors[id] = floor;
+        indexedDirections[id] = direction;
+    }
+
+    /**
+     * Finds the closest car that can head to the given floor: a car going up
+     * from at or below it, a car going down from at or above it, or a car
+     * standing still anywhere.
+     *
+     * @param floor
+     * @param distanceToBeat only cars strictly closer than this are considered
+     * @return the closest such car, or null if no car is closer than distanceToBeat
+     */
+    public Elevator findClosest(final int floor, final int distanceToBeat) {
+
+        Closest closest = new Closest(floor, distanceToBeat);
+
+        ConcurrentSkipListMap<Integer, NavigableSet<Elevator>> up = carsByDirection.get(Elevator
+                .Direction.UP);
+        ConcurrentSkipListMap<Integer, NavigableSet<Elevator>> down = carsByDirection.get
+                (Elevator.Direction.DOWN);
+        ConcurrentSkipListMap<Integer, NavigableSet<Elevator>> stationary = carsByDirection.get
+                (Elevator.Direction.NOT_MOVING);
+
+        closest.offerAtOrBelow(up, floor);
+        closest.offerAtOrAbove(down, floor);
+        closest.offerAtOrBelow(stationary, floor);
+        closest.offerAtOrAbove(stationary, floor);
+
+        return closest.car;
+    }
+
+    /**
+     * Adds a car to the set for a floor. A set that another car emptied may
+     * be dropped from the map at any moment, so the add is only done once the
+     * car is in the set the map holds.
+     */
+    private static void add(final ConcurrentSkipListMap<Integer, NavigableSet<Elevator>> cars,
+                            final int floor, final Elevator e) {
+
+        while (true) {
+
+            NavigableSet<Elevator> carsOnFloor = cars.get(floor);
+            if (carsOnFloor == null) {
+                NavigableSet<Elevator> newSet = new ConcurrentSkipListSet<>(BY_ID);
+                carsOnFloor = cars.putIfAbsent(floor, newSet);
+                if (carsOnFloor == null) {
+                    carsOnFloor = newSet;
+                }
+            }
+
+            carsOnFloor.add(e);
+            if (cars.get(floor) == carsOnFloor) {
+                return;
+            }
+            carsOnFloor.remove(e);
+        }
+    }
+
+    /**
+     * The best car found so far for a floor
+     */
+    private static class Closest {
+
+        final int floor;
+        int distance;
+        Elevator car;
+
+        Closest(final int floor, final int distanceToBeat) {
+            this.floor = floor;
+            this.distance = distanceToBeat;
+        }
+
+        /**
+         * Offers the nearest floor at or below this one with a car on it
+         */
+        void offerAtOrBelow(final ConcurrentSkipListMap<Integer, NavigableSet<Elevator>> cars,
+                            final int from) {
+
+            Map.Entry<Integer, NavigableSet<Elevator>> carsOnFloor = cars.floorEntry(from);
+            while (carsOnFloor != null && !offer(carsOnFloor)) {
+                carsOnFloor = cars.lowerEntry(carsOnFloor.getKey());
+            }
+        }
+
+        /**
+         * Offers the nearest floor at or above this one with a car on it
+         */
+        void offerAtOrAbove(final ConcurrentSkipListMap<Integer, NavigableSet<Elevator>> cars,
+                            final int from) {
+
+            Map.Entry<Integer, NavigableSet<Elevator>> carsOnFloor = cars.ceilingEntry(from);
+            while (carsOnFloor != null && !offer(carsOnFloor)) {
+                carsOnFloor = cars.higherEntry(carsOnFloor.getKey());
+            }
+        }
+
+        /**
+         * Keeps the lowest-id car on the given floor if it's closer than the
+         * best so far, or just as close with a lower id
+         *
+         * @return false if the floor's cars had all just left it
+         */
+        boolean offer(final Map.Entry<Integer, NavigableSet<Elevator>> carsOnFloor) {
+
+            Iterator<Elevator> cars = carsOnFloor.getValue().iterator();
+            if (!cars.hasNext()) {
+                return false;
+            }
+
+            Elevator candidate = cars.next();
+            int candidateDistance = Math.abs(carsOnFloor.getKey() - floor);
+            if (candidateDistance < distance || (candidateDistance == distance && car != null &&
+                    candidate.getId() < car.getId())) {
+
+                car = candidate;
+                distance = candidateDistance;
+            }
+            return true;
+        }
+    }
+}
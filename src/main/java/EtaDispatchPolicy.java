@@ -0,0 +1,66 @@
+/**
+ * Assigns each rider to the car that can get to them soonest.
+ * <p/>
+ * A car's estimated time of arrival counts the floors it has to travel and
+ * a door cycle for every stop it already has to make on the way, so a busy
+ * car close by can lose to an idle one further off. The riders a car is
+ * already carrying are counted too: the new stop's hold-up to each of the
+ * car's later stops is added to its cost. Each car keeps the figures these
+ * estimates need up to date as its stops change, so scoring a car never
+ * walks its route.
+ * <p/>
+ * Cars already committed to as many riders as they can carry are passed
+ * over, unless every car is.
+ */
+public class EtaDispatchPolicy implements DispatchPolicy {
+
+    private final int carCapacity;
+
+    /**
+     * A policy for cars that can carry any number of riders
+     */
+    public EtaDispatchPolicy() {
+        this(Integer.MAX_VALUE);
+    }
+
+    /**
+     * @param carCapacity the most riders a car should be waiting for or carrying at once
+     */
+    public EtaDispatchPolicy(final int carCapacity) {
+
+        if (carCapacity <= 0) {
+            throw new IllegalArgumentException("Invalid car capacity: " + carCapacity);
+        }
+        this.carCapacity = carCapacity;
+    }
+
+    public int getCarCapacity() {
+        return carCapacity;
+    }
+
+    @Override
+    public Elevator chooseCar(final BuildingSimulation simulation, final Rider r) {
+
+        int floor = r.getStartFloor();
+
+        Elevator best = null;
+        long bestCost = Long.MAX_VALUE;
+        Elevator bestFull = null;
+        long bestFullCost = Long.MAX_VALUE;
+
+        for (Elevator e : simulation.getElevators()) {
+
+            long cost = e.estimateTimeToReach(floor) + e.estimateDelayFromStopAt(floor);
+            if (e.getNumberOfRiders() < carCapacity) {
+                if (cost < bestCost) {
+                    best = e;
+                    bestCost = cost;
+                }
+            } else if (cost < bestFullCost) {
+                bestFull = e;
+                bestFullCost = cost;
+            }
+        }
+        return best != null ? best : bestFull;
+    }
+}
@@ -0,0 +1,142 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * A discrete-event scheduler driven by a virtual clock.
+ * <p/>
+ * Events are kept in a priority queue ordered by the simulated time at which
+ * they fire. Running the scheduler jumps the clock straight from one event to
+ * the next, so no real time is spent waiting. Events that are due at the same
+ * instant fire in the order they were scheduled, which keeps runs deterministic.
+ * <p/>
+ * The scheduler is not thread-safe: events are expected to be scheduled either
+ * before the run starts or from within other events.
+ */
+public class EventScheduler {
+
+    private final PriorityQueue<ScheduledEvent> events = new PriorityQueue<>();
+
+    // The virtual time, in milliseconds, of the event currently being processed
+    private long now;
+
+    // Breaks ties between events scheduled for the same instant
+    private long sequence;
+
+    private long eventsProcessed;
+
+    public EventScheduler() {
+        this(0);
+    }
+
+    public EventScheduler(final long startTime) {
+        this.now = startTime;
+    }
+
+    /**
+     * The current virtual time, in milliseconds
+     *
+     * @return
+     */
+    public long now() {
+        return now;
+    }
+
+    /**
+     * Schedules an action to fire after the given amount of simulated time
+     *
+     * @param delayMs
+     * @param action
+     */
+    public void schedule(final long delayMs, final Runnable action) {
+
+        if (delayMs < 0) {
+            throw new IllegalArgumentException("Cannot schedule an event in the past");
+        }
+        scheduleAt(now + delayMs, action);
+    }
+
+    /**
+     * Schedules an action to fire at an absolute simulated time
+     *
+     * @param time
+     * @param action
+     */
+    public void scheduleAt(final long time, final Runnable action) {
+
+        if (time < now || action == null) {
+            throw new IllegalArgumentException("Invalid event: time " + time + " is before " +
+                    now + " or no action was given");
+        }
+        events.add(new ScheduledEvent(time, sequence++, action));
+    }
+
+    /**
+     * Fires every event due at or before endTime, in time order, and then
+     * advances the clock to endTime.
+     *
+     * @param endTime
+     * @return the number of events fired during this call
+     */
+    public long runUntil(final long endTime) {
+
+        long fired = 0;
+        while (!events.isEmpty() && events.peek().time <= endTime) {
+
+            ScheduledEvent event = events.poll();
+            now = event.time;
+            event.action.run();
+            fired++;
+        }
+
+        if (endTime > now) {
+            now = endTime;
+        }
+
+        eventsProcessed += fired;
+        return fired;
+    }
+
+    public int getPendingEvents() {
+        return events.size();
+    }
+
+    /**
+     * The events still to fire, in the order they will fire
+     *
+     * @return
+     */
+    List<ScheduledEvent> getPendingEventsInOrder() {
+
+        List<ScheduledEvent> pending = new ArrayList<>(events);
+        Collections.sort(pending);
+        return pending;
+    }
+
+    public long getEventsProcessed() {
+        return eventsProcessed;
+    }
+
+    static class ScheduledEvent implements Comparable<ScheduledEvent> {
+
+        final long time;
+        final long sequence;
+        final Runnable action;
+
+        ScheduledEvent(final long time, final long sequence, final Runnable action) {
+            this.time = time;
+            this.sequence = sequence;
+            this.action = action;
+        }
+
+        @Override
+        public int compareTo(ScheduledEvent other) {
+
+            if (time != other.time) {
+                return time < other.time ? -1 : 1;
+            }
+            return sequence < other.sequence ? -1 : (sequence == other.sequence ? 0 : 1);
+        }
+    }
+}
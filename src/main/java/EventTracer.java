@@ -0,0 +1,286 @@
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Records what happens during a simulation as fixed-size binary records, in
+ * place of a log line per event.
+ * <p/>
+ * Any thread can record an event. Its fields go straight into preallocated
+ * arrays that form a ring buffer, so recording allocates nothing, takes no
+ * lock and does no I/O. A background thread drains the ring into a binary
+ * file, RECORD_SIZE bytes per event. If the drainer falls a whole ring
+ * behind, new events are dropped and counted rather than making the
+ * simulation wait.
+ * <p/>
+ * The file is only turned into text on request, with printTrace().
+ * <p/>
+ * Usage: build a tracer, start() it, hand it to BuildingSimulation.setEventTracer(),
+ * and close() it once the run is over.
+ */
+public class EventTracer implements Closeable {
+
+    public enum Type {
+        RIDER_REQUESTED,
+        RIDER_ASSIGNED,
+        RIDER_BOARDED,
+        RIDER_DELIVERED,
+        CAR_MOVED,
+        CAR_STOPPED;
+    }
+
+    // type, time, car id, rider id, floor
+    static final int RECORD_SIZE = 4 + 8 + 4 + 4 + 4;
+
+    // Written in place of the car or rider id when an event doesn't have one
+    static final int NONE = -1;
+
+    private static final long DRAIN_INTERVAL_NANOS = 1000000;
+
+    private final int capacity;
+    private final int mask;
+
+    // One ring of each field. A slot's fields are safe to read once its entry
+    // in published holds the sequence number they were written for.
+    private final int[] types;
+    private final long[] times;
+    private final int[] carIds;
+    private final int[] riderIds;
+    private final int[] floors;
+    private final AtomicLongArray published;
+
+    private final AtomicLong nextSequence = new AtomicLong();
+    private final AtomicLong drainedSequence = new AtomicLong();
+    private final AtomicLong eventsDropped = new AtomicLong();
+
+    private final FileChannel channel;
+    private final ByteBuffer writeBuffer;
+    private final Thread drainer;
+    private volatile boolean closed;
+
+    /**
+     * @param traceFile where the binary records are written. It is replaced if it exists.
+     * @param capacity how many events the ring holds; rounded up to a power of two
+     * @throws IOException
+     */
+    public EventTracer(final File traceFile, final int capacity) throws IOException {
+
+        if (capacity <= 0 || capacity > 1 << 30) {
+            throw new IllegalArgumentException("Invalid capacity: " + capacity);
+        }
+
+        int ringSize = 1;
+        while (ringSize < capacity) {
+            ringSize <<= 1;
+        }
+        this.capacity = ringSize;
+        this.mask = ringSize - 1;
+
+        types = new int[this.capacity];
+        times = new long[this.capacity];
+        carIds = new int[this.capacity];
+        riderIds = new int[this.capacity];
+        floors = new int[this.capacity];
+        published = new AtomicLongArray(this.capacity);
+        for (int i = 0; i < this.capacity; i++) {
+            published.set(i, -1);
+        }
+
+        channel = FileChannel.open(Paths.get(traceFile.getPath()), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        writeBuffer = ByteBuffer.allocateDirect(RECORD_SIZE * 1024);
+
+        drainer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                drainUntilClosed();
+            }
+        }, "event-tracer");
+        drainer.setDaemon(true);
+    }
+
+    /**
+     * Starts draining recorded events to the file
+     */
+    public void start() {
+        drainer.start();
+    }
+
+    /**
+     * Records one event
+     *
+     * @param type
+     * @param time simulation time, in milliseconds
+     * @param carId the car involved, or NONE
+     * @param riderId the rider involved, or NONE
+     * @param floor
+     */
+    public void record(final Type type, final long time, final int carId, final int riderId,
+                       final int floor) {
+
+        long sequence;
+        do {
+            sequence = nextSequence.get();
+            if (sequence - drainedSequence.get() >= capacity) {
+                eventsDropped.incrementAndGet();
+                return;
+            }
+        } while (!nextSequence.compareAndSet(sequence, sequence + 1));
+
+        int slot = (int) sequence & mask;
+        types[slot] = type.ordinal();
+        times[slot] = time;
+        carIds[slot] = carId;
+        riderIds[slot] = riderId;
+        floors[slot] = floor;
+        published.lazySet(slot, sequence);
+    }
+
+    public long getEventsRecorded() {
+        return nextSequence.get();
+    }
+
+    /**
+     * How many events were thrown away because the ring was full
+     *
+     * @return
+     */
+    public long getEventsDropped() {
+        return eventsDropped.get();
+    }
+
+    /**
+     * Writes out every event recorded so far and closes the file
+     *
+     * @throws IOException
+     */
+    @Override
+    public void close() throws IOException {
+
+        closed = true;
+        try {
+            if (drainer.isAlive()) {
+                drainer.join();
+            } else {
+                drain();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            channel.close();
+        }
+    }
+
+    private void drainUntilClosed() {
+
+        try {
+            while (!closed) {
+                if (!drain()) {
+                    LockSupport.parkNanos(DRAIN_INTERVAL_NANOS);
+                }
+            }
+            drain();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Writes out the events that have been published, in order
+     *
+     * @return whether there was anything to write
+     * @throws IOException
+     */
+    private boolean drain() throws IOException {
+
+        long sequence = drainedSequence.get();
+        long start = sequence;
+        while (true) {
+
+            int slot = (int) sequence & mask;
+            if (published.get(slot) != sequence) {
+                break;
+            }
+
+            if (writeBuffer.remaining() < RECORD_SIZE) {
+                flush();
+            }
+            writeBuffer.putInt(types[slot]);
+            writeBuffer.putLong(times[slot]);
+            writeBuffer.putInt(carIds[slot]);
+            writeBuffer.putInt(riderIds[slot]);
+            writeBuffer.putInt(floors[slot]);
+
+            sequence++;
+            drainedSequence.lazySet(sequence);
+        }
+        flush();
+        return sequence != start;
+    }
+
+    private void flush() throws IOException {
+
+        writeBuffer.flip();
+        while (writeBuffer.hasRemaining()) {
+            channel.write(writeBuffer);
+        }
+        writeBuffer.clear();
+    }
+
+    /**
+     * Prints a trace file as text, one event per line
+     *
+     * @param traceFile
+     * @param out
+     * @return the number of events printed
+     * @throws IOException
+     */
+    public static long printTrace(final File traceFile, final PrintStream out) throws
+            IOException {
+
+        Type[] types = Type.values();
+        long events = 0;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new
+                FileInputStream(traceFile)))) {
+
+            while (true) {
+
+                int type;
+                try {
+                    type = in.readInt();
+                } catch (EOFException e) {
+                    return events;
+                }
+                long time = in.readLong();
+                int carId = in.readInt();
+                int riderId = in.readInt();
+                int floor = in.readInt();
+
+                out.println(time + " " + types[type] + " car=" + carId + " rider=" + riderId +
+                        " floor=" + floor);
+                events++;
+            }
+        }
+    }
+
+    public static void main(String args[]) throws IOException {
+
+        if (args.length != 1) {
+            System.err.println("Usage: EventTracer <trace file>");
+            System.exit(1);
+        }
+        printTrace(new File(args[0]), System.out);
+    }
+}
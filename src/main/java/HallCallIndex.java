@@ -0,0 +1,105 @@
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Riders waiting for an elevator, indexed by the floor they are waiting on and
+ * the direction they want to travel in. This is the building's set of hall calls.
+ * <p/>
+ * A rider is enqueued when they arrive at their start floor and dequeued when
+ * they board. An elevator stopping at a floor only looks at the riders waiting
+ * on that floor, so the cost of a stop does not depend on how many riders the
+ * simulation has seen in total.
+ */
+public class HallCallIndex {
+
+    private final Queue<Rider>[] waitingUp;
+    private final Queue<Rider>[] waitingDown;
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public HallCallIndex(final int numFloors) {
+
+        if (numFloors < 0) {
+            throw new IllegalArgumentException("Invalid number of floors: " + numFloors);
+        }
+
+        // Floors are numbered from 1, but elevators start out on floor 0
+        waitingUp = new Queue[numFloors + 1];
+        waitingDown = new Queue[numFloors + 1];
+        for (int floor = 0; floor <= numFloors; floor++) {
+            waitingUp[floor] = new ConcurrentLinkedQueue<>();
+            waitingDown[floor] = new ConcurrentLinkedQueue<>();
+        }
+    }
+
+    /**
+     * Registers a rider as waiting at their start floor
+     *
+     * @param r
+     */
+    public void enqueue(Rider r) {
+        queueFor(r.getStartFloor(), r.getDirection()).add(r);
+    }
+
+    /**
+     * Boards the riders waiting at the given floor who were assigned to the
+     * given elevator, removing them from the index. Riders waiting for another
+     * elevator stay where they are.
+     *
+     * @param floor
+     * @param e
+     * @return the number of riders who boarded
+     */
+    public int boardAssignedRiders(final int floor, final Elevator e) {
+
+        return board(queueFor(floor, Elevator.Direction.UP), e) +
+                board(queueFor(floor, Elevator.Direction.DOWN), e);
+    }
+
+    /**
+     * The number of riders waiting at the given floor to travel in the
+     * given direction
+     *
+     * @param floor
+     * @param direction
+     * @return
+     */
+    public int getNumberWaiting(final int floor, final Elevator.Direction direction) {
+        return queueFor(floor, direction).size();
+    }
+
+    /**
+     * The riders waiting at the given floor to travel in the given direction,
+     * in the order they arrived
+     *
+     * @param floor
+     * @param direction
+     * @return
+     */
+    Iterable<Rider> getWaiting(final int floor, final Elevator.Direction direction) {
+        return queueFor(floor, direction);
+    }
+
+    private int board(final Queue<Rider> waiting, final Elevator e) {
+
+        int boarded = 0;
+        for (Iterator<Rider> it = waiting.iterator(); it.hasNext(); ) {
+
+            Rider r = it.next();
+            if (e.riders.contains(r)) {
+                it.remove();
+                e.riderBoarded(r);
+                boarded++;
+            }
+        }
+        return boarded;
+    }
+
+    private Queue<Rider> queueFor(final int floor, final Elevator.Direction direction) {
+
+        if (floor < 0 || floor >= waitingUp.length) {
+            throw new IllegalArgumentException("No such floor: " + floor);
+        }
+        return direction == Elevator.Direction.DOWN ? waitingDown[floor] : waitingUp[floor];
+    }
+}
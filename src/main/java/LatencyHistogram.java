@@ -0,0 +1,215 @@
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A fixed-size histogram of latencies, in milliseconds, that any number of
+ * threads can record into without locking.
+ * <p/>
+ * Buckets are log-linear, the way HdrHistogram lays them out: values below
+ * 2^SUB_BUCKET_BITS get a bucket each, and every power of two above that is
+ * split into 2^SUB_BUCKET_BITS equal buckets. Any recorded value is therefore
+ * reported to within about 3% of itself, using the same 8KB no matter how
+ * many values are recorded. Recording a value is a handful of atomic adds.
+ * <p/>
+ * Reads can happen while other threads are recording. They see a consistent
+ * enough picture for monitoring, but only an idle histogram gives exact totals.
+ */
+public class LatencyHistogram {
+
+    static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+
+    // Larger values are recorded as this one. It's a little over two years.
+    static final long HIGHEST_TRACKABLE_VALUE = (1L << 36) - 1;
+
+    private static final int BUCKET_COUNT = indexFor(HIGHEST_TRACKABLE_VALUE) + 1;
+
+    // The most bytes writeTo() takes: the totals, then an index and count per bucket
+    static final int SERIALIZED_SIZE = 8 + 8 + 8 + 4 + BUCKET_COUNT * (2 + 8);
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+    private final AtomicLong totalCount = new AtomicLong();
+    private final AtomicLong totalValue = new AtomicLong();
+    private final AtomicLong maxValue = new AtomicLong();
+
+    /**
+     * Records one latency. A negative value, which a wall clock stepping
+     * backwards can produce, is recorded as 0.
+     *
+     * @param value in milliseconds
+     */
+    public void record(final long value) {
+
+        long clamped = Math.min(Math.max(value, 0), HIGHEST_TRACKABLE_VALUE);
+
+        counts.incrementAndGet(indexFor(clamped));
+        totalCount.incrementAndGet();
+        totalValue.addAndGet(clamped);
+
+        long max;
+        while (clamped > (max = maxValue.get()) && !maxValue.compareAndSet(max, clamped)) {
+            // Lost a race with another thread, so look again
+        }
+    }
+
+    /**
+     * Adds every value recorded in another histogram to this one, as if they
+     * had been recorded here
+     *
+     * @param other
+     */
+    public void add(final LatencyHistogram other) {
+
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            long count = other.counts.get(i);
+            if (count != 0) {
+                counts.addAndGet(i, count);
+            }
+        }
+        totalCount.addAndGet(other.totalCount.get());
+        totalValue.addAndGet(other.totalValue.get());
+
+        long otherMax = other.maxValue.get();
+        long max;
+        while (otherMax > (max = maxValue.get()) && !maxValue.compareAndSet(max, otherMax)) {
+            // Lost a race with another thread, so look again
+        }
+    }
+
+    /**
+     * Writes every value recorded so far, taking up to SERIALIZED_SIZE bytes
+     *
+     * @param out
+     */
+    void writeTo(final ByteBuffer out) {
+
+        int nonEmptyBuckets = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            if (counts.get(i) != 0) {
+                nonEmptyBuckets++;
+            }
+        }
+
+        out.putLong(totalCount.get()).putLong(totalValue.get()).putLong(maxValue.get());
+        out.putInt(nonEmptyBuckets);
+        for (int i = 0; i < BUCKET_COUNT && nonEmptyBuckets > 0; i++) {
+            long count = counts.get(i);
+            if (count != 0) {
+                out.putShort((short) i).putLong(count);
+                nonEmptyBuckets--;
+            }
+        }
+    }
+
+    /**
+     * Reads a histogram written by writeTo()
+     *
+     * @param in
+     * @return
+     */
+    static LatencyHistogram readFrom(final ByteBuffer in) {
+
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.totalCount.set(in.getLong());
+        histogram.totalValue.set(in.getLong());
+        histogram.maxValue.set(in.getLong());
+        int nonEmptyBuckets = in.getInt();
+        for (int i = 0; i < nonEmptyBuckets; i++) {
+            int index = in.getShort();
+            if (index < 0 || index >= BUCKET_COUNT) {
+                throw new IllegalArgumentException("No such bucket: " + index);
+            }
+            histogram.counts.set(index, in.getLong());
+        }
+        return histogram;
+    }
+
+    public long getCount() {
+        return totalCount.get();
+    }
+
+    public long getMax() {
+        return maxValue.get();
+    }
+
+    public double getMean() {
+
+        long count = totalCount.get();
+        return count == 0 ? 0 : (double) totalValue.get() / count;
+    }
+
+    /**
+     * The value that the given percentage of recorded values are at or below
+     *
+     * @param percentile between 0 and 100
+     * @return the highest value in the bucket holding that percentile, or 0
+     * if nothing has been recorded
+     */
+    public long getValueAtPercentile(final double percentile) {
+
+        if (percentile < 0 || percentile > 100) {
+            throw new IllegalArgumentException("Invalid percentile: " + percentile);
+        }
+
+        long count = totalCount.get();
+        if (count == 0) {
+            return 0;
+        }
+
+        long countAtPercentile = Math.max(1, (long) Math.ceil(percentile / 100 * count));
+        long countSoFar = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+
+            countSoFar += counts.get(i);
+            if (countSoFar >= countAtPercentile) {
+                return Math.min(highestValueFor(i), getMax());
+            }
+        }
+        return getMax();
+    }
+
+    /**
+     * A one-line summary of the percentiles that matter for comparing
+     * dispatch algorithms
+     *
+     * @return
+     */
+    public String getSummary() {
+
+        return String.format("n=%d mean=%.1fms p50=%dms p99=%dms p99.9=%dms max=%dms",
+                getCount(), getMean(), getValueAtPercentile(50), getValueAtPercentile(99),
+                getValueAtPercentile(99.9), getMax());
+    }
+
+    /**
+     * The bucket a value falls in. Values below SUB_BUCKET_COUNT map to
+     * themselves; above that, the bucket is picked by the position of the
+     * highest set bit and the SUB_BUCKET_BITS bits below it.
+     */
+    static int indexFor(final long value) {
+
+        if (value < SUB_BUCKET_COUNT) {
+            return (int) value;
+        }
+
+        int magnitude = 63 - Long.numberOfLeadingZeros(value);
+        int shift = magnitude - SUB_BUCKET_BITS;
+        int subBucket = (int) (value >>> shift) - SUB_BUCKET_COUNT;
+        return (shift + 1) * SUB_BUCKET_COUNT + subBucket;
+    }
+
+    /**
+     * The largest value that falls in the given bucket
+     */
+    static long highestValueFor(final int index) {
+
+        if (index < SUB_BUCKET_COUNT) {
+            return index;
+        }
+
+        int shift = index / SUB_BUCKET_COUNT - 1;
+        long lowestValue = (long) (index % SUB_BUCKET_COUNT + SUB_BUCKET_COUNT) << shift;
+        return lowestValue + (1L << shift) - 1;
+    }
+}
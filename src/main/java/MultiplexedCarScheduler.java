@@ -0,0 +1,124 @@
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Logger;
+
+/**
+ * Runs any number of elevators in real time on a fixed, small pool of threads.
+ * <p/>
+ * Rather than giving each car a thread that sleeps through every floor and
+ * door cycle, each step of a car is a task. When the step is done, the next
+ * one is scheduled after the time the step takes. A car with nowhere to go
+ * schedules nothing, and is resubmitted when a rider is assigned to it. The
+ * number of threads, and the context switching between them, therefore stays
+ * the same however many cars there are.
+ */
+public class MultiplexedCarScheduler {
+
+    final static Logger logger = Logger.getLogger("MultiplexedCarScheduler.class");
+
+    private final BuildingSimulation simulation;
+    private final ScheduledExecutorService pool;
+
+    public MultiplexedCarScheduler(final BuildingSimulation simulation, final int numThreads) {
+
+        if (numThreads <= 0) {
+            throw new IllegalArgumentException("Invalid number of threads: " + numThreads);
+        }
+        this.simulation = simulation;
+        this.pool = new ScheduledThreadPoolExecutor(numThreads);
+    }
+
+    /**
+     * Starts driving the given car
+     *
+     * @param car
+     */
+    public void start(final ClosestAcceptElevator car) {
+
+        CarTask task = new CarTask(car);
+        car.setWakeUpHook(task.wakeUp);
+        task.wake();
+    }
+
+    public void shutdown() {
+        pool.shutdown();
+    }
+
+    public boolean awaitTermination(final long timeout, final TimeUnit unit)
+            throws InterruptedException {
+        return pool.awaitTermination(timeout, unit);
+    }
+
+    /**
+     * Takes one step of a car, then schedules the next one. At most one step
+     * of a car is ever queued or running.
+     */
+    private class CarTask implements Runnable {
+
+        private final ClosestAcceptElevator car;
+
+        // Whether a step of this car is queued or running
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+
+        private final Runnable wakeUp = new Runnable() {
+            @Override
+            public void run() {
+                wake();
+            }
+        };
+
+        CarTask(final ClosestAcceptElevator car) {
+            this.car = car;
+        }
+
+        /**
+         * Submits a step right away, unless one is already queued or running
+         */
+        void wake() {
+
+            if (scheduled.compareAndSet(false, true)) {
+                submit(0);
+            }
+        }
+
+        @Override
+        public void run() {
+
+            try {
+                if (!simulation.simulationStillRunning()) {
+                    return;
+                }
+
+                long busyMs = car.step();
+                if (busyMs != ClosestAcceptElevator.IDLE) {
+                    submit(busyMs);
+                    return;
+                }
+
+                scheduled.set(false);
+
+                // A rider may have been assigned between the step and parking the car
+                if (car.hasWork()) {
+                    wake();
+                }
+
+            } catch (Throwable e) {
+
+                logger.severe("Caught an issue with elevator " + car.getId());
+                e.printStackTrace();
+            }
+        }
+
+        private void submit(final long delayMs) {
+
+            try {
+                pool.schedule(this, delayMs, TimeUnit.MILLISECONDS);
+            } catch (RejectedExecutionException e) {
+                // The simulation is over and the pool is shutting down
+            }
+        }
+    }
+}
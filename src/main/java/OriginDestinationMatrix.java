@@ -0,0 +1,205 @@
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+/**
+ * How likely a trip is to go between each pair of floors.
+ * <p/>
+ * Entry [from][to] is the relative weight of trips from one floor to
+ * another; only the ratios between weights matter. Floors are numbered from
+ * 1, and the lobby is floor 1. The factory methods give the classic office
+ * traffic patterns, and mix() blends them.
+ */
+public class OriginDestinationMatrix {
+
+    static final int LOBBY = 1;
+
+    private final int numFloors;
+    private final double[][] weights;
+
+    // Running totals of the weights, for sampling with a binary search
+    private double[] cumulativeOrigins;
+    private double[][] cumulativeDestinations;
+
+    public OriginDestinationMatrix(final int numFloors) {
+
+        if (numFloors < 2) {
+            throw new IllegalArgumentException("Invalid number of floors: " + numFloors);
+        }
+        this.numFloors = numFloors;
+        this.weights = new double[numFloors + 1][numFloors + 1];
+    }
+
+    /**
+     * Every trip between two different floors is equally likely
+     *
+     * @param numFloors
+     * @return
+     */
+    public static OriginDestinationMatrix uniform(final int numFloors) {
+
+        OriginDestinationMatrix matrix = new OriginDestinationMatrix(numFloors);
+        for (int from = 1; from <= numFloors; from++) {
+            for (int to = 1; to <= numFloors; to++) {
+                if (from != to) {
+                    matrix.setWeight(from, to, 1);
+                }
+            }
+        }
+        return matrix;
+    }
+
+    /**
+     * Morning up-peak: everyone comes in at the lobby and heads to an upper floor
+     *
+     * @param numFloors
+     * @return
+     */
+    public static OriginDestinationMatrix upPeak(final int numFloors) {
+
+        OriginDestinationMatrix matrix = new OriginDestinationMatrix(numFloors);
+        for (int to = LOBBY + 1; to <= numFloors; to++) {
+            matrix.setWeight(LOBBY, to, 1);
+        }
+        return matrix;
+    }
+
+    /**
+     * Evening down-peak: everyone leaves their floor for the lobby
+     *
+     * @param numFloors
+     * @return
+     */
+    public static OriginDestinationMatrix downPeak(final int numFloors) {
+
+        OriginDestinationMatrix matrix = new OriginDestinationMatrix(numFloors);
+        for (int from = LOBBY + 1; from <= numFloors; from++) {
+            matrix.setWeight(from, LOBBY, 1);
+        }
+        return matrix;
+    }
+
+    /**
+     * Lunchtime: as many people going out as coming back, with some traffic
+     * between floors on top
+     *
+     * @param numFloors
+     * @return
+     */
+    public static OriginDestinationMatrix lunch(final int numFloors) {
+        return mix(mix(upPeak(numFloors), 1, downPeak(numFloors), 1), 4, uniform(numFloors), 1);
+    }
+
+    /**
+     * Blends two patterns, each normalized to a total weight of 1 and then scaled
+     *
+     * @param a
+     * @param weightOfA
+     * @param b
+     * @param weightOfB
+     * @return
+     */
+    public static OriginDestinationMatrix mix(final OriginDestinationMatrix a, final double
+            weightOfA, final OriginDestinationMatrix b, final double weightOfB) {
+
+        if (a.numFloors != b.numFloors) {
+            throw new IllegalArgumentException("Can't mix patterns for " + a.numFloors +
+                    " and " + b.numFloors + " floors");
+        }
+
+        double scaleA = weightOfA / a.getTotalWeight();
+        double scaleB = weightOfB / b.getTotalWeight();
+        OriginDestinationMatrix mixed = new OriginDestinationMatrix(a.numFloors);
+        for (int from = 1; from <= a.numFloors; from++) {
+            for (int to = 1; to <= a.numFloors; to++) {
+                mixed.setWeight(from, to, a.weights[from][to] * scaleA + b.weights[from][to] *
+                        scaleB);
+            }
+        }
+        return mixed;
+    }
+
+    public void setWeight(final int from, final int to, final double weight) {
+
+        if (from < 1 || from > numFloors || to < 1 || to > numFloors || weight < 0 ||
+                (from == to && weight > 0)) {
+            throw new IllegalArgumentException("Invalid weight " + weight + " for trips from " +
+                    from + " to " + to);
+        }
+        weights[from][to] = weight;
+        cumulativeOrigins = null;
+    }
+
+    public int getNumFloors() {
+        return numFloors;
+    }
+
+    /**
+     * Draws a trip
+     *
+     * @param random
+     * @param trip filled in with the start floor, then the destination floor
+     */
+    public void sample(final SplittableRandom random, final int[] trip) {
+
+        if (cumulativeOrigins == null) {
+            buildCumulativeWeights();
+        }
+
+        int from = pick(cumulativeOrigins, random);
+        trip[0] = from;
+        trip[1] = pick(cumulativeDestinations[from], random);
+    }
+
+    private double getTotalWeight() {
+
+        double total = 0;
+        for (double[] row : weights) {
+            for (double weight : row) {
+                total += weight;
+            }
+        }
+        if (total == 0) {
+            throw new IllegalStateException("No trips have any weight");
+        }
+        return total;
+    }
+
+    private void buildCumulativeWeights() {
+
+        getTotalWeight();
+
+        double[] origins = new double[numFloors + 1];
+        double[][] destinations = new double[numFloors + 1][];
+        for (int from = 0; from <= numFloors; from++) {
+
+            destinations[from] = new double[numFloors + 1];
+            double rowTotal = 0;
+            for (int to = 0; to <= numFloors; to++) {
+                rowTotal += weights[from][to];
+                destinations[from][to] = rowTotal;
+            }
+            origins[from] = (from == 0 ? 0 : origins[from - 1]) + rowTotal;
+        }
+
+        cumulativeDestinations = destinations;
+        cumulativeOrigins = origins;
+    }
+
+    /**
+     * The first index whose running total exceeds a random point below the
+     * overall total, so each index is picked in proportion to its weight
+     */
+    private static int pick(final double[] cumulative, final SplittableRandom random) {
+
+        double point = random.nextDouble() * cumulative[cumulative.length - 1];
+        int index = Arrays.binarySearch(cumulative, point);
+        index = index < 0 ? -index - 1 : index + 1;
+
+        // Skip over floors with no weight, which share the total before them
+        while (index < cumulative.length - 1 && cumulative[index] == (index == 0 ? 0 :
+                cumulative[index - 1])) {
+            index++;
+        }
+        return index;
+    }
+}
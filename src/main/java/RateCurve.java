@@ -0,0 +1,85 @@
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * How fast riders arrive over the course of a run: a sequence of periods,
+ * each with a constant arrival rate. After the last period, nobody else arrives.
+ * <p/>
+ * Usage: new RateCurve().then(10 * 60000, 30).then(20 * 60000, 120) is ten
+ * minutes at 30 riders a minute, followed by twenty minutes at 120 a minute.
+ */
+public class RateCurve {
+
+    private static final double MS_PER_MINUTE = 60000;
+
+    private final List<Long> periodEnds = new ArrayList<>();
+    private final List<Double> ridersPerMinute = new ArrayList<>();
+    private long duration;
+    private double maxRidersPerMinute;
+
+    /**
+     * A single period of the given length at a constant rate
+     *
+     * @param durationMs
+     * @param ridersPerMinute
+     * @return
+     */
+    public static RateCurve constant(final long durationMs, final double ridersPerMinute) {
+        return new RateCurve().then(durationMs, ridersPerMinute);
+    }
+
+    /**
+     * Adds a period to the end of the curve
+     *
+     * @param durationMs
+     * @param ridersPerMinute
+     * @return this curve
+     */
+    public RateCurve then(final long durationMs, final double ridersPerMinute) {
+
+        if (durationMs <= 0 || ridersPerMinute < 0) {
+            throw new IllegalArgumentException("Invalid period: " + ridersPerMinute +
+                    " riders a minute for " + durationMs + "ms");
+        }
+
+        duration += durationMs;
+        periodEnds.add(duration);
+        this.ridersPerMinute.add(ridersPerMinute);
+        maxRidersPerMinute = Math.max(maxRidersPerMinute, ridersPerMinute);
+        return this;
+    }
+
+    /**
+     * The arrival rate at the given time
+     *
+     * @param time milliseconds from the start of the run
+     * @return riders per millisecond
+     */
+    public double getRate(final long time) {
+
+        for (int i = 0; i < periodEnds.size(); i++) {
+            if (time < periodEnds.get(i)) {
+                return ridersPerMinute.get(i) / MS_PER_MINUTE;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * The highest arrival rate anywhere on the curve
+     *
+     * @return riders per millisecond
+     */
+    public double getMaxRate() {
+        return maxRidersPerMinute / MS_PER_MINUTE;
+    }
+
+    /**
+     * The total length of the curve, in milliseconds
+     *
+     * @return
+     */
+    public long getDuration() {
+        return duration;
+    }
+}
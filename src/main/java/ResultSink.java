@@ -0,0 +1,316 @@
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Streams a record of every delivered rider's trip to a file, for offline
+ * analysis of runs too big to keep in memory: the rider, where they went,
+ * the car that took them, and when they asked for it, boarded and got off.
+ * <p/>
+ * Completed trips are copied into preallocated arrays that form a ring
+ * buffer, the way EventTracer records events, so the car that delivers a
+ * rider doesn't allocate, lock or do I/O. A background thread drains the
+ * ring in batches, encodes the trips into a direct buffer, and writes the
+ * buffer to a FileChannel whenever it fills. Unlike a tracer, a sink never
+ * drops anything: if the writer falls a whole ring behind, the simulation
+ * waits for it.
+ * <p/>
+ * Subclasses decide how trips are laid out in the file. CsvResultSink writes
+ * text, and ColumnarResultSink a compact binary format.
+ * <p/>
+ * Usage: build a sink, start() it, hand it to
+ * BuildingSimulation.addCompletedRiderListener(), and close() it once the run
+ * is over. record() takes trips by hand.
+ */
+public abstract class ResultSink implements CompletedRiderListener, Closeable {
+
+    static final int DEFAULT_CAPACITY = 1 << 16;
+    static final int BUFFER_SIZE = 1 << 20;
+
+    private static final long DRAIN_INTERVAL_NANOS = 1000000;
+
+    private final int capacity;
+    private final int mask;
+
+    // One ring of each field. A slot's fields are safe to read once its entry
+    // in published holds the sequence number they were written for.
+    private final int[] riderIds;
+    private final int[] startFloors;
+    private final int[] destinationFloors;
+    private final int[] carIds;
+    private final long[] requestTimes;
+    private final long[] boardTimes;
+    private final long[] alightTimes;
+    private final AtomicLongArray published;
+
+    private final AtomicLong nextSequence = new AtomicLong();
+    private final AtomicLong drainedSequence = new AtomicLong();
+
+    private final FileChannel channel;
+    private final Thread writer;
+    private volatile boolean closed;
+
+    // An IOException, or the RuntimeException that killed the writer
+    private volatile Exception failure;
+
+    // Only touched by the writer thread, or by close() once it has stopped
+    final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+
+    /**
+     * @param file where trips are written. It is replaced if it exists.
+     * @param capacity how many trips the ring holds; rounded up to a power of two
+     * @throws IOException
+     */
+    protected ResultSink(final File file, final int capacity) throws IOException {
+
+        if (capacity <= 0 || capacity > 1 << 30) {
+            throw new IllegalArgumentException("Invalid capacity: " + capacity);
+        }
+
+        int ringSize = 1;
+        while (ringSize < capacity) {
+            ringSize <<= 1;
+        }
+        this.capacity = ringSize;
+        this.mask = ringSize - 1;
+
+        riderIds = new int[this.capacity];
+        startFloors = new int[this.capacity];
+        destinationFloors = new int[this.capacity];
+        carIds = new int[this.capacity];
+        requestTimes = new long[this.capacity];
+        boardTimes = new long[this.capacity];
+        alightTimes = new long[this.capacity];
+        published = new AtomicLongArray(this.capacity);
+        for (int i = 0; i < this.capacity; i++) {
+            published.set(i, -1);
+        }
+
+        channel = FileChannel.open(Paths.get(file.getPath()), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+
+        writer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                drainUntilClosed();
+            }
+        }, "result-sink");
+        writer.setDaemon(true);
+    }
+
+    /**
+     * Starts writing recorded trips to the file
+     */
+    public void start() {
+        writer.start();
+    }
+
+    @Override
+    public void riderCompleted(final Rider r) {
+        record(r.riderId, r.getStartFloor(), r.getDestinationFloor(), r.getElevatorId(),
+                r.getRequestTime(), r.getBoardTime(), r.getAlightTime());
+    }
+
+    /**
+     * Records one completed trip, waiting for room in the ring if the writer
+     * has fallen behind. Fails rather than waiting if the writer has stopped.
+     *
+     * @param riderId
+     * @param startFloor
+     * @param destinationFloor
+     * @param carId
+     * @param requestTime
+     * @param boardTime
+     * @param alightTime
+     * @throws UncheckedIOException if the file can't be written
+     * @throws IllegalStateException if the sink is closed, or its writer died
+     */
+    public void record(final int riderId, final int startFloor, final int destinationFloor,
+                       final int carId, final long requestTime, final long boardTime,
+                       final long alightTime) {
+
+        long sequence;
+        while (true) {
+            checkFailure();
+            if (closed) {
+                throw new IllegalStateException("Result sink has been closed");
+            }
+            sequence = nextSequence.get();
+            if (sequence - drainedSequence.get() >= capacity) {
+                checkWriterRunning();
+                LockSupport.parkNanos(DRAIN_INTERVAL_NANOS);
+            } else if (nextSequence.compareAndSet(sequence, sequence + 1)) {
+                break;
+            }
+        }
+
+        int slot = (int) sequence & mask;
+        riderIds[slot] = riderId;
+        startFloors[slot] = startFloor;
+        destinationFloors[slot] = destinationFloor;
+        carIds[slot] = carId;
+        requestTimes[slot] = requestTime;
+        boardTimes[slot] = boardTime;
+        alightTimes[slot] = alightTime;
+        published.lazySet(slot, sequence);
+    }
+
+    public long getTripsRecorded() {
+        return nextSequence.get();
+    }
+
+    /**
+     * How many trips have been handed to the subclass to encode. They reach
+     * the file when the buffer next fills, or on close().
+     *
+     * @return
+     */
+    public long getTripsWritten() {
+        return drainedSequence.get();
+    }
+
+    /**
+     * Writes out every trip recorded so far and closes the file
+     *
+     * @throws IOException if the file couldn't be written
+     */
+    @Override
+    public void close() throws IOException {
+
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            if (writer.isAlive()) {
+                writer.join();
+            }
+            if (failure == null) {
+
+                // Picks up trips recorded while the writer was stopping, or
+                // all of them if it was never started
+                drain();
+                finish();
+                flush();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException | RuntimeException e) {
+            failure = e;
+        } finally {
+            channel.close();
+        }
+        checkFailure();
+    }
+
+    /**
+     * Encodes one trip into the buffer, calling ensureRemaining() first to
+     * make room for it. Only ever called from one thread at a time.
+     */
+    abstract void writeTrip(int riderId, int startFloor, int destinationFloor, int carId,
+                            long requestTime, long boardTime, long alightTime) throws
+            IOException;
+
+    /**
+     * Encodes whatever the subclass has held back, once every trip has been
+     * written
+     *
+     * @throws IOException
+     */
+    abstract void finish() throws IOException;
+
+    /**
+     * Writes the buffer out if it has less than the given number of bytes free
+     *
+     * @param bytes no more than BUFFER_SIZE
+     * @throws IOException
+     */
+    final void ensureRemaining(final int bytes) throws IOException {
+
+        if (buffer.remaining() < bytes) {
+            flush();
+        }
+    }
+
+    private void flush() throws IOException {
+
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    private void checkFailure() {
+
+        Exception e = failure;
+        if (e instanceof IOException) {
+            throw new UncheckedIOException((IOException) e);
+        } else if (e != null) {
+            throw new IllegalStateException("Result writer failed", e);
+        }
+    }
+
+    /**
+     * Called while waiting for the writer to make room, which it never will
+     * if it hasn't been started or has stopped
+     */
+    private void checkWriterRunning() {
+
+        if (writer.getState() == Thread.State.NEW) {
+            throw new IllegalStateException("Result sink is full and hasn't been started");
+        }
+        if (!writer.isAlive()) {
+            checkFailure();
+            throw new IllegalStateException("Result writer has stopped");
+        }
+    }
+
+    private void drainUntilClosed() {
+
+        try {
+            while (!closed) {
+                if (!drain()) {
+                    LockSupport.parkNanos(DRAIN_INTERVAL_NANOS);
+                }
+            }
+            drain();
+        } catch (IOException | RuntimeException e) {
+            failure = e;
+        }
+    }
+
+    /**
+     * Hands the trips that have been published to the subclass, in order
+     *
+     * @return whether there was anything to write
+     * @throws IOException
+     */
+    private boolean drain() throws IOException {
+
+        long sequence = drainedSequence.get();
+        long start = sequence;
+        while (true) {
+
+            int slot = (int) sequence & mask;
+            if (published.get(slot) != sequence) {
+                break;
+            }
+
+            writeTrip(riderIds[slot], startFloors[slot], destinationFloors[slot], carIds[slot],
+                    requestTimes[slot], boardTimes[slot], alightTimes[slot]);
+
+            sequence++;
+            drainedSequence.lazySet(sequence);
+        }
+        return sequence != start;
+    }
+}
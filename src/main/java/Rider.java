@@ -1,79 +1,215 @@
 import java.util.concurrent.atomic.AtomicInteger;
-import java.util.logging.Level;
-import java.util.logging.Logger;
-import java.util.logging.SimpleFormatter;
-import java.util.logging.StreamHandler;
 
 /**
  * Created by aleks on 5/20/16.
+ * <p/>
+ * A rider is a lightweight view over a slot in a RiderStore, which holds the
+ * rider's floors, state and timestamps in primitive columns. Once a rider is
+ * delivered, the simulation releases their slot for reuse, and the view must
+ * not be used any more.
  */
 public class Rider {
 
-    final static Logger logger = Logger.getLogger("Rider.class");
-
-    SimpleFormatter fmt = new SimpleFormatter();
-    StreamHandler sh = new StreamHandler(System.out, fmt);
-    private static AtomicInteger riderIdGenerator;
-
-    {
-        logger.addHandler(sh);
-        logger.setLevel(Level.INFO);
-        if (riderIdGenerator == null) {
-            riderIdGenerator = new AtomicInteger();
-        }
+    // Shared by every simulation, so rider ids are unique within the JVM
+    private static final AtomicInteger riderIdGenerator = new AtomicInteger();
 
+    public enum State {
+        WAITING, // on their start floor, not yet assigned an elevator
+        ASSIGNED, // on their start floor, waiting for the elevator they were assigned
+        RIDING,
+        DELIVERED;
     }
 
     final int riderId;
-    int startFloor;
-    int currentFloor;
 
-    // TODO: have args for tracking how much time a user is waiting.
-    // If we collect this info, we can have meaningful insights into
-    // which algorithms are better
-
-    // Null means the user is on the startFloor, otherwise they are in an elevator
-    ClosestAcceptElevator currentElevator;
-    private int destinationFloor;
-    private Elevator elevator = null;
+    private final RiderStore store;
+    private final int slot;
 
     public Rider(final int startFloor, final int destinationFloor) {
+        this(RiderStore.shared(), startFloor, destinationFloor);
+    }
+
+    public Rider(final RiderStore store, final int startFloor, final int destinationFloor) {
 
         riderId = Rider.riderIdGenerator.incrementAndGet();
-        logger.info("Initializing rider " + riderId + " going from " + startFloor + " to "
-                + destinationFloor);
+        this.store = store;
+        this.slot = store.allocate(riderId, startFloor, destinationFloor);
+    }
+
+    public int getStartFloor() {
 
-        this.currentElevator = null;
-        this.currentFloor = startFloor;
-        this.startFloor = startFloor;
-        this.destinationFloor = destinationFloor;
+        int startFloor = store.getStartFloor(slot);
+        checkNotReleased();
+        return startFloor;
     }
 
     public int getDestinationFloor() {
+
+        int destinationFloor = store.getDestinationFloor(slot);
+        checkNotReleased();
         return destinationFloor;
     }
 
+    public Elevator.Direction getDirection() {
+
+        boolean up = store.getDestinationFloor(slot) > store.getStartFloor(slot);
+        checkNotReleased();
+        return up ? Elevator.Direction.UP : Elevator.Direction.DOWN;
+    }
+
+    public State getState() {
+
+        State state = store.getState(slot);
+        checkNotReleased();
+        return state;
+    }
+
+    /**
+     * The id of the elevator this rider was assigned to, or is riding in
+     *
+     * @return the elevator's id, or -1 if the rider hasn't been assigned one
+     */
+    public int getElevatorId() {
+
+        int elevatorId = store.getElevatorId(slot);
+        checkNotReleased();
+        return elevatorId;
+    }
+
+    /**
+     * When this rider asked for an elevator, in the time of the simulation they joined
+     *
+     * @return
+     */
+    public long getRequestTime() {
+
+        long requestTime = store.getRequestTime(slot);
+        checkNotReleased();
+        return requestTime;
+    }
+
+    void setRequestTime(final long requestTime) {
+        checkNotReleased();
+        store.setRequestTime(slot, requestTime);
+    }
+
+    /**
+     * When this rider stepped into their elevator
+     *
+     * @return
+     */
+    public long getBoardTime() {
+
+        long boardTime = store.getBoardTime(slot);
+        checkNotReleased();
+        return boardTime;
+    }
+
+    /**
+     * When this rider got off at their destination
+     *
+     * @return
+     */
+    public long getAlightTime() {
+
+        long alightTime = store.getAlightTime(slot);
+        checkNotReleased();
+        return alightTime;
+    }
+
+    /**
+     * How long this rider waited between asking for an elevator and boarding it
+     *
+     * @return
+     */
+    public long getWaitTime() {
+
+        long waitTime = store.getBoardTime(slot) - store.getRequestTime(slot);
+        checkNotReleased();
+        return waitTime;
+    }
+
+    /**
+     * How long this rider took to get from asking for an elevator to their destination
+     *
+     * @return
+     */
+    public long getTripTime() {
+
+        long tripTime = store.getAlightTime(slot) - store.getRequestTime(slot);
+        checkNotReleased();
+        return tripTime;
+    }
+
+    public void assignTo(Elevator e) {
+
+        checkNotReleased();
+        store.setElevatorId(slot, e.getId());
+        store.setState(slot, State.ASSIGNED);
+    }
+
+    void unassign() {
+
+        checkNotReleased();
+        store.setElevatorId(slot, RiderStore.NO_ELEVATOR);
+        store.setState(slot, State.WAITING);
+    }
+
     public void getInElevator(Elevator e) {
-        logger.info("Rider " + riderId + " stepped into elevator " + e.id);
-        this.elevator = e;
+
+        checkNotReleased();
+        store.setElevatorId(slot, e.getId());
+        store.setState(slot, State.RIDING);
+        store.setBoardTime(slot, e.simulation.currentTimeMillis());
     }
 
     public void getOffElevator(Elevator e) {
-        //will help w/GC if we need to collect elevators from memory
-        logger.info("Rider " + riderId + " got off at " + e.currentFloor);
-        if (e.currentFloor != destinationFloor) {
+
+        checkNotReleased();
+        if (e.currentFloor != store.getDestinationFloor(slot)) {
             throw new RuntimeException("Rider did not at expected destination of " +
-                    destinationFloor);
+                    store.getDestinationFloor(slot));
         }
-        this.elevator = null;
+        store.setState(slot, State.DELIVERED);
+        store.setAlightTime(slot, e.simulation.currentTimeMillis());
     }
 
     /**
-     * Note that a null output means the user is still waiting for an elevator
-     * to arrive
-     * @return
+     * Puts a rider rebuilt from a SimulationCheckpoint back where they were in their trip
+     *
+     * @param state
+     * @param elevatorId
+     * @param requestTime
+     * @param boardTime
+     */
+    void restore(final State state, final int elevatorId, final long requestTime,
+                 final long boardTime) {
+
+        checkNotReleased();
+        store.setState(slot, state);
+        store.setElevatorId(slot, elevatorId);
+        store.setRequestTime(slot, requestTime);
+        store.setBoardTime(slot, boardTime);
+    }
+
+    /**
+     * Gives this rider's slot back to the store. The rider can't be used after this.
      */
-    public Elevator getElevator() {
-        return elevator;
+    void release() {
+
+        checkNotReleased();
+        store.release(slot);
+    }
+
+    /**
+     * Reads check the slot after reading it, so a value is never returned from
+     * a slot that was released, and maybe handed to another rider, in between.
+     * Writes check it before writing, so they never touch another rider's slot.
+     */
+    private void checkNotReleased() {
+
+        if (store.getRiderId(slot) != riderId) {
+            throw new IllegalStateException("Rider " + riderId + " has already been released");
+        }
     }
 }
@@ -0,0 +1,225 @@
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedTransferQueue;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Every rider in a simulation's building, and where each of them is in their
+ * trip: WAITING for an elevator, ASSIGNED one, RIDING it, or DELIVERED.
+ * <p/>
+ * A rider moves from state to state through the registry, which keeps count
+ * of how many riders are in each. Every transition is a constant amount of
+ * work with no lock held: a write to the rider's slot in their RiderStore
+ * and two atomic adds. The structures behind it are built for many threads
+ * at once too:
+ * <ul>
+ * <li>riders in the building are a concurrent set, so a delivered rider is
+ * removed without a scan</li>
+ * <li>riders waiting to be dispatched are on a lock-free queue, which the
+ * dispatcher can still block on</li>
+ * <li>riders waiting at their floor are in a HallCallIndex, a queue per floor
+ * and direction, so cars stopping on different floors never touch the same queue</li>
+ * </ul>
+ */
+public class RiderRegistry {
+
+    private static final Rider.State[] STATES = Rider.State.values();
+
+    // Riders who have arrived and haven't been delivered yet
+    private final Collection<Rider> activeRiders = Collections.newSetFromMap(new
+            ConcurrentHashMap<Rider, Boolean>());
+
+    // Riders who have arrived and are waiting to be dispatched, in order of arrival
+    private final BlockingQueue<Rider> unassignedRiders = new LinkedTransferQueue<>();
+
+    // Riders waiting at their start floor for an elevator
+    private final HallCallIndex hallCalls;
+
+    // How many riders are in each state, by ordinal
+    private final AtomicLongArray ridersByState = new AtomicLongArray(STATES.length);
+
+    public RiderRegistry(final int numFloors) {
+        this.hallCalls = new HallCallIndex(numFloors);
+    }
+
+    /**
+     * Brings a rider into the building: they start WAITING at their start
+     * floor. It's up to the caller to get them dispatched, by queueing them
+     * with getUnassignedRiders() or handing them to the dispatcher.
+     *
+     * @param r
+     */
+    public void arrive(final Rider r) {
+
+        activeRiders.add(r);
+        ridersByState.incrementAndGet(Rider.State.WAITING.ordinal());
+        hallCalls.enqueue(r);
+    }
+
+    /**
+     * Assigns a WAITING rider to an elevator
+     *
+     * @param r
+     * @param e
+     */
+    public void assign(final Rider r, final Elevator e) {
+
+        r.assignTo(e);
+        moved(Rider.State.WAITING, Rider.State.ASSIGNED);
+    }
+
+    /**
+     * Takes an ASSIGNED rider off their elevator's list, leaving them WAITING
+     *
+     * @param r
+     */
+    public void unassign(final Rider r) {
+
+        r.unassign();
+        moved(Rider.State.ASSIGNED, Rider.State.WAITING);
+    }
+
+    /**
+     * Puts an ASSIGNED rider in their elevator
+     *
+     * @param r
+     * @param e
+     */
+    public void board(final Rider r, final Elevator e) {
+
+        r.getInElevator(e);
+        moved(Rider.State.ASSIGNED, Rider.State.RIDING);
+    }
+
+    /**
+     * Lets a RIDING rider off at their destination. They are no longer in
+     * the building, but their slot is still the simulation's to release.
+     *
+     * @param r
+     * @param e
+     */
+    public void deliver(final Rider r, final Elevator e) {
+
+        r.getOffElevator(e);
+        activeRiders.remove(r);
+        moved(Rider.State.RIDING, Rider.State.DELIVERED);
+    }
+
+    /**
+     * Gives back the slots of the riders still in the building once a run is
+     * over, so riders who were never delivered don't hold on to their store.
+     * The counts keep their end-of-run values, but the riders themselves are
+     * dropped and can't be looked at any more.
+     */
+    void releaseActiveRiders() {
+
+        unassignedRiders.clear();
+        for (Iterator<Rider> it = activeRiders.iterator(); it.hasNext(); ) {
+
+            Rider r = it.next();
+            it.remove();
+            r.release();
+        }
+    }
+
+    /**
+     * Brings back a rider from a SimulationCheckpoint, in whatever state the
+     * checkpoint left them. Riders who haven't boarded go back on their
+     * floor's hall call queue, so they have to be restored in queue order.
+     *
+     * @param r
+     */
+    void restore(final Rider r) {
+
+        Rider.State state = r.getState();
+        activeRiders.add(r);
+        ridersByState.incrementAndGet(state.ordinal());
+        if (state != Rider.State.RIDING) {
+            hallCalls.enqueue(r);
+        }
+    }
+
+    /**
+     * Counts the riders a SimulationCheckpoint had already delivered
+     *
+     * @param count
+     */
+    void restoreDelivered(final long count) {
+        ridersByState.addAndGet(Rider.State.DELIVERED.ordinal(), count);
+    }
+
+    /**
+     * How many riders are in the given state. Safe to read at any time.
+     *
+     * @param state
+     * @return
+     */
+    public long getNumberOfRiders(final Rider.State state) {
+        return ridersByState.get(state.ordinal());
+    }
+
+    /**
+     * How many riders are in the building: waiting, assigned or riding
+     *
+     * @return
+     */
+    public long getNumberInFlight() {
+
+        return ridersByState.get(Rider.State.WAITING.ordinal()) + ridersByState.get(Rider.State
+                .ASSIGNED.ordinal()) + ridersByState.get(Rider.State.RIDING.ordinal());
+    }
+
+    /**
+     * Every rider who hasn't been delivered yet
+     *
+     * @return
+     */
+    public Collection<Rider> getActiveRiders() {
+        return activeRiders;
+    }
+
+    /**
+     * Riders waiting to be dispatched, in the order they asked for an elevator
+     *
+     * @return
+     */
+    public BlockingQueue<Rider> getUnassignedRiders() {
+        return unassignedRiders;
+    }
+
+    /**
+     * Riders who are waiting at their start floor, indexed by floor and direction
+     *
+     * @return
+     */
+    public HallCallIndex getHallCalls() {
+        return hallCalls;
+    }
+
+    /**
+     * One line with the number of riders in each state
+     *
+     * @return
+     */
+    public String getSummary() {
+
+        StringBuilder summary = new StringBuilder();
+        for (Rider.State state : STATES) {
+            if (summary.length() > 0) {
+                summary.append(", ");
+            }
+            summary.append(ridersByState.get(state.ordinal())).append(' ').append(state.name()
+                    .toLowerCase());
+        }
+        return summary.toString();
+    }
+
+    private void moved(final Rider.State from, final Rider.State to) {
+
+        ridersByState.decrementAndGet(from.ordinal());
+        ridersByState.incrementAndGet(to.ordinal());
+    }
+}
@@ -0,0 +1,72 @@
+import java.nio.ByteBuffer;
+import java.util.SplittableRandom;
+
+/**
+ * A stream of trips for a simulation to turn into riders as it runs.
+ * <p/>
+ * A source works like a cursor: advance() moves to the next trip, and the
+ * getters describe that trip until the next call. That way a source never
+ * has to allocate anything per trip, and a simulation only builds a rider at
+ * the moment they arrive. Trips come in order of arrival time, and a source
+ * can only be read once.
+ */
+public interface RiderSource {
+
+    // The most bytes checkpointTo() may take
+    static final int CHECKPOINT_SIZE = 256;
+
+    /**
+     * Moves to the next trip
+     *
+     * @return false if there are no more trips
+     */
+    public boolean advance();
+
+    /**
+     * When the current trip's rider asks for an elevator, in milliseconds
+     * from the start of the run
+     *
+     * @return
+     */
+    public long getArrivalTime();
+
+    public int getStartFloor();
+
+    public int getDestinationFloor();
+
+    /**
+     * Called by the simulation a source is handed to, with a stream split off
+     * the simulation's seed. A source that makes random choices and wasn't
+     * given a seed of its own draws them from this stream, so the
+     * simulation's seed repeats its trips too.
+     *
+     * @param random
+     */
+    public default void seedFrom(final SplittableRandom random) {
+    }
+
+    /**
+     * Saves how far through its trips the source is, for a SimulationCheckpoint.
+     * Takes at most CHECKPOINT_SIZE bytes.
+     *
+     * @param out
+     * @throws UnsupportedOperationException if the source can't be checkpointed
+     */
+    public default void checkpointTo(final ByteBuffer out) {
+        throw new UnsupportedOperationException(getClass().getSimpleName() + " can't be " +
+                "checkpointed");
+    }
+
+    /**
+     * Moves a fresh source, built the same way as the checkpointed one, to
+     * where that one was
+     *
+     * @param in
+     * @throws UnsupportedOperationException if the source can't be checkpointed
+     */
+    public default void restoreFrom(final ByteBuffer in) {
+        throw new UnsupportedOperationException(getClass().getSimpleName() + " can't be " +
+                "checkpointed");
+    }
+
+}
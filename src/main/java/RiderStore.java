@@ -0,0 +1,208 @@
+/**
+ * Compact storage for riders, kept as one primitive column per attribute.
+ * <p/>
+ * Each rider occupies a slot, and a Rider object is only a small view holding
+ * that slot. The columns are split into fixed-size pages that are allocated as
+ * the store grows and are never copied, so a slot stays put for as long as its
+ * rider lives. When a rider is released, their slot goes back on a free list
+ * and is handed to the next rider, which keeps the store as big as the number
+ * of riders in flight rather than the number of riders ever created.
+ * <p/>
+ * Allocating and releasing slots is synchronized. Reading or updating a slot
+ * is a plain array access, and is safe as long as the rider is handed between
+ * threads the way the rest of the simulation hands riders around: through
+ * concurrent queues and synchronized collections.
+ */
+public class RiderStore {
+
+    static final int PAGE_BITS = 12;
+    static final int PAGE_SIZE = 1 << PAGE_BITS;
+    private static final int PAGE_MASK = PAGE_SIZE - 1;
+
+    // Marks a slot that isn't holding a rider. Rider ids start at 1.
+    static final int NO_RIDER = 0;
+
+    // Stored in the elevator column when a rider hasn't been assigned a car
+    static final int NO_ELEVATOR = -1;
+
+    private static final Rider.State[] STATES = Rider.State.values();
+
+    // Holds riders that are built outside of a simulation
+    private static final RiderStore SHARED = new RiderStore();
+
+    private volatile Page[] pages = new Page[0];
+
+    // guarded by this
+    private int[] freeSlots = new int[PAGE_SIZE];
+    private int numFreeSlots;
+    private int nextUnusedSlot;
+    private int ridersStored;
+
+    /**
+     * The store used by riders that aren't built by a simulation
+     *
+     * @return
+     */
+    public static RiderStore shared() {
+        return SHARED;
+    }
+
+    /**
+     * Stores a new rider, who starts out waiting for an elevator
+     *
+     * @param riderId
+     * @param startFloor
+     * @param destinationFloor
+     * @return the rider's slot
+     */
+    public synchronized int allocate(final int riderId, final int startFloor,
+                                     final int destinationFloor) {
+
+        if (riderId == NO_RIDER) {
+            throw new IllegalArgumentException("Invalid rider id: " + riderId);
+        }
+
+        int slot;
+        if (numFreeSlots > 0) {
+            slot = freeSlots[--numFreeSlots];
+        } else {
+            slot = nextUnusedSlot++;
+            if ((slot >> PAGE_BITS) == pages.length) {
+                addPage();
+            }
+        }
+
+        Page page = page(slot);
+        int i = slot & PAGE_MASK;
+        page.riderIds[i] = riderId;
+        page.startFloors[i] = startFloor;
+        page.destinationFloors[i] = destinationFloor;
+        page.elevatorIds[i] = NO_ELEVATOR;
+        page.states[i] = (byte) Rider.State.WAITING.ordinal();
+        page.requestTimes[i] = 0;
+        page.boardTimes[i] = 0;
+        page.alightTimes[i] = 0;
+
+        ridersStored++;
+        return slot;
+    }
+
+    /**
+     * Frees a rider's slot so it can be reused
+     *
+     * @param slot
+     */
+    public synchronized void release(final int slot) {
+
+        Page page = page(slot);
+        if (page.riderIds[slot & PAGE_MASK] == NO_RIDER) {
+            throw new IllegalStateException("Slot " + slot + " has already been released");
+        }
+        page.riderIds[slot & PAGE_MASK] = NO_RIDER;
+
+        if (numFreeSlots == freeSlots.length) {
+            int[] moreFreeSlots = new int[freeSlots.length * 2];
+            System.arraycopy(freeSlots, 0, moreFreeSlots, 0, numFreeSlots);
+            freeSlots = moreFreeSlots;
+        }
+        freeSlots[numFreeSlots++] = slot;
+        ridersStored--;
+    }
+
+    /**
+     * The number of riders currently held
+     *
+     * @return
+     */
+    public synchronized int size() {
+        return ridersStored;
+    }
+
+    /**
+     * The number of slots the store has room for without allocating a new page
+     *
+     * @return
+     */
+    public int capacity() {
+        return pages.length * PAGE_SIZE;
+    }
+
+    public int getRiderId(final int slot) {
+        return page(slot).riderIds[slot & PAGE_MASK];
+    }
+
+    public int getStartFloor(final int slot) {
+        return page(slot).startFloors[slot & PAGE_MASK];
+    }
+
+    public int getDestinationFloor(final int slot) {
+        return page(slot).destinationFloors[slot & PAGE_MASK];
+    }
+
+    public int getElevatorId(final int slot) {
+        return page(slot).elevatorIds[slot & PAGE_MASK];
+    }
+
+    void setElevatorId(final int slot, final int elevatorId) {
+        page(slot).elevatorIds[slot & PAGE_MASK] = elevatorId;
+    }
+
+    public Rider.State getState(final int slot) {
+        return STATES[page(slot).states[slot & PAGE_MASK]];
+    }
+
+    void setState(final int slot, final Rider.State state) {
+        page(slot).states[slot & PAGE_MASK] = (byte) state.ordinal();
+    }
+
+    public long getRequestTime(final int slot) {
+        return page(slot).requestTimes[slot & PAGE_MASK];
+    }
+
+    void setRequestTime(final int slot, final long requestTime) {
+        page(slot).requestTimes[slot & PAGE_MASK] = requestTime;
+    }
+
+    public long getBoardTime(final int slot) {
+        return page(slot).boardTimes[slot & PAGE_MASK];
+    }
+
+    void setBoardTime(final int slot, final long boardTime) {
+        page(slot).boardTimes[slot & PAGE_MASK] = boardTime;
+    }
+
+    public long getAlightTime(final int slot) {
+        return page(slot).alightTimes[slot & PAGE_MASK];
+    }
+
+    void setAlightTime(final int slot, final long alightTime) {
+        page(slot).alightTimes[slot & PAGE_MASK] = alightTime;
+    }
+
+    private Page page(final int slot) {
+        return pages[slot >> PAGE_BITS];
+    }
+
+    private void addPage() {
+
+        Page[] morePages = new Page[pages.length + 1];
+        System.arraycopy(pages, 0, morePages, 0, pages.length);
+        morePages[pages.length] = new Page();
+        pages = morePages;
+    }
+
+    /**
+     * PAGE_SIZE consecutive slots' worth of every column
+     */
+    private static final class Page {
+
+        final int[] riderIds = new int[PAGE_SIZE];
+        final int[] startFloors = new int[PAGE_SIZE];
+        final int[] destinationFloors = new int[PAGE_SIZE];
+        final int[] elevatorIds = new int[PAGE_SIZE];
+        final byte[] states = new byte[PAGE_SIZE];
+        final long[] requestTimes = new long[PAGE_SIZE];
+        final long[] boardTimes = new long[PAGE_SIZE];
+        final long[] alightTimes = new long[PAGE_SIZE];
+    }
+}
@@ -0,0 +1,214 @@
+import java.util.BitSet;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * The stops of one car, kept in a form that prices a new stop without
+ * walking the car's route.
+ * <p/>
+ * The car reports every floor that becomes a stop, or stops being one, and
+ * the cache updates a Fenwick tree of stop floors along with the lowest and
+ * highest stop. Counting the stops between two floors is then two prefix
+ * sums, so estimating when the car reaches a floor takes O(log floors) no
+ * matter how many stops the car has queued.
+ * <p/>
+ * Estimates assume the car sweeps: on in its direction of travel, then back
+ * from the floor its CarMotionStrategy turns at. Each stop on the way costs
+ * a door cycle. That is exact for LOOK and SCAN. CIRCULAR_LOOK runs back to
+ * its furthest stop without stopping, so a floor behind it is priced as if
+ * that floor were its furthest stop.
+ * <p/>
+ * Only the thread driving the car updates the cache. Any other thread can
+ * estimate from it at the same time, without locking: every figure it reads is
+ * current, but a stop that comes or goes mid-estimate may be counted in
+ * one figure and not another. That is close enough for choosing a car.
+ */
+class RouteCost {
+
+    static final long DOOR_CYCLE_MS = BuildingSimulation.UNLOAD_TIME_MS + BuildingSimulation
+            .LOAD_TIME_MS;
+
+    // Fenwick tree over floors 0..numFloors, one for each floor with a stop.
+    // Entry i covers floor i - 1.
+    private final AtomicIntegerArray tree;
+
+    // The car's stop floors. Only read, to find the new lowest or highest stop.
+    private final BitSet stops;
+
+    // How the car turns around
+    private final CarMotionStrategy motion;
+    private final int numFloors;
+
+    private volatile int numStops;
+    private volatile int lowestStop = -1;
+    private volatile int highestStop = -1;
+
+    RouteCost(final BitSet stops, final int numFloors, final CarMotionStrategy motion) {
+
+        this.stops = stops;
+        this.motion = motion;
+        this.numFloors = numFloors;
+        this.tree = new AtomicIntegerArray(numFloors + 2);
+    }
+
+    /**
+     * Called once the floor has been added to the car's stops
+     */
+    void stopAdded(final int floor) {
+
+        add(floor, 1);
+        numStops++;
+        if (lowestStop < 0 || floor < lowestStop) {
+            lowestStop = floor;
+        }
+        if (floor > highestStop) {
+            highestStop = floor;
+        }
+    }
+
+    /**
+     * Called once the floor has been removed from the car's stops
+     */
+    void stopRemoved(final int floor) {
+
+        add(floor, -1);
+        numStops--;
+        if (numStops == 0) {
+            lowestStop = -1;
+            highestStop = -1;
+        } else if (floor == lowestStop) {
+            lowestStop = stops.nextSetBit(floor);
+        } else if (floor == highestStop) {
+            highestStop = stops.previousSetBit(floor);
+        }
+    }
+
+    int getNumStops() {
+        return numStops;
+    }
+
+    /**
+     * The number of stops from one floor to another, both included
+     */
+    int stopsBetween(final int fromFloor, final int toFloor) {
+
+        if (fromFloor > toFloor) {
+            return 0;
+        }
+        return prefixSum(toFloor) - prefixSum(fromFloor - 1);
+    }
+
+    /**
+     * How long until a car on the given floor, travelling the given way,
+     * reaches a floor and opens its doors there
+     *
+     * @param currentFloor
+     * @param direction
+     * @param floor
+     * @return simulated milliseconds
+     */
+    long timeToReach(final int currentFloor, final Elevator.Direction direction,
+                     final int floor) {
+
+        return floorsToReach(currentFloor, direction, floor) * BuildingSimulation
+                .MS_PER_FLOOR_CLIMB + stopsBefore(currentFloor, direction, floor) *
+                DOOR_CYCLE_MS;
+    }
+
+    /**
+     * How much a new stop at the given floor would hold up the car's other
+     * stops: a door cycle for each stop it makes after that floor, or nothing
+     * if it stops there anyway
+     *
+     * @param currentFloor
+     * @param direction
+     * @param floor
+     * @return simulated milliseconds
+     */
+    long delayFromStopAt(final int currentFloor, final Elevator.Direction direction,
+                         final int floor) {
+
+        if (stopsBetween(floor, floor) > 0) {
+            return 0;
+        }
+        return Math.max(0, numStops - stopsBefore(currentFloor, direction, floor)) *
+                DOOR_CYCLE_MS;
+    }
+
+    /**
+     * Where a car going up turns around, never below the car itself
+     */
+    private int highestTurnaround(final int currentFloor) {
+
+        int highest = highestStop;
+        return highest < 0 ? currentFloor : Math.max(motion.turnaroundFloor(Elevator.Direction
+                .UP, highest, numFloors), currentFloor);
+    }
+
+    /**
+     * Where a car going down turns around, never above the car itself
+     */
+    private int lowestTurnaround(final int currentFloor) {
+
+        int lowest = lowestStop;
+        return lowest < 0 ? currentFloor : Math.min(motion.turnaroundFloor(Elevator.Direction
+                .DOWN, lowest, numFloors), currentFloor);
+    }
+
+    private int floorsToReach(final int currentFloor, final Elevator.Direction direction,
+                              final int floor) {
+
+        if (numStops > 0 && direction == Elevator.Direction.UP && floor < currentFloor) {
+
+            int turnaround = highestTurnaround(currentFloor);
+            return (turnaround - currentFloor) + (turnaround - floor);
+
+        } else if (numStops > 0 && direction == Elevator.Direction.DOWN && floor >
+                currentFloor) {
+
+            int turnaround = lowestTurnaround(currentFloor);
+            return (currentFloor - turnaround) + (floor - turnaround);
+        }
+        return Math.abs(floor - currentFloor);
+    }
+
+    /**
+     * The stops the car makes before it gets to the given floor
+     */
+    private int stopsBefore(final int currentFloor, final Elevator.Direction direction,
+                            final int floor) {
+
+        if (numStops > 0 && direction == Elevator.Direction.UP && floor < currentFloor) {
+
+            // Up to the turnaround, then down to the floor
+            int turnaround = highestTurnaround(currentFloor);
+            return motion.stopsOnWayBack() ? stopsBetween(floor + 1, turnaround) :
+                    stopsBetween(currentFloor, turnaround);
+
+        } else if (numStops > 0 && direction == Elevator.Direction.DOWN && floor >
+                currentFloor) {
+
+            // Down to the turnaround, then up to the floor
+            int turnaround = lowestTurnaround(currentFloor);
+            return motion.stopsOnWayBack() ? stopsBetween(turnaround, floor - 1) :
+                    stopsBetween(turnaround, currentFloor);
+        }
+        return floor >= currentFloor ? stopsBetween(currentFloor, floor - 1) : stopsBetween(floor
+                + 1, currentFloor);
+    }
+
+    private void add(final int floor, final int delta) {
+
+        for (int i = floor + 1; i < tree.length(); i += i & -i) {
+            tree.lazySet(i, tree.get(i) + delta);
+        }
+    }
+
+    private int prefixSum(final int floor) {
+
+        int sum = 0;
+        for (int i = Math.min(floor + 1, tree.length() - 1); i > 0; i -= i & -i) {
+            sum += tree.get(i);
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,390 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.BlockingDeque;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.logging.Logger;
+
+/**
+ * Spreads the shards of a large run, such as every tower of a campus or
+ * every point of a parameter sweep, across several worker JVMs on this machine.
+ * <p/>
+ * Each worker is a ShardWorker process with a heap and garbage collector of
+ * its own, so no single JVM has to hold the whole run. The coordinator talks
+ * to each worker over a loopback socket, hands out shards from a shared queue
+ * as workers free up, and reads back every trip as it completes.
+ * <p/>
+ * A worker that dies or drops its connection is restarted, up to
+ * maxRestarts times, and the shard it was running goes back at the front of
+ * the queue. Shards are deterministic, so running one again gives the same
+ * results. A worker that hangs without dying is not detected.
+ * <p/>
+ * Usage: new ShardCoordinator(4).run(shards, listener), from a JVM whose
+ * class path holds the simulation's classes; the workers are started with
+ * the same class path.
+ */
+public class ShardCoordinator {
+
+    final static Logger logger = Logger.getLogger("ShardCoordinator.class");
+
+    /**
+     * Is told about every trip that comes back from a worker, on the thread
+     * reading that worker. If a worker dies partway through a shard, the
+     * trips it sent are sent again when the shard is rerun.
+     */
+    public interface TripListener {
+
+        public void tripCompleted(int shard, int startFloor, int destinationFloor, long waitMs,
+                                  long tripMs);
+
+    }
+
+    static final int DEFAULT_MAX_RESTARTS = 3;
+
+    // How long a new worker gets to connect
+    static final long CONNECT_TIMEOUT_MS = 30000;
+
+    private static final long POLL_MS = 100;
+
+    private final int numWorkers;
+    private final int maxRestarts;
+    private volatile List<String> workerJvmOptions = Collections.emptyList();
+
+    // Latencies of every shard that has finished, across all runs
+    private final LatencyHistogram waitTimes = new LatencyHistogram();
+    private final LatencyHistogram tripTimes = new LatencyHistogram();
+    private final AtomicInteger workerRestarts = new AtomicInteger();
+
+    public ShardCoordinator(final int numWorkers) {
+        this(numWorkers, DEFAULT_MAX_RESTARTS);
+    }
+
+    /**
+     * @param numWorkers how many worker JVMs to run at once
+     * @param maxRestarts how many times each worker may be restarted in a run
+     *                    before the coordinator gives up on it
+     */
+    public ShardCoordinator(final int numWorkers, final int maxRestarts) {
+
+        if (numWorkers < 1 || maxRestarts < 0) {
+            throw new IllegalArgumentException("Invalid coordinator: " + numWorkers +
+                    " workers, " + maxRestarts + " restarts");
+        }
+        this.numWorkers = numWorkers;
+        this.maxRestarts = maxRestarts;
+    }
+
+    /**
+     * Options for the worker JVMs of the runs that follow, such as their heap size
+     *
+     * @param options
+     */
+    public void setWorkerJvmOptions(final String... options) {
+        this.workerJvmOptions = Collections.unmodifiableList(new ArrayList<>(Arrays.asList(
+                options)));
+    }
+
+    /**
+     * Wait times of every shard that has finished
+     *
+     * @return
+     */
+    public LatencyHistogram getWaitTimes() {
+        return waitTimes;
+    }
+
+    /**
+     * Trip times of every shard that has finished
+     *
+     * @return
+     */
+    public LatencyHistogram getTripTimes() {
+        return tripTimes;
+    }
+
+    /**
+     * How many times a worker has had to be restarted
+     *
+     * @return
+     */
+    public int getWorkerRestarts() {
+        return workerRestarts.get();
+    }
+
+    /**
+     * Runs every shard on the workers and waits for them all to finish
+     *
+     * @param shards
+     * @param listener told about every trip as it comes back, or null
+     * @return a result for each shard, in the order of the shards
+     * @throws InterruptedException
+     * @throws IllegalStateException if every worker failed before the shards were done
+     */
+    public List<ShardResult> run(final List<ShardSpec> shards, final TripListener listener)
+            throws InterruptedException {
+
+        if (shards == null) {
+            throw new IllegalArgumentException("No shards to run");
+        }
+
+        ShardRun run = new ShardRun(shards, listener);
+        int numLinks = Math.min(numWorkers, shards.size());
+        List<Thread> links = new ArrayList<>(numLinks);
+        for (int i = 0; i < numLinks; i++) {
+            Thread link = new Thread(run.new WorkerLink(i), "shard-worker-" + i);
+            links.add(link);
+            link.start();
+        }
+
+        try {
+            while (!run.remaining.await(POLL_MS, TimeUnit.MILLISECONDS) && run.liveLinks.get() >
+                    0) {
+                // Keep waiting while some worker is still going
+            }
+        } finally {
+            for (Thread link : links) {
+                if (run.remaining.getCount() > 0) {
+                    link.interrupt();
+                }
+                link.join();
+            }
+        }
+
+        if (run.remaining.getCount() > 0) {
+            throw new IllegalStateException(run.remaining.getCount() + " of " + shards.size() +
+                    " shards never finished: every worker failed");
+        }
+        return Arrays.asList(run.results);
+    }
+
+    /**
+     * The state of one call to run(), shared by the threads talking to the workers
+     */
+    private class ShardRun {
+
+        private final List<ShardSpec> shards;
+        private final TripListener listener;
+        private final ShardResult[] results;
+        private final AtomicIntegerArray attempts;
+
+        // Shards waiting for a worker. A shard whose worker died goes back at the front.
+        private final BlockingDeque<Integer> pending = new LinkedBlockingDeque<>();
+        private final CountDownLatch remaining;
+        private final AtomicInteger liveLinks = new AtomicInteger();
+
+        ShardRun(final List<ShardSpec> shards, final TripListener listener) {
+
+            this.shards = new ArrayList<>(shards);
+            this.listener = listener;
+            this.results = new ShardResult[shards.size()];
+            this.attempts = new AtomicIntegerArray(shards.size());
+            this.remaining = new CountDownLatch(shards.size());
+            for (int shard = 0; shard < shards.size(); shard++) {
+                pending.add(shard);
+            }
+        }
+
+        /**
+         * The next shard to run, once one is free
+         *
+         * @return the shard, or null once every shard has finished
+         * @throws InterruptedException
+         */
+        private Integer nextShard() throws InterruptedException {
+
+            while (remaining.getCount() > 0) {
+                Integer shard = pending.poll(POLL_MS, TimeUnit.MILLISECONDS);
+                if (shard != null) {
+                    return shard;
+                }
+            }
+            return null;
+        }
+
+        /**
+         * Starts a worker JVM, restarts it when it fails, and feeds it shards
+         * until none are left
+         */
+        private class WorkerLink implements Runnable {
+
+            private final int id;
+
+            WorkerLink(final int id) {
+
+                this.id = id;
+                liveLinks.incrementAndGet();
+            }
+
+            @Override
+            public void run() {
+
+                try {
+                    int restarts = 0;
+                    while (remaining.getCount() > 0) {
+
+                        Process process = null;
+                        Integer shard = null;
+                        try (ServerSocket server = new ServerSocket(0, 1, InetAddress
+                                .getLoopbackAddress())) {
+
+                            process = startWorker(server.getLocalPort());
+                            try (Socket socket = accept(server, process)) {
+
+                                socket.setTcpNoDelay(true);
+                                DataOutputStream out = new DataOutputStream(new
+                                        BufferedOutputStream(socket.getOutputStream()));
+                                DataInputStream in = new DataInputStream(new
+                                        BufferedInputStream(socket.getInputStream(), 1 << 16));
+
+                                while ((shard = nextShard()) != null) {
+
+                                    attempts.incrementAndGet(shard);
+                                    out.writeInt(shard);
+                                    shards.get(shard).writeTo(out);
+                                    out.flush();
+
+                                    results[shard] = receive(shard, in);
+                                    shard = null;
+                                    remaining.countDown();
+                                }
+                                out.writeInt(ShardWorker.STOP);
+                                out.flush();
+                            }
+                            process.waitFor(CONNECT_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+                            return;
+
+                        } catch (IOException e) {
+
+                            if (shard != null) {
+                                pending.addFirst(shard);
+                            }
+                            if (++restarts > maxRestarts) {
+                                logger.severe("Giving up on worker " + id + " after " +
+                                        maxRestarts + " restarts: " + e);
+                                return;
+                            }
+                            logger.warning("Worker " + id + " failed, restarting it: " + e);
+                            workerRestarts.incrementAndGet();
+
+                        } catch (InterruptedException e) {
+
+                            if (shard != null) {
+                                pending.addFirst(shard);
+                            }
+                            return;
+
+                        } finally {
+                            if (process != null && process.isAlive()) {
+                                process.destroyForcibly();
+                            }
+                        }
+                    }
+                } finally {
+                    liveLinks.decrementAndGet();
+                }
+            }
+
+            private Process startWorker(final int port) throws IOException {
+
+                List<String> command = new ArrayList<>();
+                command.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+                command.addAll(workerJvmOptions);
+                command.add("-cp");
+                command.add(System.getProperty("java.class.path"));
+                command.add(ShardWorker.class.getName());
+                command.add(String.valueOf(port));
+                return new ProcessBuilder(command).inheritIO().start();
+            }
+
+            /**
+             * Waits for the worker to connect, giving up early if it exits first
+             */
+            private Socket accept(final ServerSocket server, final Process process) throws
+                    IOException {
+
+                server.setSoTimeout((int) POLL_MS);
+                long deadline = System.currentTimeMillis() + CONNECT_TIMEOUT_MS;
+                while (true) {
+                    try {
+                        return server.accept();
+                    } catch (SocketTimeoutException e) {
+                        if (!process.isAlive()) {
+                            throw new IOException("Worker exited with " + process.exitValue() +
+                                    " before connecting");
+                        }
+                        if (System.currentTimeMillis() > deadline) {
+                            throw new IOException("Worker didn't connect within " +
+                                    CONNECT_TIMEOUT_MS + "ms");
+                        }
+                    }
+                }
+            }
+
+            /**
+             * Reads a shard's trips until the worker says it's done with it
+             */
+            private ShardResult receive(final int shard, final DataInputStream in) throws
+                    IOException {
+
+                LatencyHistogram shardWaitTimes = new LatencyHistogram();
+                LatencyHistogram shardTripTimes = new LatencyHistogram();
+                while (true) {
+
+                    byte tag = in.readByte();
+                    if (tag == ShardWorker.TRIP) {
+
+                        int startFloor = in.readUnsignedShort();
+                        int destinationFloor = in.readUnsignedShort();
+                        long waitMs = in.readInt();
+                        long tripMs = in.readInt();
+                        shardWaitTimes.record(waitMs);
+                        shardTripTimes.record(tripMs);
+                        if (listener != null) {
+                            listener.tripCompleted(shard, startFloor, destinationFloor, waitMs,
+                                    tripMs);
+                        }
+
+                    } else if (tag == ShardWorker.DONE) {
+
+                        long delivered = in.readLong();
+                        long inFlight = in.readLong();
+                        if (delivered != shardTripTimes.getCount()) {
+                            throw new IOException("Worker " + id + " delivered " + delivered +
+                                    " riders on shard " + shard + " but sent " +
+                                    shardTripTimes.getCount() + " trips");
+                        }
+                        waitTimes.add(shardWaitTimes);
+                        tripTimes.add(shardTripTimes);
+                        return new ShardResult(shard, shards.get(shard), attempts.get(shard),
+                                shardWaitTimes, shardTripTimes, inFlight, null);
+
+                    } else if (tag == ShardWorker.FAILED) {
+
+                        String failure = in.readUTF();
+                        logger.warning("Shard " + shard + " couldn't be run: " + failure);
+                        return new ShardResult(shard, shards.get(shard), attempts.get(shard),
+                                shardWaitTimes, shardTripTimes, 0, failure);
+
+                    } else {
+                        throw new IOException("Unknown frame " + tag + " from worker " + id);
+                    }
+                }
+            }
+        }
+    }
+}
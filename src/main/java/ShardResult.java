@@ -0,0 +1,93 @@
+/**
+ * What came back from one shard of a sharded run. Only the attempt that
+ * finished counts: if a worker died partway through the shard, what it had
+ * sent so far is thrown away and the shard is run again from the start.
+ */
+public class ShardResult {
+
+    private final int shard;
+    private final ShardSpec spec;
+    private final int attempts;
+    private final LatencyHistogram waitTimes;
+    private final LatencyHistogram tripTimes;
+    private final long ridersInFlight;
+
+    // Why the shard couldn't be run, or null if it was
+    private final String failure;
+
+    ShardResult(final int shard, final ShardSpec spec, final int attempts, final
+    LatencyHistogram waitTimes, final LatencyHistogram tripTimes, final long ridersInFlight,
+                final String failure) {
+
+        this.shard = shard;
+        this.spec = spec;
+        this.attempts = attempts;
+        this.waitTimes = waitTimes;
+        this.tripTimes = tripTimes;
+        this.ridersInFlight = ridersInFlight;
+        this.failure = failure;
+    }
+
+    public int getShard() {
+        return shard;
+    }
+
+    public ShardSpec getSpec() {
+        return spec;
+    }
+
+    /**
+     * How many times the shard was started, counting the attempts lost to failed workers
+     *
+     * @return
+     */
+    public int getAttempts() {
+        return attempts;
+    }
+
+    public LatencyHistogram getWaitTimes() {
+        return waitTimes;
+    }
+
+    public LatencyHistogram getTripTimes() {
+        return tripTimes;
+    }
+
+    public long getRidersDelivered() {
+        return tripTimes.getCount();
+    }
+
+    /**
+     * How many riders were still in the building when the run ended
+     *
+     * @return
+     */
+    public long getRidersInFlight() {
+        return ridersInFlight;
+    }
+
+    public boolean isFailed() {
+        return failure != null;
+    }
+
+    /**
+     * Why the worker couldn't run the shard, such as a dispatch policy it
+     * couldn't load
+     *
+     * @return the reason, or null if the shard ran
+     */
+    public String getFailure() {
+        return failure;
+    }
+
+    public String getSummary() {
+
+        if (failure != null) {
+            return "Shard " + shard + " failed: " + failure;
+        }
+        return "Shard " + shard + " (" + spec + ") delivered " + getRidersDelivered() +
+                " riders, " + ridersInFlight + " in flight, after " + attempts + " attempt(s)" +
+                ". Wait time: " + waitTimes.getSummary() + ". Trip time: " + tripTimes
+                .getSummary();
+    }
+}
@@ -0,0 +1,198 @@
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * One shard of a sharded run: a building, the traffic it sees and how its
+ * cars are dispatched. A ShardWorker turns it into a BuildingSimulation and
+ * runs it as a discrete-event simulation, so the same spec always gives the
+ * same results, whichever worker runs it and however often.
+ * <p/>
+ * Specs are small and immutable, and go over the wire with writeTo() and readFrom().
+ * <p/>
+ * Usage: new ShardSpec(8, 30, 3600, ShardSpec.Traffic.UP_PEAK, 120, 42) for an
+ * up-peak hour in a 30-floor tower with 8 cars; withDispatchPolicy() and
+ * withCarMotion() to sweep the algorithms.
+ */
+public final class ShardSpec {
+
+    /**
+     * The shapes of traffic a shard can be given, one per TrafficGenerator factory
+     */
+    public enum Traffic {
+        POISSON,
+        UP_PEAK,
+        LUNCH,
+        DOWN_PEAK;
+
+        TrafficGenerator newGenerator(final int numFloors, final double ridersPerMinute,
+                                      final long durationMs) {
+
+            switch (this) {
+                case UP_PEAK:
+                    return TrafficGenerator.upPeak(numFloors, ridersPerMinute, durationMs);
+                case LUNCH:
+                    return TrafficGenerator.lunch(numFloors, ridersPerMinute, durationMs);
+                case DOWN_PEAK:
+                    return TrafficGenerator.downPeak(numFloors, ridersPerMinute, durationMs);
+                default:
+                    return TrafficGenerator.poisson(numFloors, ridersPerMinute, durationMs);
+            }
+        }
+    }
+
+    private final int numElevators;
+    private final int numFloors;
+    private final int durationSeconds;
+    private final Traffic traffic;
+    private final double ridersPerMinute;
+    private final long seed;
+
+    // The class name of a DispatchPolicy with a public no-argument constructor
+    private final String dispatchPolicy;
+    private final SweepMotion carMotion;
+
+    public ShardSpec(final int numElevators, final int numFloors, final int durationSeconds,
+                     final Traffic traffic, final double ridersPerMinute, final long seed) {
+
+        this(numElevators, numFloors, durationSeconds, traffic, ridersPerMinute, seed,
+                ClosestAcceptPolicy.class.getName(), SweepMotion.CIRCULAR_LOOK);
+    }
+
+    private ShardSpec(final int numElevators, final int numFloors, final int durationSeconds,
+                      final Traffic traffic, final double ridersPerMinute, final long seed,
+                      final String dispatchPolicy, final SweepMotion carMotion) {
+
+        if (numElevators < 1 || numFloors < 2 || durationSeconds < 1 || traffic == null ||
+                ridersPerMinute < 0 || dispatchPolicy == null || carMotion == null) {
+            throw new IllegalArgumentException("Invalid shard: " + numElevators + " cars, " +
+                    numFloors + " floors, " + durationSeconds + "s of " + traffic + " at " +
+                    ridersPerMinute + " riders a minute");
+        }
+        this.numElevators = numElevators;
+        this.numFloors = numFloors;
+        this.durationSeconds = durationSeconds;
+        this.traffic = traffic;
+        this.ridersPerMinute = ridersPerMinute;
+        this.seed = seed;
+        this.dispatchPolicy = dispatchPolicy;
+        this.carMotion = carMotion;
+    }
+
+    /**
+     * The same shard, dispatched by another policy
+     *
+     * @param policy a DispatchPolicy class with a public no-argument constructor
+     * @return
+     */
+    public ShardSpec withDispatchPolicy(final Class<? extends DispatchPolicy> policy) {
+
+        return new ShardSpec(numElevators, numFloors, durationSeconds, traffic,
+                ridersPerMinute, seed, policy.getName(), carMotion);
+    }
+
+    /**
+     * The same shard, with the cars moving another way
+     *
+     * @param motion
+     * @return
+     */
+    public ShardSpec withCarMotion(final SweepMotion motion) {
+
+        return new ShardSpec(numElevators, numFloors, durationSeconds, traffic,
+                ridersPerMinute, seed, dispatchPolicy, motion);
+    }
+
+    public int getNumElevators() {
+        return numElevators;
+    }
+
+    public int getNumFloors() {
+        return numFloors;
+    }
+
+    public int getDurationSeconds() {
+        return durationSeconds;
+    }
+
+    public Traffic getTraffic() {
+        return traffic;
+    }
+
+    public double getRidersPerMinute() {
+        return ridersPerMinute;
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+
+    public String getDispatchPolicy() {
+        return dispatchPolicy;
+    }
+
+    public SweepMotion getCarMotion() {
+        return carMotion;
+    }
+
+    /**
+     * Builds the simulation this shard describes, ready to be run with
+     * runDiscreteEventSimulation(). Every random stream of the run, the
+     * traffic's included, is split off getSeed().
+     *
+     * @return
+     * @throws InterruptedException
+     */
+    public BuildingSimulation newSimulation() throws InterruptedException {
+
+        DispatchPolicy policy;
+        try {
+            policy = Class.forName(dispatchPolicy).asSubclass(DispatchPolicy.class)
+                    .getConstructor().newInstance();
+        } catch (ReflectiveOperationException | ClassCastException e) {
+            throw new IllegalArgumentException("Not a dispatch policy: " + dispatchPolicy, e);
+        }
+
+        TrafficGenerator workload = traffic.newGenerator(numFloors, ridersPerMinute,
+                durationSeconds * 1000L);
+        BuildingSimulation simulation = new BuildingSimulation(numElevators, workload,
+                durationSeconds, numFloors, seed);
+        simulation.setDispatchPolicy(policy);
+        simulation.setCarMotionStrategy(carMotion);
+        return simulation;
+    }
+
+    void writeTo(final DataOutput out) throws IOException {
+
+        out.writeInt(numElevators);
+        out.writeInt(numFloors);
+        out.writeInt(durationSeconds);
+        out.writeByte(traffic.ordinal());
+        out.writeDouble(ridersPerMinute);
+        out.writeLong(seed);
+        out.writeUTF(dispatchPolicy);
+        out.writeByte(carMotion.ordinal());
+    }
+
+    static ShardSpec readFrom(final DataInput in) throws IOException {
+
+        int numElevators = in.readInt();
+        int numFloors = in.readInt();
+        int durationSeconds = in.readInt();
+        Traffic traffic = Traffic.values()[in.readUnsignedByte()];
+        double ridersPerMinute = in.readDouble();
+        long seed = in.readLong();
+        String dispatchPolicy = in.readUTF();
+        SweepMotion carMotion = SweepMotion.values()[in.readUnsignedByte()];
+        return new ShardSpec(numElevators, numFloors, durationSeconds, traffic,
+                ridersPerMinute, seed, dispatchPolicy, carMotion);
+    }
+
+    @Override
+    public String toString() {
+
+        return numElevators + " cars, " + numFloors + " floors, " + durationSeconds + "s of " +
+                traffic + " at " + ridersPerMinute + "/min, seed " + seed + ", " +
+                dispatchPolicy + "/" + carMotion;
+    }
+}
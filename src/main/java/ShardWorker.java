@@ -0,0 +1,139 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Runs shards for a ShardCoordinator, in a JVM of its own.
+ * <p/>
+ * A worker connects to the coordinator over a loopback socket and runs the
+ * shards it is sent one after the other, each as a discrete-event
+ * simulation. Every trip is streamed back as it completes, in a 13-byte
+ * frame, and each shard ends with a frame holding its totals,
+ * so a worker never holds on to more than the riders still in the building.
+ * <p/>
+ * Frames from the coordinator are a shard number followed by its ShardSpec,
+ * or STOP. Frames back start with a tag byte:
+ * <ul>
+ * <li>TRIP: start and destination floor as shorts, then wait and trip time
+ * in milliseconds as ints</li>
+ * <li>DONE: riders delivered and riders still in the building as longs</li>
+ * <li>FAILED: why the shard couldn't be run, as a UTF string</li>
+ * </ul>
+ * <p/>
+ * Usage: java -cp ... ShardWorker port. The coordinator starts its workers itself.
+ */
+public class ShardWorker {
+
+    final static Logger logger = Logger.getLogger("ShardWorker.class");
+
+    static final int STOP = -1;
+
+    static final byte TRIP = 1;
+    static final byte DONE = 2;
+    static final byte FAILED = 3;
+
+    private final DataInputStream in;
+    private final DataOutputStream out;
+
+    ShardWorker(final Socket socket) throws IOException {
+
+        in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+        out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream(), 1 << 16));
+    }
+
+    /**
+     * Runs shards until the coordinator says to stop or goes away
+     *
+     * @throws IOException
+     * @throws InterruptedException
+     */
+    void serve() throws IOException, InterruptedException {
+
+        int shard;
+        while ((shard = in.readInt()) != STOP) {
+
+            ShardSpec spec = ShardSpec.readFrom(in);
+            logger.fine("Running shard " + shard + ": " + spec);
+            runShard(spec);
+            out.flush();
+        }
+    }
+
+    private void runShard(final ShardSpec spec) throws IOException, InterruptedException {
+
+        BuildingSimulation simulation;
+        try {
+            simulation = spec.newSimulation();
+        } catch (IllegalArgumentException e) {
+            fail(e);
+            return;
+        }
+
+        // A discrete-event run delivers every rider on this thread, so the
+        // listener can write to the stream directly
+        simulation.addCompletedRiderListener(new CompletedRiderListener() {
+            @Override
+            public void riderCompleted(final Rider r) {
+
+                try {
+                    out.writeByte(TRIP);
+                    out.writeShort(r.getStartFloor());
+                    out.writeShort(r.getDestinationFloor());
+                    out.writeInt((int) Math.min(Integer.MAX_VALUE, r.getWaitTime()));
+                    out.writeInt((int) Math.min(Integer.MAX_VALUE, r.getTripTime()));
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+        });
+
+        // Shards are deterministic, so a run that blows up would blow up again
+        // on every restart. It's reported as a failed shard, and the worker
+        // moves on to the next one.
+        try {
+            simulation.runDiscreteEventSimulation();
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        } catch (RuntimeException e) {
+            logger.log(Level.WARNING, "Shard failed: " + spec, e);
+            fail(e);
+            return;
+        }
+
+        out.writeByte(DONE);
+        out.writeLong(simulation.getTripTimes().getCount());
+        out.writeLong(simulation.getRiderRegistry().getNumberInFlight());
+    }
+
+    private void fail(final RuntimeException e) throws IOException {
+
+        out.writeByte(FAILED);
+        out.writeUTF(e.getClass().getSimpleName() + ": " + e.getMessage());
+    }
+
+    public static void main(String args[]) throws IOException, InterruptedException {
+
+        if (args.length != 1) {
+            throw new IllegalArgumentException("Usage: ShardWorker port");
+        }
+
+        // Workers share the coordinator's console, which only wants to hear about problems
+        for (String name : new String[]{"BuildingSimulation.class", "ClosestAcceptElevator" +
+                ".class", "Dispatcher.class"}) {
+            Logger.getLogger(name).setLevel(Level.WARNING);
+        }
+
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), Integer.parseInt(
+                args[0]))) {
+            socket.setTcpNoDelay(true);
+            new ShardWorker(socket).serve();
+        }
+    }
+}
@@ -0,0 +1,384 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Saves a paused discrete-event run to a compact binary file, and restores
+ * runs from it. Any number of runs can be restored from one checkpoint, each
+ * with its own dispatch policy, to compare what-if experiments that start
+ * from the same warmed-up state.
+ * <p/>
+ * A checkpoint holds everything the rest of the run depends on: the clock,
+ * every car's position, stops and riders, every rider in the building, the
+ * events waiting to fire, how far the rider source has got, the random
+ * streams and the stats gathered so far. A SplittableRandom can't be saved
+ * as it is, so taking a checkpoint reseeds every random stream from its own
+ * next value and saves the new seeds. From then on the original run and every
+ * run restored from the checkpoint make exactly the same random choices.
+ * <p/>
+ * The file is a header, then the cars and stats, then one RIDER_SIZE-byte
+ * record per rider, then the rider source and the pending events. It's
+ * written through a large buffer and read back with one bulk read, so a
+ * building with hundreds of thousands of riders takes well under a second
+ * to save or restore.
+ * <p/>
+ * Dispatch policy and car motion aren't saved, so that each restored run can
+ * pick its own. Neither are an event tracer or a workload recorder.
+ * <p/>
+ * Usage: simulation.startDiscreteEventSimulation(seed), then
+ * runDiscreteEventSimulationUntil() to the moment to save, then
+ * SimulationCheckpoint.write(simulation, file). Later, restore(file, source),
+ * set the policy to try, and resumeDiscreteEventSimulation().
+ */
+public class SimulationCheckpoint {
+
+    static final int MAGIC = 0x454c4350; // "ELCP"
+    static final int VERSION = 1;
+
+    // magic, version, cars, floors, duration, seed, start time, now, 3 stream
+    // seeds, whether there's a rider source
+    static final int HEADER_SIZE = 4 + 4 + 4 + 4 + 4 + 8 + 8 + 8 + 3 * 8 + 1;
+
+    // where the rider is, car id, start floor, destination floor, request
+    // time, board time
+    static final int RIDER_SIZE = 1 + 4 + 2 + 2 + 8 + 8;
+
+    // type, time, then a car id or the start and destination floors
+    static final int EVENT_SIZE = 1 + 8 + 4;
+
+    // Where a rider is in their trip
+    static final byte WAITING = 0;
+    static final byte IN_MAILBOX = 1;
+    static final byte ASSIGNED = 2;
+    static final byte RIDING = 3;
+
+    // The kinds of pending event
+    static final byte CAR_STEP = 1;
+    static final byte ARRIVAL = 2;
+
+    private static final int BUFFER_SIZE = 1 << 20;
+
+    private SimulationCheckpoint() {
+    }
+
+    /**
+     * Saves a paused discrete-event run
+     *
+     * @param simulation a run paused by runDiscreteEventSimulationUntil()
+     * @param file
+     * @throws IOException
+     * @throws IllegalStateException if the simulation isn't a paused
+     *                               discrete-event run
+     */
+    public static void write(final BuildingSimulation simulation, final File file) throws
+            IOException {
+
+        EventScheduler scheduler = simulation.getEventScheduler();
+        if (scheduler == null) {
+            throw new IllegalStateException("Only a discrete-event run can be checkpointed");
+        }
+        if (simulation.getNumFloors() > 0xffff) {
+            throw new IllegalStateException("Too many floors to checkpoint: " + simulation
+                    .getNumFloors());
+        }
+
+        // Check every pending event can be saved before changing anything
+        Map<Runnable, BuildingSimulation.CarStep> steps = new IdentityHashMap<>();
+        for (BuildingSimulation.CarStep step : simulation.getCarSteps()) {
+            steps.put(step.step, step);
+        }
+        List<EventScheduler.ScheduledEvent> events = scheduler.getPendingEventsInOrder();
+        boolean started = simulation.getUnassignedRiders().isEmpty();
+        for (EventScheduler.ScheduledEvent event : events) {
+            started &= steps.containsKey(event.action) || event.action instanceof
+                    BuildingSimulation.Arrival;
+        }
+        if (!started) {
+            throw new IllegalStateException("The run hasn't started yet, so it can't be " +
+                    "checkpointed. Run it up to the start first.");
+        }
+
+        RiderSource source = simulation.getRiderSource();
+        long[] keys = simulation.rekeyRandomStreams();
+
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+
+            Output out = new Output(channel);
+            out.reserve(HEADER_SIZE).putInt(MAGIC).putInt(VERSION)
+                    .putInt(simulation.getNumElevators()).putInt(simulation.getNumFloors())
+                    .putInt(simulation.getTimeoutSeconds()).putLong(simulation.getSeed())
+                    .putLong(simulation.getStartTime()).putLong(scheduler.now())
+                    .putLong(keys[0]).putLong(keys[1]).putLong(keys[2])
+                    .put((byte) (source == null ? 0 : 1));
+
+            List<ClosestAcceptElevator> cars = new ArrayList<>();
+            for (BuildingSimulation.CarStep step : simulation.getCarSteps()) {
+                cars.add(step.elevator);
+            }
+            for (ClosestAcceptElevator car : cars) {
+                out.reserve(8 + 4).putLong(car.getState()).putInt(car
+                        .getTotalRidersTransported());
+                car.getWaitTimes().writeTo(out.reserve(LatencyHistogram.SERIALIZED_SIZE));
+                car.getTripTimes().writeTo(out.reserve(LatencyHistogram.SERIALIZED_SIZE));
+            }
+            simulation.getWaitTimes().writeTo(out.reserve(LatencyHistogram.SERIALIZED_SIZE));
+            simulation.getTripTimes().writeTo(out.reserve(LatencyHistogram.SERIALIZED_SIZE));
+
+            Dispatcher dispatcher = simulation.getDispatcher();
+            RiderRegistry registry = simulation.getRiderRegistry();
+            out.reserve(5 * 8).putLong(dispatcher.getRidersDispatched())
+                    .putLong(dispatcher.getBatchesDispatched())
+                    .putLong(dispatcher.getTotalDispatchLatencyMs())
+                    .putLong(dispatcher.getMaxDispatchLatencyMs())
+                    .putLong(registry.getNumberOfRiders(Rider.State.DELIVERED));
+
+            writeRiders(out, simulation, cars);
+
+            if (source != null) {
+                source.checkpointTo(out.reserve(RiderSource.CHECKPOINT_SIZE));
+            }
+
+            out.reserve(4).putInt(events.size());
+            for (EventScheduler.ScheduledEvent event : events) {
+
+                ByteBuffer buffer = out.reserve(EVENT_SIZE);
+                BuildingSimulation.CarStep step = steps.get(event.action);
+                if (step != null) {
+                    buffer.put(CAR_STEP).putLong(event.time).putInt(step.elevator.getId());
+                } else {
+                    BuildingSimulation.Arrival arrival = (BuildingSimulation.Arrival) event
+                            .action;
+                    buffer.put(ARRIVAL).putLong(event.time).putShort((short) arrival
+                            .startFloor).putShort((short) arrival.destinationFloor);
+                }
+            }
+            out.flush();
+        }
+    }
+
+    /**
+     * Riders who haven't boarded go first, in the order they're queued on
+     * each floor, so restoring them in file order rebuilds the same queues.
+     * Riders in a car follow, in the order they'll get off.
+     */
+    private static void writeRiders(final Output out, final BuildingSimulation simulation,
+                                    final List<ClosestAcceptElevator> cars) throws IOException {
+
+        Set<Rider> inMailbox = Collections.newSetFromMap(new IdentityHashMap<Rider, Boolean>());
+        for (ClosestAcceptElevator car : cars) {
+            inMailbox.addAll(car.getMailbox());
+        }
+
+        long numRiders = simulation.getRiderRegistry().getNumberInFlight();
+        out.reserve(8).putLong(numRiders);
+
+        long written = 0;
+        HallCallIndex hallCalls = simulation.getHallCalls();
+        for (int floor = 0; floor <= simulation.getNumFloors(); floor++) {
+            for (Elevator.Direction direction : new Elevator.Direction[]{Elevator.Direction.UP,
+                    Elevator.Direction.DOWN}) {
+                for (Rider r : hallCalls.getWaiting(floor, direction)) {
+
+                    byte place = r.getState() == Rider.State.WAITING ? WAITING : (inMailbox
+                            .contains(r) ? IN_MAILBOX : ASSIGNED);
+                    writeRider(out.reserve(RIDER_SIZE), r, place);
+                    written++;
+                }
+            }
+        }
+        for (ClosestAcceptElevator car : cars) {
+            for (Rider r : car.getRidersOnBoard()) {
+                writeRider(out.reserve(RIDER_SIZE), r, RIDING);
+                written++;
+            }
+        }
+
+        if (written != numRiders) {
+            throw new IllegalStateException("Found " + written + " riders in the building, " +
+                    "but " + numRiders + " are in flight");
+        }
+    }
+
+    private static void writeRider(final ByteBuffer out, final Rider r, final byte place) {
+
+        out.put(place).putInt(r.getElevatorId()).putShort((short) r.getStartFloor())
+                .putShort((short) r.getDestinationFloor()).putLong(r.getRequestTime())
+                .putLong(r.getState() == Rider.State.RIDING ? r.getBoardTime() : 0);
+    }
+
+    /**
+     * Restores a run from a checkpoint, paused where it was saved. Set the
+     * dispatch policy and car motion to try, then carry on with
+     * resumeDiscreteEventSimulation() or runDiscreteEventSimulationUntil().
+     *
+     * @param file
+     * @param source a fresh rider source built the same way as the
+     *               checkpointed run's, or null if it didn't have one
+     * @return
+     * @throws IOException if the file isn't a checkpoint, or is cut short
+     * @throws InterruptedException
+     */
+    public static BuildingSimulation restore(final File file, final RiderSource source) throws
+            IOException, InterruptedException {
+
+        ByteBuffer in;
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException(file + " is too large to be a checkpoint");
+            }
+            in = ByteBuffer.allocate((int) size);
+            while (in.hasRemaining()) {
+                if (channel.read(in) < 0) {
+                    throw new IOException(file + " was cut short while reading it");
+                }
+            }
+            in.flip();
+        }
+
+        try {
+            return restore(in, source, file);
+        } catch (BufferUnderflowException | IndexOutOfBoundsException e) {
+            throw new IOException(file + " is cut short or corrupt", e);
+        }
+    }
+
+    private static BuildingSimulation restore(final ByteBuffer in, final RiderSource source,
+                                              final File file) throws IOException,
+            InterruptedException {
+
+        if (in.remaining() < HEADER_SIZE || in.getInt() != MAGIC || in.getInt() != VERSION) {
+            throw new IOException(file + " is not a simulation checkpoint");
+        }
+
+        int numElevators = in.getInt();
+        int numFloors = in.getInt();
+        int timeoutSeconds = in.getInt();
+        long seed = in.getLong();
+        long startTime = in.getLong();
+        long now = in.getLong();
+        long[] keys = {in.getLong(), in.getLong(), in.getLong()};
+        boolean hasSource = in.get() != 0;
+
+        if (hasSource && source == null) {
+            throw new IllegalArgumentException("The checkpointed run had a rider source, so " +
+                    "restoring it needs one built the same way");
+        }
+        BuildingSimulation simulation = hasSource ? new BuildingSimulation(numElevators,
+                source, timeoutSeconds, numFloors, seed) : new BuildingSimulation(numElevators,
+                new ArrayList<Rider>(), timeoutSeconds, numFloors, seed);
+        simulation.restoreRandomStreams(keys);
+        List<ClosestAcceptElevator> cars = simulation.restoreDiscreteEventSimulation(startTime,
+                now);
+
+        for (ClosestAcceptElevator car : cars) {
+            car.restorePosition(in.getLong(), in.getInt());
+            car.getWaitTimes().add(LatencyHistogram.readFrom(in));
+            car.getTripTimes().add(LatencyHistogram.readFrom(in));
+        }
+        simulation.getWaitTimes().add(LatencyHistogram.readFrom(in));
+        simulation.getTripTimes().add(LatencyHistogram.readFrom(in));
+
+        RiderRegistry registry = simulation.getRiderRegistry();
+        simulation.getDispatcher().restoreStats(in.getLong(), in.getLong(), in.getLong(),
+                in.getLong());
+        registry.restoreDelivered(in.getLong());
+
+        long numRiders = in.getLong();
+        if (numRiders < 0 || numRiders > in.remaining() / RIDER_SIZE) {
+            throw new IOException(file + " is cut short or corrupt");
+        }
+        RiderStore store = simulation.getRiderStore();
+        for (long i = 0; i < numRiders; i++) {
+
+            byte place = in.get();
+            int carId = in.getInt();
+            int startFloor = in.getShort() & 0xffff;
+            int destinationFloor = in.getShort() & 0xffff;
+            long requestTime = in.getLong();
+            long boardTime = in.getLong();
+
+            Rider r = new Rider(store, startFloor, destinationFloor);
+            Rider.State state = place == WAITING ? Rider.State.WAITING : (place == RIDING ?
+                    Rider.State.RIDING : Rider.State.ASSIGNED);
+            r.restore(state, carId, requestTime, boardTime);
+            registry.restore(r);
+            if (place != WAITING) {
+                cars.get(carId).restoreRider(r, place == IN_MAILBOX);
+            }
+        }
+
+        if (hasSource) {
+            source.restoreFrom(in);
+        }
+
+        int numEvents = in.getInt();
+        for (int i = 0; i < numEvents; i++) {
+
+            byte type = in.get();
+            long time = in.getLong();
+            if (type == CAR_STEP) {
+                simulation.getCarSteps().get(in.getInt()).scheduleAt(time);
+            } else if (type == ARRIVAL) {
+                simulation.scheduleArrivalAt(time, in.getShort() & 0xffff, in.getShort() &
+                        0xffff);
+            } else {
+                throw new IOException(file + " has an unknown event: " + type);
+            }
+        }
+
+        ElevatorIndex index = simulation.getElevatorIndex();
+        for (ClosestAcceptElevator car : cars) {
+            index.update(car);
+        }
+        return simulation;
+    }
+
+    /**
+     * Writes to a file channel through one large buffer
+     */
+    private static class Output {
+
+        private final FileChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+
+        Output(final FileChannel channel) {
+            this.channel = channel;
+        }
+
+        /**
+         * Makes room for the given number of bytes
+         *
+         * @param bytes
+         * @return the buffer to write them to
+         * @throws IOException
+         */
+        ByteBuffer reserve(final int bytes) throws IOException {
+
+            if (buffer.remaining() < bytes) {
+                flush();
+            }
+            return buffer;
+        }
+
+        void flush() throws IOException {
+
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            buffer.clear();
+        }
+    }
+}
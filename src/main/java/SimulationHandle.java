@@ -0,0 +1,206 @@
+import java.util.Collection;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A real-time simulation that is running in the background, as returned by
+ * BuildingSimulation.runSimulation().
+ * <p/>
+ * Any number of threads can submit riders through the handle while the run
+ * goes on. A submitted rider asks for an elevator at the moment they are
+ * submitted and is queued for the dispatcher, which assigns whatever has
+ * piled up in one batch. Submitting takes no lock of its own and never sleeps.
+ * <p/>
+ * The stats are live: they can be read at any point during the run, and once
+ * it is over they hold the final figures.
+ */
+public class SimulationHandle {
+
+    private final BuildingSimulation simulation;
+    private final Future<Void> completion;
+    private final AtomicLong ridersSubmitted = new AtomicLong();
+
+    SimulationHandle(final BuildingSimulation simulation, final Future<Void> completion) {
+
+        this.simulation = simulation;
+        this.completion = completion;
+    }
+
+    public BuildingSimulation getSimulation() {
+        return simulation;
+    }
+
+    /**
+     * Brings a rider into the building and queues them to be assigned an elevator
+     *
+     * @param r a rider who hasn't been submitted before
+     * @throws IllegalStateException if the run is over
+     */
+    public void submit(final Rider r) {
+
+        checkRider(r);
+        checkRunning();
+        simulation.submit(r);
+        ridersSubmitted.incrementAndGet();
+    }
+
+    /**
+     * Brings a batch of riders into the building and queues them to be
+     * assigned an elevator together. Cheaper than submitting them one at a time.
+     *
+     * @param riders riders who haven't been submitted before
+     * @throws IllegalStateException if the run is over
+     */
+    public void submitAll(final Collection<Rider> riders) {
+
+        if (riders == null) {
+            throw new IllegalArgumentException("No riders to submit");
+        }
+        for (Rider r : riders) {
+            checkRider(r);
+        }
+        checkRunning();
+        simulation.submitAll(riders);
+        ridersSubmitted.addAndGet(riders.size());
+    }
+
+    /**
+     * Completes once the run is over and every thread it started has stopped.
+     * Cancelling it cuts the run short.
+     *
+     * @return
+     */
+    public Future<Void> getCompletion() {
+        return completion;
+    }
+
+    public boolean isDone() {
+        return completion.isDone();
+    }
+
+    /**
+     * Blocks until the run is over
+     *
+     * @throws InterruptedException
+     */
+    public void awaitCompletion() throws InterruptedException {
+
+        try {
+            completion.get();
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Simulation failed", e.getCause());
+        }
+    }
+
+    /**
+     * Blocks until the run is over, or the timeout passes
+     *
+     * @param timeout
+     * @param unit
+     * @return whether the run is over
+     * @throws InterruptedException
+     */
+    public boolean awaitCompletion(final long timeout, final TimeUnit unit) throws
+            InterruptedException {
+
+        try {
+            completion.get(timeout, unit);
+            return true;
+        } catch (TimeoutException e) {
+            return false;
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Simulation failed", e.getCause());
+        }
+    }
+
+    /**
+     * How many riders have been submitted through this handle
+     *
+     * @return
+     */
+    public long getRidersSubmitted() {
+        return ridersSubmitted.get();
+    }
+
+    /**
+     * How many riders have reached their destination so far, including the
+     * ones the simulation was built with
+     *
+     * @return
+     */
+    public long getRidersDelivered() {
+        return simulation.getTripTimes().getCount();
+    }
+
+    /**
+     * How many riders are in the building, waiting or riding
+     *
+     * @return
+     */
+    public long getRidersInFlight() {
+        return simulation.getRiderRegistry().getNumberInFlight();
+    }
+
+    /**
+     * How many riders are at the given point of their trip
+     *
+     * @param state
+     * @return
+     */
+    public long getRiders(final Rider.State state) {
+        return simulation.getRiderRegistry().getNumberOfRiders(state);
+    }
+
+    public long getRemainingMillis() {
+        return simulation.getRemainingMillis();
+    }
+
+    public LatencyHistogram getWaitTimes() {
+        return simulation.getWaitTimes();
+    }
+
+    public LatencyHistogram getTripTimes() {
+        return simulation.getTripTimes();
+    }
+
+    public Dispatcher getDispatcher() {
+        return simulation.getDispatcher();
+    }
+
+    /**
+     * A one-line snapshot of how the run is going
+     *
+     * @return
+     */
+    public String getSummary() {
+
+        return "Submitted " + getRidersSubmitted() + " riders, delivered " +
+                getRidersDelivered() + ", " + getRidersInFlight() + " in flight, " +
+                getRemainingMillis() + " ms left. Riders: " + simulation.getRiderRegistry()
+                .getSummary() + ". " + getDispatcher().getSummary() + ". " +
+                simulation.getLatencySummary();
+    }
+
+    private void checkRider(final Rider r) {
+
+        if (r == null) {
+            throw new IllegalArgumentException("Can't submit a null rider");
+        }
+        int numFloors = simulation.getNumFloors();
+        if (r.getStartFloor() < 1 || r.getStartFloor() > numFloors ||
+                r.getDestinationFloor() < 1 || r.getDestinationFloor() > numFloors) {
+            throw new IllegalArgumentException("Rider " + r.riderId + " travels outside the " +
+                    "building's " + numFloors + " floors");
+        }
+    }
+
+    private void checkRunning() {
+
+        if (completion.isDone() || !simulation.simulationStillRunning()) {
+            throw new IllegalStateException("The simulation is over");
+        }
+    }
+}
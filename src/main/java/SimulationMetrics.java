@@ -0,0 +1,356 @@
+import java.io.Closeable;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Logger;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
+
+/**
+ * Counts what a simulation does and times where it spends its time, for the
+ * building as a whole and for each car, and publishes the numbers as JMX
+ * MBeans and as a periodic text dump.
+ * <p/>
+ * Every counter is a LongAdder, so cars and the dispatcher recording at the
+ * same time each add to their own cell rather than fighting over one. A
+ * phase timer is a count and a total of System.nanoTime() deltas. Queue
+ * depths aren't counted at all: they are read from the simulation when
+ * someone asks for them.
+ * <p/>
+ * Metrics cost nothing until they're set on a simulation: each instrumented
+ * point reads the simulation's metrics and does nothing if there are none.
+ * Running with -Delevatorsim.metrics=false goes further, and lets the JIT
+ * compile the instrumentation out altogether.
+ * <p/>
+ * Usage: build metrics for a simulation, hand them to
+ * BuildingSimulation.setMetrics(), and optionally registerMBeans() and
+ * startDump(). close() them once the run is over.
+ */
+public class SimulationMetrics implements SimulationMetricsMBean, Closeable {
+
+    final static Logger logger = Logger.getLogger("SimulationMetrics.class");
+
+    // When false, no simulation hands out its metrics, whatever has been set
+    static final boolean ENABLED = !"false".equals(System.getProperty("elevatorsim.metrics"));
+
+    static final String DOMAIN = "ElevatorSim";
+
+    // Passed in place of a car id for work that isn't any one car's
+    static final int NO_CAR = -1;
+
+    /**
+     * The stretches of hot-path code that are timed
+     */
+    public enum Phase {
+        DISPATCH, // choosing a car for a rider and handing the rider to it
+        STOP, // letting riders off at a floor and boarding the ones waiting
+        NEXT_DESTINATION, // asking the motion strategy where to go next
+        LOCK_WAIT; // waiting to wake an idle car
+    }
+
+    /**
+     * How many times a phase ran, and how long it took in all
+     */
+    static class PhaseTimer {
+
+        private final LongAdder count = new LongAdder();
+        private final LongAdder totalNanos = new LongAdder();
+
+        void record(final long nanos) {
+            count.increment();
+            totalNanos.add(nanos);
+        }
+
+        long getCount() {
+            return count.sum();
+        }
+
+        long getTotalNanos() {
+            return totalNanos.sum();
+        }
+
+        double getMeanNanos() {
+
+            long n = count.sum();
+            return n == 0 ? 0 : (double) totalNanos.sum() / n;
+        }
+    }
+
+    private final BuildingSimulation simulation;
+    private final String name;
+
+    private final PhaseTimer[] phases = newPhaseTimers();
+    private final CarMetrics[] cars;
+
+    private final LongAdder ridersRequested = new LongAdder();
+    private final LongAdder ridersBoarded = new LongAdder();
+    private final LongAdder ridersDelivered = new LongAdder();
+    private final LongAdder floorsTravelled = new LongAdder();
+
+    private final List<ObjectName> registeredNames = new ArrayList<>();
+    private ScheduledExecutorService dumper;
+
+    /**
+     * @param simulation the simulation whose queues are reported
+     * @param name tells this building's MBeans apart from other buildings'
+     */
+    public SimulationMetrics(final BuildingSimulation simulation, final String name) {
+
+        if (simulation == null || name == null || name.isEmpty()) {
+            throw new IllegalArgumentException("Metrics need a simulation and a name");
+        }
+        this.simulation = simulation;
+        this.name = name;
+
+        cars = new CarMetrics[simulation.getNumElevators()];
+        for (int id = 0; id < cars.length; id++) {
+            cars[id] = new CarMetrics(id);
+        }
+    }
+
+    static PhaseTimer[] newPhaseTimers() {
+
+        PhaseTimer[] timers = new PhaseTimer[Phase.values().length];
+        for (int i = 0; i < timers.length; i++) {
+            timers[i] = new PhaseTimer();
+        }
+        return timers;
+    }
+
+    /**
+     * Records a phase that started at the given System.nanoTime()
+     *
+     * @param phase
+     * @param carId the car the work was for, or NO_CAR
+     * @param startNanos
+     */
+    void phaseEnded(final Phase phase, final int carId, final long startNanos) {
+
+        long nanos = System.nanoTime() - startNanos;
+        phases[phase.ordinal()].record(nanos);
+        if (carId >= 0 && carId < cars.length) {
+            cars[carId].phases[phase.ordinal()].record(nanos);
+        }
+    }
+
+    void riderRequested() {
+        ridersRequested.increment();
+    }
+
+    void riderBoarded(final int carId) {
+        ridersBoarded.increment();
+        cars[carId].ridersBoarded.increment();
+    }
+
+    void riderDelivered(final int carId) {
+        ridersDelivered.increment();
+        cars[carId].ridersDelivered.increment();
+    }
+
+    void carMoved(final int carId) {
+        floorsTravelled.increment();
+        cars[carId].floorsTravelled.increment();
+    }
+
+    public CarMetrics getCar(final int carId) {
+        return cars[carId];
+    }
+
+    PhaseTimer getPhase(final Phase phase) {
+        return phases[phase.ordinal()];
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public long getRidersRequested() {
+        return ridersRequested.sum();
+    }
+
+    @Override
+    public long getRidersDispatched() {
+        return phases[Phase.DISPATCH.ordinal()].getCount();
+    }
+
+    @Override
+    public long getRidersBoarded() {
+        return ridersBoarded.sum();
+    }
+
+    @Override
+    public long getRidersDelivered() {
+        return ridersDelivered.sum();
+    }
+
+    @Override
+    public long getFloorsTravelled() {
+        return floorsTravelled.sum();
+    }
+
+    @Override
+    public int getUnassignedRiders() {
+        return simulation.getUnassignedRiders().size();
+    }
+
+    @Override
+    public int[] getWaitingRidersPerFloor() {
+
+        HallCallIndex hallCalls = simulation.getHallCalls();
+        int[] waiting = new int[simulation.getNumFloors() + 1];
+        for (int floor = 0; floor < waiting.length; floor++) {
+            waiting[floor] = hallCalls.getNumberWaiting(floor, Elevator.Direction.UP) +
+                    hallCalls.getNumberWaiting(floor, Elevator.Direction.DOWN);
+        }
+        return waiting;
+    }
+
+    @Override
+    public long getDispatchNanos() {
+        return phases[Phase.DISPATCH.ordinal()].getTotalNanos();
+    }
+
+    @Override
+    public long getStops() {
+        return phases[Phase.STOP.ordinal()].getCount();
+    }
+
+    @Override
+    public long getStopNanos() {
+        return phases[Phase.STOP.ordinal()].getTotalNanos();
+    }
+
+    @Override
+    public long getNextDestinationCalls() {
+        return phases[Phase.NEXT_DESTINATION.ordinal()].getCount();
+    }
+
+    @Override
+    public long getNextDestinationNanos() {
+        return phases[Phase.NEXT_DESTINATION.ordinal()].getTotalNanos();
+    }
+
+    @Override
+    public long getLockWaits() {
+        return phases[Phase.LOCK_WAIT.ordinal()].getCount();
+    }
+
+    @Override
+    public long getLockWaitNanos() {
+        return phases[Phase.LOCK_WAIT.ordinal()].getTotalNanos();
+    }
+
+    /**
+     * Publishes the building's metrics, and each car's, on the platform MBean
+     * server, as ElevatorSim:type=Building,name=... and
+     * ElevatorSim:type=Car,building=...,id=...
+     *
+     * @throws JMException if the name is taken or isn't a valid ObjectName value
+     */
+    public synchronized void registerMBeans() throws JMException {
+
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName buildingName = new ObjectName(DOMAIN + ":type=Building,name=" + name);
+        server.registerMBean(new StandardMBean(this, SimulationMetricsMBean.class),
+                buildingName);
+        registeredNames.add(buildingName);
+
+        for (CarMetrics car : cars) {
+            ObjectName carName = new ObjectName(DOMAIN + ":type=Car,building=" + name + ",id=" +
+                    car.getId());
+            server.registerMBean(new StandardMBean(car, CarMetricsMBean.class), carName);
+            registeredNames.add(carName);
+        }
+    }
+
+    /**
+     * Logs getDump() every so often, from a background thread, until close()
+     *
+     * @param intervalMs
+     */
+    public synchronized void startDump(final long intervalMs) {
+
+        if (intervalMs <= 0) {
+            throw new IllegalArgumentException("Invalid dump interval: " + intervalMs);
+        }
+        if (dumper != null) {
+            throw new IllegalStateException("Already dumping metrics for " + name);
+        }
+
+        dumper = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(final Runnable r) {
+
+                Thread thread = new Thread(r, "metrics-dump-" + name);
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        dumper.scheduleAtFixedRate(new Runnable() {
+            @Override
+            public void run() {
+                logger.info(getDump());
+            }
+        }, intervalMs, intervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Every metric as text: a line for the building, a line per phase, then
+     * a line per car
+     *
+     * @return
+     */
+    public String getDump() {
+
+        StringBuilder dump = new StringBuilder();
+        dump.append(name).append(": requested=").append(getRidersRequested())
+                .append(" dispatched=").append(getRidersDispatched())
+                .append(" boarded=").append(getRidersBoarded())
+                .append(" delivered=").append(getRidersDelivered())
+                .append(" floors=").append(getFloorsTravelled())
+                .append(" unassigned=").append(getUnassignedRiders())
+                .append(" waiting=").append(Arrays.toString(getWaitingRidersPerFloor()));
+
+        for (Phase phase : Phase.values()) {
+
+            PhaseTimer timer = phases[phase.ordinal()];
+            dump.append(String.format("%n  %s: n=%d total=%.3fms mean=%.0fns", phase,
+                    timer.getCount(), timer.getTotalNanos() / 1e6, timer.getMeanNanos()));
+        }
+        for (CarMetrics car : cars) {
+            dump.append(String.format("%n  %s", car.getSummary()));
+        }
+        return dump.toString();
+    }
+
+    /**
+     * Stops the dump and takes the MBeans down
+     */
+    @Override
+    public synchronized void close() {
+
+        if (dumper != null) {
+            dumper.shutdownNow();
+            dumper = null;
+        }
+
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        for (ObjectName registered : registeredNames) {
+            try {
+                server.unregisterMBean(registered);
+            } catch (JMException e) {
+                logger.warning("Couldn't unregister " + registered + ": " + e);
+            }
+        }
+        registeredNames.clear();
+    }
+}
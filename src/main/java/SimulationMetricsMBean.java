@@ -0,0 +1,45 @@
+/**
+ * The building-wide metrics of a simulation, as published over JMX.
+ * Phase times are totals, in nanoseconds.
+ */
+public interface SimulationMetricsMBean {
+
+    public long getRidersRequested();
+
+    public long getRidersDispatched();
+
+    public long getRidersBoarded();
+
+    public long getRidersDelivered();
+
+    public long getFloorsTravelled();
+
+    /**
+     * How many riders are queued for the dispatcher right now
+     *
+     * @return
+     */
+    public int getUnassignedRiders();
+
+    /**
+     * How many riders are standing at each floor right now, going either way
+     *
+     * @return indexed by floor
+     */
+    public int[] getWaitingRidersPerFloor();
+
+    public long getDispatchNanos();
+
+    public long getStops();
+
+    public long getStopNanos();
+
+    public long getNextDestinationCalls();
+
+    public long getNextDestinationNanos();
+
+    public long getLockWaits();
+
+    public long getLockWaitNanos();
+
+}
@@ -0,0 +1,105 @@
+import java.util.BitSet;
+
+/**
+ * The classic elevator algorithms, which all sweep the building in one
+ * direction at a time and stop at every floor in their path. They differ in
+ * how they turn around.
+ * <p/>
+ * A car that hasn't moved yet heads for its closest stop, going up on a tie.
+ */
+public enum SweepMotion implements CarMotionStrategy {
+
+    // Carries on to the top or bottom floor before turning around, even with
+    // no stops left in that direction
+    SCAN {
+        @Override
+        int nextFloorGoingUp(final int currentFloor, final BitSet stops, final int numFloors) {
+
+            int nextFloor = stops.nextSetBit(currentFloor);
+            if (nextFloor >= 0 || stops.isEmpty()) {
+                return nextFloor;
+            }
+            return currentFloor < numFloors ? numFloors : stops.previousSetBit(currentFloor);
+        }
+
+        @Override
+        int nextFloorGoingDown(final int currentFloor, final BitSet stops, final int numFloors) {
+
+            int nextFloor = stops.previousSetBit(currentFloor);
+            if (nextFloor >= 0 || stops.isEmpty()) {
+                return nextFloor;
+            }
+            return currentFloor > 1 ? 1 : stops.nextSetBit(currentFloor);
+        }
+
+        @Override
+        public int turnaroundFloor(final Elevator.Direction direction, final int lastStop,
+                                   final int numFloors) {
+            return direction == Elevator.Direction.UP ? numFloors : 1;
+        }
+    },
+
+    // Turns around at the last stop in its direction
+    LOOK {
+        @Override
+        int nextFloorGoingUp(final int currentFloor, final BitSet stops, final int numFloors) {
+
+            int nextFloor = stops.nextSetBit(currentFloor);
+            return nextFloor >= 0 ? nextFloor : stops.previousSetBit(currentFloor);
+        }
+
+        @Override
+        int nextFloorGoingDown(final int currentFloor, final BitSet stops, final int numFloors) {
+
+            int nextFloor = stops.previousSetBit(currentFloor);
+            return nextFloor >= 0 ? nextFloor : stops.nextSetBit(currentFloor);
+        }
+    },
+
+    // After the last stop in its direction, goes straight to the stop
+    // furthest the other way and sweeps in the same direction again
+    CIRCULAR_LOOK {
+        @Override
+        int nextFloorGoingUp(final int currentFloor, final BitSet stops, final int numFloors) {
+
+            int nextFloor = stops.nextSetBit(currentFloor);
+            return nextFloor >= 0 ? nextFloor : stops.nextSetBit(0);
+        }
+
+        @Override
+        int nextFloorGoingDown(final int currentFloor, final BitSet stops, final int numFloors) {
+
+            int nextFloor = stops.previousSetBit(currentFloor);
+            return nextFloor >= 0 ? nextFloor : stops.length() - 1;
+        }
+
+        @Override
+        public boolean stopsOnWayBack() {
+            return false;
+        }
+    };
+
+    @Override
+    public int nextFloor(final int currentFloor, final Elevator.Direction direction,
+                         final BitSet stops, final int numFloors) {
+
+        if (direction == Elevator.Direction.UP) {
+            return nextFloorGoingUp(currentFloor, stops, numFloors);
+        } else if (direction == Elevator.Direction.DOWN) {
+            return nextFloorGoingDown(currentFloor, stops, numFloors);
+        }
+
+        int above = stops.nextSetBit(currentFloor);
+        int below = stops.previousSetBit(currentFloor);
+        if (above < 0) {
+            return below;
+        } else if (below < 0 || above - currentFloor <= currentFloor - below) {
+            return above;
+        }
+        return below;
+    }
+
+    abstract int nextFloorGoingUp(int currentFloor, BitSet stops, int numFloors);
+
+    abstract int nextFloorGoingDown(int currentFloor, BitSet stops, int numFloors);
+}
@@ -0,0 +1,253 @@
+import java.nio.ByteBuffer;
+import java.util.SplittableRandom;
+
+/**
+ * Generates riders as a Poisson process whose rate follows a RateCurve, with
+ * floors drawn from an OriginDestinationMatrix.
+ * <p/>
+ * Arrivals are generated one at a time as the simulation asks for them, by
+ * thinning: candidate arrivals are drawn at the curve's highest rate, and
+ * each is kept with probability rate(t) / highest rate. Nothing is generated
+ * ahead of time, so memory use is set by the riders in the building, not by
+ * how many the run will see. The same seed always gives the same traffic.
+ * A generator built without a seed takes its stream from the simulation it's
+ * handed to, so the simulation's seed repeats the traffic as well.
+ * <p/>
+ * Usage: new BuildingSimulation(NUM_ELEVATORS, TrafficGenerator.upPeak(...),
+ * TIMEOUT_SECONDS, NUM_FLOORS, seed), or build one from any curve and matrix.
+ */
+public class TrafficGenerator implements RiderSource {
+
+    private final RateCurve rateCurve;
+    private final OriginDestinationMatrix trips;
+    // Null until an unseeded generator is handed to a simulation
+    private SplittableRandom random;
+    private final int[] trip = new int[2];
+
+    // Candidate arrivals are drawn at this rate, in riders per millisecond
+    private final double maxRate;
+
+    private double candidateTime;
+    private long arrivalTime;
+
+    public TrafficGenerator(final RateCurve rateCurve, final OriginDestinationMatrix trips,
+                            final long seed) {
+
+        this(rateCurve, trips);
+        this.random = new SplittableRandom(seed);
+    }
+
+    /**
+     * A generator seeded by the simulation it's handed to
+     *
+     * @param rateCurve
+     * @param trips
+     */
+    public TrafficGenerator(final RateCurve rateCurve, final OriginDestinationMatrix trips) {
+
+        if (rateCurve == null || trips == null) {
+            throw new IllegalArgumentException("A generator needs a rate curve and trips");
+        }
+        this.rateCurve = rateCurve;
+        this.trips = trips;
+        this.maxRate = rateCurve.getMaxRate();
+    }
+
+    /**
+     * Arrivals at a constant rate, between uniformly random floors
+     *
+     * @param numFloors
+     * @param ridersPerMinute
+     * @param durationMs
+     * @param seed
+     * @return
+     */
+    public static TrafficGenerator poisson(final int numFloors, final double ridersPerMinute,
+                                           final long durationMs, final long seed) {
+
+        return new TrafficGenerator(RateCurve.constant(durationMs, ridersPerMinute),
+                OriginDestinationMatrix.uniform(numFloors), seed);
+    }
+
+    /**
+     * A morning rush: traffic from the lobby builds up to the peak rate over
+     * the first quarter of the period, holds for half of it, and tails off
+     *
+     * @param numFloors
+     * @param peakRidersPerMinute
+     * @param durationMs
+     * @param seed
+     * @return
+     */
+    public static TrafficGenerator upPeak(final int numFloors, final double
+            peakRidersPerMinute, final long durationMs, final long seed) {
+
+        return new TrafficGenerator(peakCurve(peakRidersPerMinute, durationMs),
+                OriginDestinationMatrix.upPeak(numFloors), seed);
+    }
+
+    /**
+     * The lunch hour, shaped the same way as upPeak()
+     *
+     * @param numFloors
+     * @param peakRidersPerMinute
+     * @param durationMs
+     * @param seed
+     * @return
+     */
+    public static TrafficGenerator lunch(final int numFloors, final double peakRidersPerMinute,
+                                         final long durationMs, final long seed) {
+
+        return new TrafficGenerator(peakCurve(peakRidersPerMinute, durationMs),
+                OriginDestinationMatrix.lunch(numFloors), seed);
+    }
+
+    /**
+     * The evening rush to the lobby, shaped the same way as upPeak()
+     *
+     * @param numFloors
+     * @param peakRidersPerMinute
+     * @param durationMs
+     * @param seed
+     * @return
+     */
+    public static TrafficGenerator downPeak(final int numFloors, final double
+            peakRidersPerMinute, final long durationMs, final long seed) {
+
+        return new TrafficGenerator(peakCurve(peakRidersPerMinute, durationMs),
+                OriginDestinationMatrix.downPeak(numFloors), seed);
+    }
+
+    /**
+     * poisson(), seeded by the simulation the generator is handed to
+     */
+    public static TrafficGenerator poisson(final int numFloors, final double ridersPerMinute,
+                                           final long durationMs) {
+
+        return new TrafficGenerator(RateCurve.constant(durationMs, ridersPerMinute),
+                OriginDestinationMatrix.uniform(numFloors));
+    }
+
+    /**
+     * upPeak(), seeded by the simulation the generator is handed to
+     */
+    public static TrafficGenerator upPeak(final int numFloors, final double
+            peakRidersPerMinute, final long durationMs) {
+
+        return new TrafficGenerator(peakCurve(peakRidersPerMinute, durationMs),
+                OriginDestinationMatrix.upPeak(numFloors));
+    }
+
+    /**
+     * lunch(), seeded by the simulation the generator is handed to
+     */
+    public static TrafficGenerator lunch(final int numFloors, final double peakRidersPerMinute,
+                                         final long durationMs) {
+
+        return new TrafficGenerator(peakCurve(peakRidersPerMinute, durationMs),
+                OriginDestinationMatrix.lunch(numFloors));
+    }
+
+    /**
+     * downPeak(), seeded by the simulation the generator is handed to
+     */
+    public static TrafficGenerator downPeak(final int numFloors, final double
+            peakRidersPerMinute, final long durationMs) {
+
+        return new TrafficGenerator(peakCurve(peakRidersPerMinute, durationMs),
+                OriginDestinationMatrix.downPeak(numFloors));
+    }
+
+    /**
+     * Ramps up to the peak rate in two steps, holds it, and ramps back down.
+     * A period too short to split into eighths is held at the peak rate.
+     */
+    static RateCurve peakCurve(final double peakRidersPerMinute, final long durationMs) {
+
+        if (durationMs < 8) {
+            return RateCurve.constant(durationMs, peakRidersPerMinute);
+        }
+
+        long eighth = durationMs / 8;
+        return new RateCurve()
+                .then(eighth, peakRidersPerMinute / 4)
+                .then(eighth, peakRidersPerMinute / 2)
+                .then(durationMs - 4 * eighth, peakRidersPerMinute)
+                .then(eighth, peakRidersPerMinute / 2)
+                .then(eighth, peakRidersPerMinute / 4);
+    }
+
+    @Override
+    public void seedFrom(final SplittableRandom random) {
+
+        if (this.random == null) {
+            this.random = random;
+        }
+    }
+
+    @Override
+    public boolean advance() {
+
+        if (maxRate <= 0) {
+            return false;
+        }
+        if (random == null) {
+            throw new IllegalStateException("A generator built without a seed has to be " +
+                    "handed to a simulation first");
+        }
+
+        while (true) {
+
+            // The gap between arrivals of a Poisson process is exponential
+            candidateTime += -Math.log(1 - random.nextDouble()) / maxRate;
+            if (candidateTime >= rateCurve.getDuration()) {
+                return false;
+            }
+
+            if (random.nextDouble() * maxRate < rateCurve.getRate((long) candidateTime)) {
+
+                arrivalTime = (long) candidateTime;
+                trips.sample(random, trip);
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Reseeds the generator from its own next value, since a SplittableRandom
+     * can't be saved as it is, and saves that seed along with the current trip
+     */
+    @Override
+    public void checkpointTo(final ByteBuffer out) {
+
+        long key = random.nextLong();
+        random = new SplittableRandom(key);
+        out.putLong(key).putDouble(candidateTime).putLong(arrivalTime);
+        out.putInt(trip[0]).putInt(trip[1]);
+    }
+
+    @Override
+    public void restoreFrom(final ByteBuffer in) {
+
+        random = new SplittableRandom(in.getLong());
+        candidateTime = in.getDouble();
+        arrivalTime = in.getLong();
+        trip[0] = in.getInt();
+        trip[1] = in.getInt();
+    }
+
+    @Override
+    public long getArrivalTime() {
+        return arrivalTime;
+    }
+
+    @Override
+    public int getStartFloor() {
+        return trip[0];
+    }
+
+    @Override
+    public int getDestinationFloor() {
+        return trip[1];
+    }
+}
@@ -0,0 +1,74 @@
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+/**
+ * Writes a stream of trips to a workload trace, which WorkloadReplay can feed
+ * to any number of later runs. Replaying the same trace lets dispatch
+ * changes be compared on identical traffic.
+ * <p/>
+ * A trace is a HEADER_SIZE-byte header (MAGIC, then VERSION) followed by one
+ * RECORD_SIZE-byte record per trip, in order of arrival: the arrival time in
+ * milliseconds from the start of the run as an int, then the start and
+ * destination floors as shorts.
+ * <p/>
+ * Usage: hand a recorder to BuildingSimulation.setWorkloadRecorder() to
+ * capture every rider of a run, or call record() directly to write a trace
+ * by hand. Either way, close() it afterwards.
+ */
+public class WorkloadRecorder implements Closeable {
+
+    static final int MAGIC = 0x454c574c; // "ELWL"
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 4 + 4;
+    static final int RECORD_SIZE = 4 + 2 + 2;
+
+    private final DataOutputStream out;
+    private long tripsRecorded;
+
+    public WorkloadRecorder(final File traceFile) throws IOException {
+
+        out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(traceFile),
+                1 << 16));
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+    }
+
+    /**
+     * Appends one trip to the trace
+     *
+     * @param arrivalTime milliseconds from the start of the run
+     * @param startFloor
+     * @param destinationFloor
+     * @throws IOException
+     */
+    public synchronized void record(final long arrivalTime, final int startFloor,
+                                    final int destinationFloor) throws IOException {
+
+        if (arrivalTime < 0 || arrivalTime > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Arrival time out of range: " + arrivalTime);
+        }
+        if (startFloor < 0 || startFloor > Short.MAX_VALUE || destinationFloor < 0 ||
+                destinationFloor > Short.MAX_VALUE) {
+            throw new IllegalArgumentException("Floors out of range: " + startFloor + " to " +
+                    destinationFloor);
+        }
+
+        out.writeInt((int) arrivalTime);
+        out.writeShort(startFloor);
+        out.writeShort(destinationFloor);
+        tripsRecorded++;
+    }
+
+    public synchronized long getTripsRecorded() {
+        return tripsRecorded;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        out.close();
+    }
+}
@@ -0,0 +1,141 @@
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Feeds the trips of a workload trace, written by WorkloadRecorder, to a
+ * simulation.
+ * <p/>
+ * The trace is memory-mapped and read one record at a time, a window of
+ * WINDOW_SIZE bytes at a time, so a trace of millions of trips replays
+ * without being loaded onto the heap.
+ */
+public class WorkloadReplay implements RiderSource, Closeable {
+
+    // A multiple of RECORD_SIZE, so records never straddle two windows
+    static final int WINDOW_SIZE = WorkloadRecorder.RECORD_SIZE * (1 << 20);
+
+    private final FileChannel channel;
+    private final long numTrips;
+
+    private MappedByteBuffer window;
+    private long windowStart;
+    private long tripsRead;
+
+    private long arrivalTime;
+    private int startFloor;
+    private int destinationFloor;
+
+    public WorkloadReplay(final File traceFile) throws IOException {
+
+        channel = FileChannel.open(Paths.get(traceFile.getPath()), StandardOpenOption.READ);
+
+        long tripBytes = channel.size() - WorkloadRecorder.HEADER_SIZE;
+        MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0,
+                WorkloadRecorder.HEADER_SIZE);
+        if (tripBytes < 0 || tripBytes % WorkloadRecorder.RECORD_SIZE != 0 || header.getInt()
+                != WorkloadRecorder.MAGIC || header.getInt() != WorkloadRecorder.VERSION) {
+            channel.close();
+            throw new IOException(traceFile + " is not a workload trace");
+        }
+
+        numTrips = tripBytes / WorkloadRecorder.RECORD_SIZE;
+        windowStart = WorkloadRecorder.HEADER_SIZE;
+    }
+
+    /**
+     * How many trips the trace holds in total
+     *
+     * @return
+     */
+    public long getNumTrips() {
+        return numTrips;
+    }
+
+    @Override
+    public boolean advance() {
+
+        if (tripsRead == numTrips) {
+            return false;
+        }
+
+        if (window == null || !window.hasRemaining()) {
+            mapNextWindow();
+        }
+
+        arrivalTime = window.getInt();
+        startFloor = window.getShort();
+        destinationFloor = window.getShort();
+        tripsRead++;
+        return true;
+    }
+
+    @Override
+    public void checkpointTo(final ByteBuffer out) {
+
+        out.putLong(tripsRead).putLong(arrivalTime);
+        out.putInt(startFloor).putInt(destinationFloor);
+    }
+
+    /**
+     * Picks up from the trip the checkpointed replay was on, which has to be
+     * in this replay's trace
+     */
+    @Override
+    public void restoreFrom(final ByteBuffer in) {
+
+        long trips = in.getLong();
+        if (trips < 0 || trips > numTrips) {
+            throw new IllegalArgumentException("The trace has " + numTrips + " trips, not " +
+                    trips);
+        }
+        tripsRead = trips;
+        arrivalTime = in.getLong();
+        startFloor = in.getInt();
+        destinationFloor = in.getInt();
+
+        // The next window starts at the next trip
+        window = null;
+        windowStart = WorkloadRecorder.HEADER_SIZE + trips * WorkloadRecorder.RECORD_SIZE;
+    }
+
+    @Override
+    public long getArrivalTime() {
+        return arrivalTime;
+    }
+
+    @Override
+    public int getStartFloor() {
+        return startFloor;
+    }
+
+    @Override
+    public int getDestinationFloor() {
+        return destinationFloor;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private void mapNextWindow() {
+
+        if (window != null) {
+            windowStart += window.capacity();
+        }
+
+        long size = Math.min(WINDOW_SIZE, (numTrips - tripsRead) * WorkloadRecorder
+                .RECORD_SIZE);
+        try {
+            window = channel.map(FileChannel.MapMode.READ_ONLY, windowStart, size);
+        } catch (IOException e) {
+            throw new IllegalStateException("Couldn't map the workload trace", e);
+        }
+    }
+}
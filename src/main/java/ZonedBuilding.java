@@ -0,0 +1,359 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+/**
+ * A building too tall for one bank of cars, split into stacked zones with
+ * sky lobbies between them. Each zone is a BuildingSimulation of its own,
+ * with its own cars, dispatcher, rider registry and hall calls, so dispatch
+ * in one zone never waits on another, and its cost grows with the zone's
+ * floors and cars rather than the whole building's.
+ * <p/>
+ * A rider whose trip stays within a zone rides that zone's cars. Anyone
+ * else rides to the sky lobby in the direction of their destination, gets
+ * off, and asks the next zone's cars for the rest of the way, changing
+ * again at every sky lobby they pass. Each leg is a rider of its own in its
+ * zone's simulation. The building follows a rider's journey from leg to leg
+ * and times it from the first request to the last drop-off.
+ * <p/>
+ * Usage: build a ZonedBuilding from its zones, runSimulation(), submit()
+ * riders or give it a RiderSource, and awaitCompletion().
+ */
+public class ZonedBuilding {
+
+    final static Logger logger = Logger.getLogger("ZonedBuilding.class");
+
+    private final List<BuildingZone> zones;
+    private final List<BuildingSimulation> simulations;
+    private final int timeoutSeconds;
+    private final RiderSource riderSource;
+
+    private volatile List<SimulationHandle> handles = Collections.emptyList();
+    private volatile long startTime;
+
+    // Journeys still under way, by the id of the rider riding their current leg
+    private final ConcurrentHashMap<Integer, Journey> journeys = new ConcurrentHashMap<>();
+
+    private final AtomicLong journeysStarted = new AtomicLong();
+    private final AtomicLong transfers = new AtomicLong();
+    private final LatencyHistogram journeyTimes = new LatencyHistogram();
+
+    /**
+     * @param zones from the bottom of the building up. The first starts on
+     *              floor 1, and each of the others starts on the top floor of
+     *              the one below it.
+     * @param TIMEOUT_SECONDS
+     * @param seed every zone's random streams are split off this
+     * @param riderSource riders arriving during the run, on the building's
+     *                    floors, or null if riders are only submitted
+     * @throws InterruptedException
+     */
+    public ZonedBuilding(final List<BuildingZone> zones, final int TIMEOUT_SECONDS,
+                         final long seed, final RiderSource riderSource) throws
+            InterruptedException {
+
+        if (zones == null || zones.isEmpty() || TIMEOUT_SECONDS < 0) {
+            throw new IllegalArgumentException("A zoned building needs zones and a duration");
+        }
+        for (int i = 0; i < zones.size(); i++) {
+            int expectedLowestFloor = i == 0 ? 1 : zones.get(i - 1).getHighestFloor();
+            if (zones.get(i).getLowestFloor() != expectedLowestFloor) {
+                throw new IllegalArgumentException("Zone " + i + " (" + zones.get(i) + ") " +
+                        "should start on floor " + expectedLowestFloor);
+            }
+        }
+
+        this.zones = new ArrayList<>(zones);
+        this.timeoutSeconds = TIMEOUT_SECONDS;
+        this.riderSource = riderSource;
+
+        SplittableRandom root = new SplittableRandom(seed);
+        List<BuildingSimulation> simulations = new ArrayList<>(zones.size());
+        for (int i = 0; i < zones.size(); i++) {
+
+            BuildingZone zone = zones.get(i);
+            BuildingSimulation simulation = new BuildingSimulation(zone.getNumCars(),
+                    new ArrayList<Rider>(), TIMEOUT_SECONDS, zone.getNumFloors(), root
+                    .nextLong());
+            simulation.addCompletedRiderListener(new LegCompleted(i));
+            simulations.add(simulation);
+        }
+        this.simulations = Collections.unmodifiableList(simulations);
+        if (riderSource != null) {
+            riderSource.seedFrom(root.split());
+        }
+    }
+
+    /**
+     * A rider's trip through the building, however many legs it takes
+     */
+    private static class Journey {
+
+        final int destinationFloor;
+        final long requestTime;
+
+        Journey(final int destinationFloor, final long requestTime) {
+            this.destinationFloor = destinationFloor;
+            this.requestTime = requestTime;
+        }
+    }
+
+    /**
+     * Hands a rider who got off at a sky lobby on to the next zone
+     */
+    private class LegCompleted implements CompletedRiderListener {
+
+        private final int zoneIndex;
+
+        LegCompleted(final int zoneIndex) {
+            this.zoneIndex = zoneIndex;
+        }
+
+        @Override
+        public void riderCompleted(final Rider r) {
+
+            Journey journey = journeys.remove(r.riderId);
+            if (journey == null) {
+                return;
+            }
+
+            int floor = zones.get(zoneIndex).toBuildingFloor(r.getDestinationFloor());
+            if (floor == journey.destinationFloor) {
+                journeyTimes.record(r.getAlightTime() - journey.requestTime);
+                return;
+            }
+
+            transfers.incrementAndGet();
+            try {
+                startLeg(floor, journey);
+            } catch (IllegalStateException e) {
+                // The next zone's run is over, so the rider never gets there
+                logger.fine("Rider " + r.riderId + " stranded at floor " + floor);
+            }
+        }
+    }
+
+    public int getNumFloors() {
+        return zones.get(zones.size() - 1).getHighestFloor();
+    }
+
+    public List<BuildingZone> getZones() {
+        return Collections.unmodifiableList(zones);
+    }
+
+    /**
+     * The simulation running each zone, in the same order as the zones
+     *
+     * @return
+     */
+    public List<BuildingSimulation> getZoneSimulations() {
+        return simulations;
+    }
+
+    /**
+     * Starts every zone in real time. Each zone's dispatcher and cars get
+     * threads of their own, or share a pool, according to the given mode.
+     *
+     * @param mode
+     */
+    public synchronized void runSimulation(final CarExecutionMode mode) {
+
+        if (!handles.isEmpty()) {
+            throw new IllegalStateException("The building has already been run");
+        }
+
+        startTime = System.currentTimeMillis();
+        List<SimulationHandle> started = new ArrayList<>(simulations.size());
+        for (BuildingSimulation simulation : simulations) {
+            started.add(simulation.runSimulation(mode));
+        }
+        handles = Collections.unmodifiableList(started);
+        logger.info("Started a building of " + getNumFloors() + " floors in " + zones.size() +
+                " zones: " + zones);
+
+        if (riderSource != null) {
+            Thread feeder = new Thread(new RiderFeeder(), "zoned-rider-feeder");
+            feeder.setDaemon(true);
+            feeder.start();
+        }
+    }
+
+    /**
+     * Brings a rider into the building, on the building's floors, and queues
+     * them for the zone they start in
+     *
+     * @param startFloor
+     * @param destinationFloor
+     * @throws IllegalStateException if the run hasn't started or is over
+     */
+    public void submit(final int startFloor, final int destinationFloor) {
+
+        int numFloors = getNumFloors();
+        if (startFloor < 1 || startFloor > numFloors || destinationFloor < 1 ||
+                destinationFloor > numFloors || startFloor == destinationFloor) {
+            throw new IllegalArgumentException("Invalid trip from floor " + startFloor +
+                    " to " + destinationFloor + " in a building of " + numFloors + " floors");
+        }
+        if (handles.isEmpty()) {
+            throw new IllegalStateException("The building isn't running");
+        }
+
+        journeysStarted.incrementAndGet();
+        try {
+            startLeg(startFloor, new Journey(destinationFloor, System.currentTimeMillis()));
+        } catch (RuntimeException e) {
+            journeysStarted.decrementAndGet();
+            throw e;
+        }
+    }
+
+    /**
+     * Queues a rider for the next leg of their journey: as far as their
+     * destination if the zone they're in goes there, or else the sky lobby
+     * at the end of the zone in the direction they're going
+     *
+     * @param floor where the rider is now
+     * @param journey
+     */
+    private void startLeg(final int floor, final Journey journey) {
+
+        int zoneIndex = zoneFor(floor, journey.destinationFloor);
+        BuildingZone zone = zones.get(zoneIndex);
+
+        int legEnd = journey.destinationFloor;
+        if (!zone.serves(legEnd)) {
+            legEnd = legEnd > floor ? zone.getHighestFloor() : zone.getLowestFloor();
+        }
+
+        Rider r = new Rider(simulations.get(zoneIndex).getRiderStore(), zone.toZoneFloor(floor),
+                zone.toZoneFloor(legEnd));
+        journeys.put(r.riderId, journey);
+        try {
+            handles.get(zoneIndex).submit(r);
+        } catch (RuntimeException e) {
+            journeys.remove(r.riderId);
+            r.release();
+            throw e;
+        }
+    }
+
+    /**
+     * The zone a rider on the given floor rides next. A sky lobby belongs to
+     * the zones above and below it, so that depends on which way they're going.
+     *
+     * @param floor
+     * @param destinationFloor
+     * @return the zone's index
+     */
+    int zoneFor(final int floor, final int destinationFloor) {
+
+        if (destinationFloor > floor) {
+            for (int i = zones.size() - 1; i >= 0; i--) {
+                if (zones.get(i).getLowestFloor() <= floor) {
+                    return i;
+                }
+            }
+        } else {
+            for (int i = 0; i < zones.size(); i++) {
+                if (zones.get(i).getHighestFloor() >= floor) {
+                    return i;
+                }
+            }
+        }
+        throw new IllegalArgumentException("No zone serves floor " + floor);
+    }
+
+    /**
+     * Waits for every zone's run to be over
+     *
+     * @throws InterruptedException
+     */
+    public void awaitCompletion() throws InterruptedException {
+
+        for (SimulationHandle handle : handles) {
+            handle.awaitCompletion();
+        }
+        logger.info("Zoned building finished. " + getSummary());
+    }
+
+    public long getJourneysStarted() {
+        return journeysStarted.get();
+    }
+
+    public long getJourneysCompleted() {
+        return journeyTimes.getCount();
+    }
+
+    /**
+     * How many times a rider changed cars at a sky lobby
+     *
+     * @return
+     */
+    public long getTransfers() {
+        return transfers.get();
+    }
+
+    /**
+     * How long riders took from asking for their first car to getting out of
+     * their last one
+     *
+     * @return
+     */
+    public LatencyHistogram getJourneyTimes() {
+        return journeyTimes;
+    }
+
+    public String getSummary() {
+
+        StringBuilder summary = new StringBuilder();
+        summary.append("Started ").append(getJourneysStarted()).append(" journeys, completed ")
+                .append(getJourneysCompleted()).append(" with ").append(getTransfers())
+                .append(" transfers. Journey time: ").append(journeyTimes.getSummary());
+        for (int i = 0; i < zones.size(); i++) {
+            summary.append(". Zone ").append(i).append(" (").append(zones.get(i)).append("): ")
+                    .append(simulations.get(i).getLatencySummary());
+        }
+        return summary.toString();
+    }
+
+    /**
+     * Brings the riders from the rider source into the building, each at
+     * their arrival time
+     */
+    private class RiderFeeder implements Runnable {
+
+        @Override
+        public void run() {
+
+            long endTime = startTime + timeoutSeconds * 1000L;
+            try {
+                while (riderSource.advance()) {
+
+                    long arrivalTime = startTime + riderSource.getArrivalTime();
+                    if (arrivalTime >= endTime) {
+                        return;
+                    }
+                    long waitMs;
+                    while ((waitMs = arrivalTime - System.currentTimeMillis()) > 0) {
+                        Thread.sleep(waitMs);
+                    }
+                    submit(riderSource.getStartFloor(), riderSource.getDestinationFloor());
+                }
+            } catch (InterruptedException e) {
+
+                logger.info("Rider feeder interrupted");
+            } catch (IllegalStateException e) {
+
+                // A zone's run ended before the rider got there
+            } catch (Throwable e) {
+
+                logger.severe("Caught an issue with the rider feeder");
+                e.printStackTrace();
+            }
+        }
+    }
+}
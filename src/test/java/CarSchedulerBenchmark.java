@@ -0,0 +1,106 @@
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.lang.management.OperatingSystemMXBean;
+import java.lang.management.ThreadMXBean;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Measures how each CarExecutionMode scales with the number of elevators.
+ * <p/>
+ * Every run simulates the same number of riders for the same amount of time,
+ * so with a scheduler that scales, the wall time, CPU time, thread count and
+ * memory should stay flat as the number of cars grows. Memory is the heap
+ * still in use after a full collection at the end of each run.
+ * <p/>
+ * Usage: mvn test-compile && java -cp target/classes:target/test-classes CarSchedulerBenchmark
+ */
+public class CarSchedulerBenchmark {
+
+    static final int[] CAR_COUNTS = {10, 100, 1000, 4000};
+    static final int NUM_FLOORS = 50;
+    static final int NUM_RIDERS = 1000;
+    static final int SIMULATION_SECONDS = 5;
+
+    public static void main(String args[]) throws InterruptedException {
+
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+
+        // The simulation's log handlers write to whatever System.out is when they're built
+        PrintStream out = System.out;
+        System.setOut(new PrintStream(new OutputStream() {
+            @Override
+            public void write(int b) {
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) {
+            }
+        }));
+
+        out.println(String.format("%-15s %6s %10s %10s %8s %10s", "mode", "cars",
+                "wall ms", "cpu ms", "threads", "heap KB"));
+
+        for (CarExecutionMode mode : CarExecutionMode.values()) {
+            for (int cars : CAR_COUNTS) {
+
+                BuildingSimulation simulation = new BuildingSimulation(cars, NUM_RIDERS,
+                        SIMULATION_SECONDS, NUM_FLOORS);
+                quietLogging();
+
+                System.gc();
+                threads.resetPeakThreadCount();
+                long cpuStart = processCpuTimeMs();
+                long wallStart = System.currentTimeMillis();
+
+                simulation.runSimulation(mode).awaitCompletion();
+
+                long wallMs = System.currentTimeMillis() - wallStart;
+                long cpuMs = processCpuTimeMs() - cpuStart;
+                long heapKb = heapUsedAfterGc() / 1024;
+
+                out.println(String.format("%-15s %6d %10d %10d %8d %10d", mode, cars,
+                        wallMs, cpuMs, threads.getPeakThreadCount(), heapKb));
+            }
+        }
+    }
+
+    private static void quietLogging() {
+
+        for (String name : new String[]{"BuildingSimulation.class", "ClosestAcceptElevator" +
+                ".class", "Dispatcher.class", "Rider.class"}) {
+            Logger.getLogger(name).setLevel(Level.WARNING);
+        }
+    }
+
+    /**
+     * Collects, then adds up what each heap pool held right after that
+     * collection. Unlike total minus free memory, this doesn't count garbage.
+     */
+    private static long heapUsedAfterGc() {
+
+        System.gc();
+        long used = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+
+            MemoryUsage afterGc = pool.getCollectionUsage();
+            if (pool.getType() == MemoryType.HEAP && afterGc != null) {
+                used += afterGc.getUsed();
+            }
+        }
+        return used;
+    }
+
+    private static long processCpuTimeMs() {
+
+        OperatingSystemMXBean os = ManagementFactory.getOperatingSystemMXBean();
+        if (os instanceof com.sun.management.OperatingSystemMXBean) {
+            return ((com.sun.management.OperatingSystemMXBean) os).getProcessCpuTime() / 1000000;
+        }
+        return -1;
+    }
+}
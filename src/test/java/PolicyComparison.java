@@ -0,0 +1,75 @@
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Compares every dispatch policy with every way of moving the cars, on the
+ * same workload.
+ * <p/>
+ * Each combination runs as a discrete-event simulation of the same up-peak
+ * morning, with the same seed, so the only thing that differs between rows
+ * is the algorithm.
+ * <p/>
+ * Usage: mvn test-compile && java -cp target/classes:target/test-classes PolicyComparison
+ */
+public class PolicyComparison {
+
+    static final int NUM_ELEVATORS = 8;
+    static final int NUM_FLOORS = 30;
+    static final double PEAK_RIDERS_PER_MINUTE = 120;
+    static final int SIMULATION_SECONDS = 60 * 60;
+    static final long SEED = 42;
+
+    static final DispatchPolicy[] POLICIES = {new ClosestAcceptPolicy(), new
+            DestinationDispatchPolicy(), new EtaDispatchPolicy()};
+
+    public static void main(String args[]) throws InterruptedException {
+
+        // The simulation's log handlers write to whatever System.out is when they're built
+        PrintStream out = System.out;
+        System.setOut(new PrintStream(new OutputStream() {
+            @Override
+            public void write(int b) {
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) {
+            }
+        }));
+
+        out.println(String.format("%-28s %-14s %12s %12s %12s %12s", "policy", "motion",
+                "riders/hour", "mean wait", "p99 wait", "mean trip"));
+
+        for (DispatchPolicy policy : POLICIES) {
+            for (SweepMotion motion : SweepMotion.values()) {
+
+                TrafficGenerator workload = TrafficGenerator.upPeak(NUM_FLOORS,
+                        PEAK_RIDERS_PER_MINUTE, SIMULATION_SECONDS * 1000L, SEED);
+                BuildingSimulation simulation = new BuildingSimulation(NUM_ELEVATORS, workload,
+                        SIMULATION_SECONDS, NUM_FLOORS);
+                quietLogging();
+                simulation.setDispatchPolicy(policy);
+                simulation.setCarMotionStrategy(motion);
+
+                simulation.runDiscreteEventSimulation(SEED);
+
+                LatencyHistogram waitTimes = simulation.getWaitTimes();
+                LatencyHistogram tripTimes = simulation.getTripTimes();
+                double ridersPerHour = tripTimes.getCount() * 3600.0 / SIMULATION_SECONDS;
+                out.println(String.format("%-28s %-14s %12.0f %10.0fms %10dms %10.0fms",
+                        policy.getClass().getSimpleName(), motion, ridersPerHour,
+                        waitTimes.getMean(), waitTimes.getValueAtPercentile(99),
+                        tripTimes.getMean()));
+            }
+        }
+    }
+
+    private static void quietLogging() {
+
+        for (String name : new String[]{"BuildingSimulation.class", "ClosestAcceptElevator" +
+                ".class", "Dispatcher.class"}) {
+            Logger.getLogger(name).setLevel(Level.WARNING);
+        }
+    }
+}
@@ -0,0 +1,46 @@
+import junit.framework.Assert;
+import org.junit.Test;
+
+public class TestCarState {
+
+    @Test
+    public void testPackedStateRoundTrips() {
+
+        Elevator.Direction[] directions = {null, Elevator.Direction.UP, Elevator.Direction.DOWN,
+                Elevator.Direction.NOT_MOVING};
+        int[] floors = {0, 1, 57, CarState.MAX_FLOOR};
+
+        for (Elevator.Direction direction : directions) {
+            for (int floor : floors) {
+                for (int nextFloor : floors) {
+
+                    long state = CarState.pack(floor, direction, nextFloor);
+                    Assert.assertEquals(floor, CarState.floorOf(state));
+                    Assert.assertEquals(nextFloor, CarState.nextFloorOf(state));
+                    Assert.assertEquals(direction, CarState.directionOf(state));
+                }
+
+                long idle = CarState.pack(floor, direction, null);
+                Assert.assertEquals(-1, CarState.nextFloorOf(idle));
+                Assert.assertEquals(floor, CarState.floorOf(idle));
+            }
+        }
+    }
+
+    @Test
+    public void testCarPublishesWhereItIs() throws InterruptedException {
+
+        BuildingSimulation simulation = new BuildingSimulation(1, 0, 20);
+        ClosestAcceptElevator car = simulation.buildElevators().get(0);
+        car.acceptRiderRequest(new Rider(simulation.getRiderStore(), 4, 9));
+
+        // Each step takes the car a floor closer to the rider
+        car.step();
+        car.step();
+
+        long state = car.getState();
+        Assert.assertEquals(2, CarState.floorOf(state));
+        Assert.assertEquals(Elevator.Direction.UP, CarState.directionOf(state));
+        Assert.assertEquals(4, CarState.nextFloorOf(state));
+    }
+}
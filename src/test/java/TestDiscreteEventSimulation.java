@@ -0,0 +1,160 @@
+import junit.framework.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+public class TestDiscreteEventSimulation {
+
+    static final int DEFAULT_NUM_FLOORS = 20;
+    static final long SEED = 42;
+
+    @Test
+    public void testOverloadedElevatorsInVirtualTime() throws InterruptedException {
+
+        final int TOTAL_RIDERS = 65;
+        final int TIMEOUT_SECONDS = 90;
+
+        long wallClockStart = System.currentTimeMillis();
+        BuildingSimulation simulation = new BuildingSimulation(10, TOTAL_RIDERS,
+                TIMEOUT_SECONDS, DEFAULT_NUM_FLOORS);
+        simulation.runDiscreteEventSimulation(SEED);
+        long wallClockMs = System.currentTimeMillis() - wallClockStart;
+
+        Assert.assertEquals("Not all riders were dropped off.", TOTAL_RIDERS,
+                totalRidersTransported(simulation));
+        Assert.assertEquals("Not every trip was timed.", TOTAL_RIDERS,
+                simulation.getTripTimes().getCount());
+        Assert.assertTrue("Riders took less time to arrive than to board",
+                simulation.getTripTimes().getMean() > simulation.getWaitTimes().getMean());
+        Assert.assertTrue("Simulated " + TIMEOUT_SECONDS + "s took " + wallClockMs + "ms",
+                wallClockMs < TIMEOUT_SECONDS * 1000 / 10);
+    }
+
+    @Test
+    public void testSameSeedGivesSameResults() throws InterruptedException {
+
+        final int NUM_ELEVATORS = 4;
+        final int[][] TRIPS = {{1, 20}, {5, 2}, {17, 3}, {9, 10}, {12, 1}, {3, 15}, {20, 8},
+                {6, 7}, {14, 19}, {2, 11}};
+
+        int[] firstRun = runWithTrips(NUM_ELEVATORS, TRIPS);
+        int[] secondRun = runWithTrips(NUM_ELEVATORS, TRIPS);
+
+        int totalRidersTransported = 0;
+        for (int eId = 0; eId < NUM_ELEVATORS; eId++) {
+            Assert.assertEquals("Elevator " + eId + " differed between runs", firstRun[eId],
+                    secondRun[eId]);
+            totalRidersTransported += firstRun[eId];
+        }
+        Assert.assertEquals("Not all riders were dropped off.", TRIPS.length,
+                totalRidersTransported);
+    }
+
+    @Test
+    public void testSameSeedGivesSameRiders() throws InterruptedException {
+
+        final int NUM_RIDERS = 100;
+        final int BATCH_SIZE = 3 * BuildingSimulation.RIDERS_PER_STREAM + 1;
+
+        BuildingSimulation first = new BuildingSimulation(4, NUM_RIDERS, 60,
+                DEFAULT_NUM_FLOORS, SEED);
+        BuildingSimulation second = new BuildingSimulation(4, NUM_RIDERS, 60,
+                DEFAULT_NUM_FLOORS, SEED);
+
+        Assert.assertEquals(tripsOf(new ArrayList<>(first.getUnassignedRiders())),
+                tripsOf(new ArrayList<>(second.getUnassignedRiders())));
+
+        // Drawn in parallel, one chunk per split stream
+        List<Rider> batch = first.manufactureRandomRiders(BATCH_SIZE);
+        Assert.assertEquals(BATCH_SIZE, batch.size());
+        Assert.assertEquals(tripsOf(batch), tripsOf(second.manufactureRandomRiders(BATCH_SIZE)));
+        for (Rider r : batch) {
+            Assert.assertTrue("Rider " + r.riderId + " doesn't go anywhere",
+                    r.getStartFloor() != r.getDestinationFloor());
+        }
+
+        first.runDiscreteEventSimulation(SEED);
+        second.runDiscreteEventSimulation(SEED);
+        for (int eId = 0; eId < 4; eId++) {
+            Assert.assertEquals("Elevator " + eId + " differed between runs",
+                    first.getElevators().get(eId).getTotalRidersTransported(),
+                    second.getElevators().get(eId).getTotalRidersTransported());
+        }
+        Assert.assertEquals(NUM_RIDERS, first.getTripTimes().getCount());
+    }
+
+    @Test
+    public void testIndependentSimulationsInParallel() throws InterruptedException,
+            ExecutionException {
+
+        final int NUM_SIMULATIONS = 8;
+        final int NUM_ELEVATORS = 4;
+        final int[][] TRIPS = {{1, 20}, {5, 2}, {17, 3}, {9, 10}, {12, 1}, {3, 15}, {20, 8},
+                {6, 7}, {14, 19}, {2, 11}};
+
+        int[] expected = runWithTrips(NUM_ELEVATORS, TRIPS);
+
+        ExecutorService execService = Executors.newFixedThreadPool(NUM_SIMULATIONS);
+        List<Future<int[]>> results = new ArrayList<>();
+        for (int i = 0; i < NUM_SIMULATIONS; i++) {
+            results.add(execService.submit(new Callable<int[]>() {
+                @Override
+                public int[] call() throws Exception {
+                    return runWithTrips(NUM_ELEVATORS, TRIPS);
+                }
+            }));
+        }
+        execService.shutdown();
+
+        for (Future<int[]> result : results) {
+            int[] transportedPerElevator = result.get();
+            for (int eId = 0; eId < NUM_ELEVATORS; eId++) {
+                Assert.assertEquals("Elevator " + eId + " was affected by another simulation",
+                        expected[eId], transportedPerElevator[eId]);
+            }
+        }
+    }
+
+    private int[] runWithTrips(final int NUM_ELEVATORS, final int[][] TRIPS)
+            throws InterruptedException {
+
+        List<Rider> riders = new ArrayList<>();
+        for (int[] trip : TRIPS) {
+            riders.add(new Rider(trip[0], trip[1]));
+        }
+
+        BuildingSimulation simulation = new BuildingSimulation(NUM_ELEVATORS, riders, 60,
+                DEFAULT_NUM_FLOORS);
+        simulation.runDiscreteEventSimulation(SEED);
+
+        int[] transportedPerElevator = new int[NUM_ELEVATORS];
+        for (Elevator e : simulation.getElevators()) {
+            transportedPerElevator[e.getId()] = e.getTotalRidersTransported();
+        }
+        return transportedPerElevator;
+    }
+
+    private List<String> tripsOf(final List<Rider> riders) {
+
+        List<String> trips = new ArrayList<>(riders.size());
+        for (Rider r : riders) {
+            trips.add(r.getStartFloor() + ">" + r.getDestinationFloor());
+        }
+        return trips;
+    }
+
+    private int totalRidersTransported(BuildingSimulation simulation) {
+
+        int totalRidersTransported = 0;
+        for (Elevator e : simulation.getElevators()) {
+            totalRidersTransported += e.getTotalRidersTransported();
+        }
+        return totalRidersTransported;
+    }
+}
@@ -0,0 +1,169 @@
+import junit.framework.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Random;
+
+public class TestDispatchPolicies {
+
+    static final int NUM_FLOORS = 20;
+    static final long SEED = 42;
+
+    @Test
+    public void testEveryPolicyDeliversEveryone() throws InterruptedException {
+
+        final int NUM_ELEVATORS = 4;
+        final int[][] TRIPS = {{1, 20}, {5, 2}, {17, 3}, {9, 10}, {12, 1}, {3, 15}, {20, 8},
+                {6, 7}, {14, 19}, {2, 11}, {1, 20}, {1, 20}};
+
+        for (DispatchPolicy policy : new DispatchPolicy[]{new ClosestAcceptPolicy(), new
+                DestinationDispatchPolicy(), new EtaDispatchPolicy(), new EtaDispatchPolicy(2)}) {
+            for (SweepMotion motion : SweepMotion.values()) {
+
+                List<Rider> riders = new ArrayList<>();
+                for (int[] trip : TRIPS) {
+                    riders.add(new Rider(trip[0], trip[1]));
+                }
+
+                BuildingSimulation simulation = new BuildingSimulation(NUM_ELEVATORS, riders,
+                        60, NUM_FLOORS);
+                simulation.setDispatchPolicy(policy);
+                simulation.setCarMotionStrategy(motion);
+                simulation.runDiscreteEventSimulation(SEED);
+
+                Assert.assertEquals(policy.getClass().getSimpleName() + " with " + motion +
+                        " didn't deliver everyone", TRIPS.length, simulation.getTripTimes()
+                        .getCount());
+            }
+        }
+    }
+
+    @Test
+    public void testDestinationDispatchGroupsRidersGoingTheSameWay() throws
+            InterruptedException {
+
+        BuildingSimulation simulation = new BuildingSimulation(4, 0, NUM_FLOORS);
+        simulation.buildElevators();
+        DispatchPolicy policy = new DestinationDispatchPolicy();
+
+        Rider first = new Rider(simulation.getRiderStore(), 1, 15);
+        Elevator firstCar = policy.chooseCar(simulation, first);
+        firstCar.acceptRiderRequest(first);
+
+        Rider second = new Rider(simulation.getRiderStore(), 1, 15);
+        Assert.assertSame("A rider making the same trip should share the car", firstCar,
+                policy.chooseCar(simulation, second));
+    }
+
+    @Test
+    public void testEtaPrefersAnIdleCarOverABusyOneNearby() throws InterruptedException {
+
+        BuildingSimulation simulation = new BuildingSimulation(2, 0, NUM_FLOORS);
+        List<ClosestAcceptElevator> cars = simulation.buildElevators();
+
+        // Car 0 is on its way up to the rider, but stops at every floor first
+        ClosestAcceptElevator busy = cars.get(0);
+        busy.setPosition(5, Elevator.Direction.UP);
+        for (int floor = 6; floor <= 10; floor++) {
+            busy.acceptRiderRequest(new Rider(simulation.getRiderStore(), floor, 20));
+        }
+
+        ClosestAcceptElevator idle = cars.get(1);
+        idle.setPosition(1, null);
+        simulation.getElevatorIndex().update(busy);
+        simulation.getElevatorIndex().update(idle);
+
+        Rider r = new Rider(simulation.getRiderStore(), 12, 2);
+        Assert.assertSame(busy, new ClosestAcceptPolicy().chooseCar(simulation, r));
+        Assert.assertSame(idle, new EtaDispatchPolicy().chooseCar(simulation, r));
+
+        // 7 floors and 5 stops, against 11 floors
+        Assert.assertEquals(7 * BuildingSimulation.MS_PER_FLOOR_CLIMB + 5 * RouteCost
+                .DOOR_CYCLE_MS, busy.estimateTimeToReach(12));
+        Assert.assertEquals(11 * BuildingSimulation.MS_PER_FLOOR_CLIMB, idle
+                .estimateTimeToReach(12));
+    }
+
+    @Test
+    public void testRouteCostKeepsUpWithStops() {
+
+        Random rand = new Random(SEED);
+        BitSet stops = new BitSet();
+        RouteCost routeCost = new RouteCost(stops, NUM_FLOORS, SweepMotion.LOOK);
+
+        for (int round = 0; round < 5000; round++) {
+
+            int floor = rand.nextInt(NUM_FLOORS + 1);
+            if (stops.get(floor)) {
+                stops.clear(floor);
+                routeCost.stopRemoved(floor);
+            } else {
+                stops.set(floor);
+                routeCost.stopAdded(floor);
+            }
+
+            int from = rand.nextInt(NUM_FLOORS + 1);
+            int to = from + rand.nextInt(NUM_FLOORS + 1 - from);
+            Assert.assertEquals("Round " + round, stops.get(from, to + 1).cardinality(),
+                    routeCost.stopsBetween(from, to));
+            Assert.assertEquals(stops.cardinality(), routeCost.getNumStops());
+        }
+    }
+
+    @Test
+    public void testRouteCostTurnsAroundWithTheSweep() {
+
+        final int CURRENT_FLOOR = 10;
+        final int FLOOR_BEHIND = 5;
+        long[] expectedFloors = {(NUM_FLOORS - CURRENT_FLOOR) + (NUM_FLOORS - FLOOR_BEHIND),
+                (15 - CURRENT_FLOOR) + (15 - FLOOR_BEHIND), (15 - CURRENT_FLOOR) + (15 -
+                FLOOR_BEHIND)};
+        long[] expectedStops = {3, 3, 2};
+
+        for (SweepMotion motion : SweepMotion.values()) {
+
+            BitSet stops = new BitSet();
+            RouteCost routeCost = new RouteCost(stops, NUM_FLOORS, motion);
+            for (int floor : new int[]{7, 12, 15}) {
+                stops.set(floor);
+                routeCost.stopAdded(floor);
+            }
+
+            // Up past 12 to the turnaround, then back down, stopping at 7
+            // unless the sweep runs straight past it
+            Assert.assertEquals(motion.toString(), expectedFloors[motion.ordinal()] *
+                    BuildingSimulation.MS_PER_FLOOR_CLIMB + expectedStops[motion.ordinal()] *
+                    RouteCost.DOOR_CYCLE_MS, routeCost.timeToReach(CURRENT_FLOOR, Elevator
+                    .Direction.UP, FLOOR_BEHIND));
+        }
+    }
+
+    @Test
+    public void testSweepsTurnAroundDifferently() {
+
+        final int CURRENT_FLOOR = 10;
+        BitSet stops = new BitSet();
+        stops.set(3);
+        stops.set(7);
+
+        // Going up with every stop below
+        Assert.assertEquals(NUM_FLOORS, SweepMotion.SCAN.nextFloor(CURRENT_FLOOR,
+                Elevator.Direction.UP, stops, NUM_FLOORS));
+        Assert.assertEquals(7, SweepMotion.LOOK.nextFloor(CURRENT_FLOOR,
+                Elevator.Direction.UP, stops, NUM_FLOORS));
+        Assert.assertEquals(3, SweepMotion.CIRCULAR_LOOK.nextFloor(CURRENT_FLOOR,
+                Elevator.Direction.UP, stops, NUM_FLOORS));
+
+        // Stops in the direction of travel come first, whatever the sweep
+        for (SweepMotion motion : SweepMotion.values()) {
+            Assert.assertEquals(motion.toString(), 7, motion.nextFloor(CURRENT_FLOOR,
+                    Elevator.Direction.DOWN, stops, NUM_FLOORS));
+            Assert.assertEquals(motion.toString(), 7, motion.nextFloor(CURRENT_FLOOR,
+                    Elevator.Direction.NOT_MOVING, stops, NUM_FLOORS));
+            Assert.assertEquals(motion.toString(), -1, motion.nextFloor(CURRENT_FLOOR,
+                    Elevator.Direction.UP, new BitSet(), NUM_FLOORS));
+        }
+    }
+}
@@ -0,0 +1,54 @@
+import junit.framework.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+public class TestDispatcher {
+
+    static final int NUM_FLOORS = 20;
+    static final int NUM_RIDERS = 500;
+
+    @Test
+    public void testPendingRidersAreDispatchedInOneBatch() throws InterruptedException {
+
+        // A discrete-event run that is set up but never driven: its clock stands
+        // still at the start, so the run stays on for as long as the test needs
+        BuildingSimulation simulation = new BuildingSimulation(4, 0, 60, NUM_FLOORS, 42);
+        simulation.startDiscreteEventSimulation();
+
+        BlockingQueue<Rider> unassignedRiders = new LinkedBlockingQueue<>();
+        for (int i = 0; i < NUM_RIDERS; i++) {
+            Rider r = simulation.manufactureRandomRider();
+            simulation.getRiderRegistry().arrive(r);
+            unassignedRiders.add(r);
+        }
+
+        Dispatcher dispatcher = new Dispatcher(simulation, unassignedRiders);
+        Thread dispatching = new Thread(dispatcher, "dispatcher");
+        dispatching.start();
+
+        long deadline = System.currentTimeMillis() + 10000;
+        while (dispatcher.getRidersDispatched() < NUM_RIDERS && System.currentTimeMillis() <
+                deadline) {
+            Thread.sleep(10);
+        }
+
+        // One more rider, arriving while the dispatcher waits, is a batch of its own
+        Rider late = simulation.manufactureRandomRider();
+        simulation.getRiderRegistry().arrive(late);
+        unassignedRiders.add(late);
+        while (dispatcher.getRidersDispatched() < NUM_RIDERS + 1 && System.currentTimeMillis() <
+                deadline) {
+            Thread.sleep(10);
+        }
+
+        dispatching.interrupt();
+        dispatching.join();
+
+        Assert.assertEquals(NUM_RIDERS + 1, dispatcher.getRidersDispatched());
+        Assert.assertEquals(2, dispatcher.getBatchesDispatched());
+        Assert.assertEquals(NUM_RIDERS + 1, simulation.getRiderRegistry().getNumberOfRiders(Rider
+                .State.ASSIGNED));
+    }
+}
@@ -2,11 +2,14 @@ import junit.framework.Assert;
 import org.junit.Test;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
-import java.util.concurrent.TimeUnit;
 
 /**
  * Created by aleks on 5/21/16.
@@ -51,15 +54,32 @@ public class TestElevatorCorrectness {
         runElevatorRiderSimulation(TOTAL_ELEVATORS, TOTAL_RIDERS, 10);
     }
 
+    @Test
+    public void testManyElevatorsMultiplexed() throws InterruptedException {
+
+        final int TOTAL_RIDERS = 30;
+        final int TOTAL_ELEVATORS = 200;
+        runElevatorRiderSimulation(TOTAL_ELEVATORS, TOTAL_RIDERS, 10,
+                CarExecutionMode.MULTIPLEXED);
+    }
+
     private void runElevatorRiderSimulation(final int NUM_ELEVATORS, final int NUM_RIDERS,
                                             final int TIMEOUT) throws InterruptedException {
 
+        runElevatorRiderSimulation(NUM_ELEVATORS, NUM_RIDERS, TIMEOUT,
+                CarExecutionMode.THREAD_PER_CAR);
+    }
+
+    private void runElevatorRiderSimulation(final int NUM_ELEVATORS, final int NUM_RIDERS,
+                                            final int TIMEOUT, final CarExecutionMode MODE)
+            throws InterruptedException {
+
         BuildingSimulation simulation = new BuildingSimulation(NUM_ELEVATORS, NUM_RIDERS, TIMEOUT,
                 DEFAULT_NUM_FLOORS);
-        simulation.runSimulation();
+        simulation.runSimulation(MODE).awaitCompletion();
 
         int totalRidersTransported = 0;
-        for (Elevator e : BuildingSimulation.elevators) {
+        for (Elevator e : simulation.getElevators()) {
 
             totalRidersTransported += e.getTotalRidersTransported();
         }
@@ -68,8 +88,7 @@ public class TestElevatorCorrectness {
                 totalRidersTransported);
     }
 
-    //FIXME: Test used to pass. Now it fails. No idea why.
-    //@Test
+    @Test
     public void testAddingRidersInParallel() throws InterruptedException {
 
         final int NUM_INITIAL_RIDERS = 10;
@@ -79,46 +98,150 @@ public class TestElevatorCorrectness {
         final int NUM_ELEVATORS = 15;
         final int NUM_FLOORS = 20;
 
+        // An upper bound, not the test's length: the run is stopped as soon
+        // as every rider has been delivered
         final int TIMEOUT = 150;
 
-        class RiderGenerator implements Runnable {
+        final BuildingSimulation simulation = new BuildingSimulation(NUM_ELEVATORS,
+                NUM_INITIAL_RIDERS, TIMEOUT, NUM_FLOORS);
+        final SimulationHandle handle = simulation.runSimulation();
+
+        // Every client submits half its riders one at a time and half as a batch,
+        // all at once with the others
+        final CountDownLatch go = new CountDownLatch(1);
+        class RiderGenerator implements Callable<Void> {
 
             @Override
-            public void run() {
+            public Void call() throws InterruptedException {
+
+                go.await();
+                List<Rider> batch = new ArrayList<>();
+                for (int i = 0; i < NUM_ADDITIONAL_RIDERS_PER_CLIENT; i++) {
+                    Rider r = simulation.manufactureRandomRider();
+                    if (i % 2 == 0) {
+                        handle.submit(r);
+                    } else {
+                        batch.add(r);
+                    }
+                }
+                handle.submitAll(batch);
+                return null;
+            }
+        }
 
-                BuildingSimulation.addNewRider(NUM_ADDITIONAL_RIDERS_PER_CLIENT);
+        ExecutorService execService = Executors.newFixedThreadPool(NUM_ADDITIONAL_CLIENTS);
+        List<Future<Void>> futureList = new ArrayList<>();
+        for (int clientId = 0; clientId < NUM_ADDITIONAL_CLIENTS; clientId++) {
+            futureList.add(execService.submit(new RiderGenerator()));
+        }
+        go.countDown();
+        for (Future<Void> f : futureList) {
+            try {
+                f.get();
+            } catch (ExecutionException e) {
+                throw new AssertionError(e.getCause());
             }
         }
+        execService.shutdown();
 
-        BuildingSimulation simulation = new BuildingSimulation(NUM_ELEVATORS, NUM_INITIAL_RIDERS,
-                TIMEOUT, NUM_FLOORS);
+        Assert.assertFalse("The run should still be going", handle.isDone());
+        Assert.assertEquals(NUM_ADDITIONAL_RIDERS_PER_CLIENT * NUM_ADDITIONAL_CLIENTS,
+                handle.getRidersSubmitted());
 
-        simulation.runSimulation();
+        final int TOTAL_RIDERS = NUM_INITIAL_RIDERS + NUM_ADDITIONAL_RIDERS_PER_CLIENT *
+                NUM_ADDITIONAL_CLIENTS;
+        while (handle.getRidersDelivered() < TOTAL_RIDERS && !handle.isDone()) {
+            Thread.sleep(50);
+        }
+        long delivered = handle.getRidersDelivered();
+        long inFlight = handle.getRidersInFlight();
+        handle.getCompletion().cancel(true);
 
-        ExecutorService execService = Executors.newFixedThreadPool(NUM_ELEVATORS);
-        List<Future> futureList = new ArrayList<Future>();
-        List<RiderGenerator> riderGenerators = new ArrayList<>();
-        for (int clientId = 0; clientId < NUM_ADDITIONAL_CLIENTS; clientId++) {
-            RiderGenerator rge = new RiderGenerator();
-            riderGenerators.add(rge);
+        Assert.assertEquals("Not all riders were dropped off.", TOTAL_RIDERS, delivered);
+        Assert.assertEquals(0, inFlight);
+    }
+
+    @Test
+    public void testStopsFollowTheStopSet() throws InterruptedException {
 
-            // Start the elevator
-            futureList.add(execService.submit(rge));
+        BuildingSimulation simulation = new BuildingSimulation(1, 0, 60, DEFAULT_NUM_FLOORS);
+        simulation.setCarMotionStrategy(SweepMotion.LOOK);
+        final ClosestAcceptElevator car = simulation.buildElevators().get(0);
+
+        // Who gets off where, and whether the car still stops there afterwards
+        final List<String> dropOffs = new ArrayList<>();
+        simulation.addCompletedRiderListener(new CompletedRiderListener() {
+            @Override
+            public void riderCompleted(final Rider r) {
+                dropOffs.add(r.getDestinationFloor() + "@" + car.getCurrentFloor() + (car
+                        .hasStopAt(car.getCurrentFloor()) ? "+" : ""));
+            }
+        });
+
+        int[][] trips = {{1, 8}, {1, 4}, {1, 8}, {1, 12}, {6, 10}};
+        for (int[] trip : trips) {
+            Rider r = new Rider(simulation.getRiderStore(), trip[0], trip[1]);
+            simulation.getRiderRegistry().arrive(r);
+            car.acceptRiderRequest(r);
         }
 
-        execService.shutdown();
-        Thread.sleep(3000);
-        execService.awaitTermination(TIMEOUT, TimeUnit.SECONDS);
+        // Board at 1, then on up, picking up at 6 on the way. The second
+        // rider off at 8 takes the stop with them.
+        List<Integer> stops = new ArrayList<>();
+        for (int steps = 0; car.hasWork() && steps < 1000; steps++) {
 
-        int totalRidersTransported = 0;
-        for (Elevator e : BuildingSimulation.elevators) {
+            // A step that keeps the car where it is, and takes time, is a stop
+            int floor = car.getCurrentFloor();
+            long busyMs = car.step();
+            if (busyMs > 0 && car.getCurrentFloor() == floor) {
+                stops.add(floor);
+            }
+        }
 
-            totalRidersTransported += e.getTotalRidersTransported();
+        Assert.assertEquals(Arrays.asList(1, 4, 6, 8, 10, 12), stops);
+        Assert.assertEquals(Arrays.asList("4@4", "8@8+", "8@8", "10@10", "12@12"), dropOffs);
+        Assert.assertFalse(car.hasWork());
+        for (int floor = 0; floor <= DEFAULT_NUM_FLOORS; floor++) {
+            Assert.assertFalse("Floor " + floor + " is still a stop", car.hasStopAt(floor));
         }
+    }
 
-        Assert.assertEquals("Not all riders were dropped off.", NUM_INITIAL_RIDERS +
-                        NUM_ADDITIONAL_RIDERS_PER_CLIENT * NUM_ADDITIONAL_CLIENTS,
-                totalRidersTransported);
+    @Test
+    public void testIdleCarWakesAsSoonAsItIsAssigned() throws InterruptedException {
+
+        // Idle cars used to check for riders every 3 seconds
+        final long OLD_POLL_MS = 3000;
+
+        BuildingSimulation simulation = new BuildingSimulation(1, 0, 60, DEFAULT_NUM_FLOORS);
+        SimulationHandle handle = simulation.runSimulation();
+        Elevator car = simulation.getElevators().get(0);
+
+        // Give the car time to find it has nothing to do and park
+        Thread.sleep(OLD_POLL_MS / 2);
+        long parkedState = car.getState();
+        Assert.assertNull(car.getNextFloorToVisit());
+
+        long submittedAt = System.currentTimeMillis();
+        handle.submit(new Rider(simulation.getRiderStore(), DEFAULT_NUM_FLOORS / 2,
+                DEFAULT_NUM_FLOORS));
+        while (car.getState() == parkedState && System.currentTimeMillis() - submittedAt <
+                2 * OLD_POLL_MS) {
+            Thread.sleep(1);
+        }
+        long wokeAfterMs = System.currentTimeMillis() - submittedAt;
+        handle.getCompletion().cancel(true);
+
+        Assert.assertTrue("The car took " + wokeAfterMs + "ms to move", wokeAfterMs <
+                OLD_POLL_MS / 3);
     }
-}
 
+    @Test(expected = IllegalStateException.class)
+    public void testSubmittingAfterTheRunIsOver() throws InterruptedException {
+
+        BuildingSimulation simulation = new BuildingSimulation(1, 0, 0, DEFAULT_NUM_FLOORS);
+        SimulationHandle handle = simulation.runSimulation();
+        handle.awaitCompletion();
+
+        handle.submit(simulation.manufactureRandomRider());
+    }
+}
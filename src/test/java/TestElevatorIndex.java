@@ -0,0 +1,146 @@
+import junit.framework.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+public class TestElevatorIndex {
+
+    static final int NUM_FLOORS = 50;
+    static final int NUM_ELEVATORS = 40;
+
+    @Test
+    public void testMatchesLinearScan() throws InterruptedException {
+
+        Random rand = new Random(7);
+        Elevator.Direction[] directions = {null, Elevator.Direction.UP, Elevator.Direction.DOWN,
+                Elevator.Direction.NOT_MOVING};
+
+        BuildingSimulation simulation = new BuildingSimulation(NUM_ELEVATORS, 0, NUM_FLOORS);
+        List<Elevator> elevators = new ArrayList<>();
+        ElevatorIndex index = new ElevatorIndex(NUM_ELEVATORS);
+        for (int eId = 0; eId < NUM_ELEVATORS; eId++) {
+            elevators.add(new ClosestAcceptElevator(simulation, eId));
+        }
+
+        for (int round = 0; round < 2000; round++) {
+
+            // Move a few cars around, the way they would between two dispatches
+            for (int moves = 0; moves < 5; moves++) {
+                Elevator e = elevators.get(rand.nextInt(NUM_ELEVATORS));
+                e.setPosition(rand.nextInt(NUM_FLOORS + 1), directions[rand.nextInt(directions
+                        .length)]);
+                index.update(e);
+            }
+
+            int floor = rand.nextInt(NUM_FLOORS) + 1;
+            int distanceToBeat = rand.nextInt(2 * NUM_FLOORS) - NUM_FLOORS / 2;
+
+            Assert.assertSame("Round " + round + ", floor " + floor,
+                    linearScan(elevators, floor, distanceToBeat),
+                    index.findClosest(floor, distanceToBeat));
+        }
+    }
+
+    @Test
+    public void testLookupsWhileCarsMove() throws Exception {
+
+        final int NUM_MOVERS = 4;
+        final int MOVES = 200000;
+        final Elevator.Direction[] directions = {Elevator.Direction.UP, Elevator.Direction.DOWN,
+                Elevator.Direction.NOT_MOVING};
+
+        BuildingSimulation simulation = new BuildingSimulation(NUM_MOVERS + 1, 0, NUM_FLOORS);
+        final List<Elevator> elevators = new ArrayList<>();
+        final ElevatorIndex index = new ElevatorIndex(NUM_MOVERS + 1);
+        for (int eId = 0; eId <= NUM_MOVERS; eId++) {
+            elevators.add(new ClosestAcceptElevator(simulation, eId));
+        }
+
+        // Parked for the whole test, so every lookup has a car to find
+        Elevator parked = elevators.get(NUM_MOVERS);
+        parked.setPosition(1, Elevator.Direction.NOT_MOVING);
+        index.update(parked);
+
+        ExecutorService execService = Executors.newFixedThreadPool(NUM_MOVERS + 1);
+        List<Future<?>> movers = new ArrayList<>();
+        for (int m = 0; m < NUM_MOVERS; m++) {
+            final Elevator e = elevators.get(m);
+            movers.add(execService.submit(new Callable<Void>() {
+                @Override
+                public Void call() {
+
+                    Random rand = new Random(e.getId());
+                    for (int i = 0; i < MOVES; i++) {
+                        e.setPosition(rand.nextInt(NUM_FLOORS + 1), directions[rand.nextInt
+                                (directions.length)]);
+                        index.update(e);
+                    }
+                    return null;
+                }
+            }));
+        }
+
+        Future<Integer> reader = execService.submit(new Callable<Integer>() {
+            @Override
+            public Integer call() {
+
+                Random rand = new Random(11);
+                int lookups = 0;
+                while (lookups < MOVES) {
+                    int floor = rand.nextInt(NUM_FLOORS) + 1;
+                    Assert.assertNotNull("Lost the parked car on floor " + floor,
+                            index.findClosest(floor, NUM_FLOORS + 1));
+                    lookups++;
+                }
+                return lookups;
+            }
+        });
+
+        for (Future<?> mover : movers) {
+            mover.get();
+        }
+        Assert.assertEquals(MOVES, reader.get().intValue());
+        execService.shutdown();
+
+        for (int floor = 1; floor <= NUM_FLOORS; floor++) {
+            Assert.assertSame("Floor " + floor + " after the moves",
+                    linearScan(elevators, floor, NUM_FLOORS + 1), index.findClosest(floor,
+                            NUM_FLOORS + 1));
+        }
+    }
+
+    /**
+     * How assignRiderToElevator used to find the closest car: a scan over
+     * every car in id order, keeping the first one that is strictly closer
+     */
+    private Elevator linearScan(List<Elevator> elevators, int floor, int distanceToBeat) {
+
+        Elevator closest = null;
+        int smallestDistance = distanceToBeat;
+        for (Elevator e : elevators) {
+
+            int distance;
+            if (e.travelDirection == Elevator.Direction.UP && e.currentFloor <= floor) {
+                distance = floor - e.currentFloor;
+            } else if (e.travelDirection == Elevator.Direction.DOWN && e.currentFloor >= floor) {
+                distance = e.currentFloor - floor;
+            } else if (e.travelDirection == Elevator.Direction.NOT_MOVING) {
+                distance = Math.abs(e.currentFloor - floor);
+            } else {
+                continue;
+            }
+
+            if (distance < smallestDistance) {
+                smallestDistance = distance;
+                closest = e;
+            }
+        }
+        return closest;
+    }
+}
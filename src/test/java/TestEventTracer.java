@@ -0,0 +1,75 @@
+import junit.framework.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+
+public class TestEventTracer {
+
+    @Test
+    public void testEventsFromManyThreadsAreAllWritten() throws IOException,
+            InterruptedException {
+
+        final int NUM_THREADS = 4;
+        final int EVENTS_PER_THREAD = 50000;
+
+        File traceFile = File.createTempFile("trace", ".bin");
+        traceFile.deleteOnExit();
+
+        final EventTracer tracer = new EventTracer(traceFile, 1 << 20);
+        tracer.start();
+
+        Thread[] threads = new Thread[NUM_THREADS];
+        for (int t = 0; t < NUM_THREADS; t++) {
+            final int carId = t;
+            threads[t] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < EVENTS_PER_THREAD; i++) {
+                        tracer.record(EventTracer.Type.CAR_MOVED, i, carId, EventTracer.NONE,
+                                i % 20);
+                    }
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        tracer.close();
+
+        Assert.assertEquals(0, tracer.getEventsDropped());
+        Assert.assertEquals(NUM_THREADS * EVENTS_PER_THREAD * EventTracer.RECORD_SIZE,
+                traceFile.length());
+    }
+
+    @Test
+    public void testSimulationIsTraced() throws IOException, InterruptedException {
+
+        final int TOTAL_RIDERS = 20;
+
+        File traceFile = File.createTempFile("trace", ".bin");
+        traceFile.deleteOnExit();
+        EventTracer tracer = new EventTracer(traceFile, 1 << 16);
+        tracer.start();
+
+        BuildingSimulation simulation = new BuildingSimulation(3, TOTAL_RIDERS, 60, 20);
+        simulation.setEventTracer(tracer);
+        simulation.runDiscreteEventSimulation(42);
+        tracer.close();
+
+        ByteArrayOutputStream text = new ByteArrayOutputStream();
+        long events = EventTracer.printTrace(traceFile, new PrintStream(text));
+        Assert.assertEquals(tracer.getEventsRecorded(), events);
+
+        int delivered = 0;
+        for (String line : text.toString().split("\n")) {
+            if (line.contains(EventTracer.Type.RIDER_DELIVERED.name())) {
+                delivered++;
+            }
+        }
+        Assert.assertEquals(TOTAL_RIDERS, delivered);
+    }
+}
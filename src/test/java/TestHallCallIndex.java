@@ -0,0 +1,112 @@
+import junit.framework.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+
+public class TestHallCallIndex {
+
+    static final int NUM_FLOORS = 20;
+
+    @Test
+    public void testCarsOnlyBoardTheirOwnRiders() {
+
+        RiderStore store = new RiderStore();
+        Rider upToA = new Rider(store, 5, 9);
+        Rider downToB = new Rider(store, 5, 1);
+        Rider unassigned = new Rider(store, 5, 12);
+        Rider elsewhereToA = new Rider(store, 7, 9);
+
+        RecordingCar a = new RecordingCar(0, upToA, elsewhereToA);
+        RecordingCar b = new RecordingCar(1, downToB);
+
+        HallCallIndex index = new HallCallIndex(NUM_FLOORS);
+        for (Rider r : new Rider[]{upToA, downToB, unassigned, elsewhereToA}) {
+            index.enqueue(r);
+        }
+        Assert.assertEquals(2, index.getNumberWaiting(5, Elevator.Direction.UP));
+        Assert.assertEquals(1, index.getNumberWaiting(5, Elevator.Direction.DOWN));
+        Assert.assertEquals(1, index.getNumberWaiting(7, Elevator.Direction.UP));
+
+        Assert.assertEquals(1, index.boardAssignedRiders(5, a));
+        Assert.assertEquals(Arrays.asList(upToA), a.boarded);
+        Assert.assertEquals(1, index.getNumberWaiting(5, Elevator.Direction.UP));
+        Assert.assertEquals(1, index.getNumberWaiting(5, Elevator.Direction.DOWN));
+
+        Assert.assertEquals(1, index.boardAssignedRiders(5, b));
+        Assert.assertEquals(Arrays.asList(downToB), b.boarded);
+        Assert.assertEquals(0, index.boardAssignedRiders(5, a));
+
+        // The unassigned rider is still waiting, and so is A's rider on floor 7
+        Assert.assertEquals(1, index.getNumberWaiting(5, Elevator.Direction.UP));
+        Assert.assertEquals(0, index.getNumberWaiting(5, Elevator.Direction.DOWN));
+        Assert.assertEquals(1, index.boardAssignedRiders(7, a));
+        Assert.assertEquals(Arrays.asList(upToA, elsewhereToA), a.boarded);
+
+        try {
+            index.boardAssignedRiders(NUM_FLOORS + 1, a);
+            Assert.fail("Boarded on a floor the building doesn't have");
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+
+    /**
+     * A car that has been assigned the given riders, and only notes who boards it
+     */
+    private static class RecordingCar extends Elevator {
+
+        final List<Rider> boarded = new ArrayList<>();
+
+        RecordingCar(final int id, final Rider... assigned) {
+
+            this.id = id;
+            this.riders = new HashSet<>(Arrays.asList(assigned));
+        }
+
+        @Override
+        void riderBoarded(final Rider r) {
+            boarded.add(r);
+        }
+
+        @Override
+        public void acceptRiderRequest(final Rider r) {
+            riders.add(r);
+        }
+
+        @Override
+        public int getNumberOfRiders() {
+            return riders.size();
+        }
+
+        @Override
+        public int getTotalRidersTransported() {
+            return 0;
+        }
+
+        @Override
+        public int getId() {
+            return id;
+        }
+
+        @Override
+        public boolean hasStopAt(final int floor) {
+            return false;
+        }
+
+        @Override
+        public long estimateTimeToReach(final int floor) {
+            return 0;
+        }
+
+        @Override
+        public long estimateDelayFromStopAt(final int floor) {
+            return 0;
+        }
+
+        @Override
+        public void run() {
+        }
+    }
+}
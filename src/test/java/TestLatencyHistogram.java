@@ -0,0 +1,49 @@
+import junit.framework.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+public class TestLatencyHistogram {
+
+    @Test
+    public void testPercentilesWithinPrecision() {
+
+        Random rand = new Random(11);
+        final int NUM_VALUES = 100000;
+
+        LatencyHistogram histogram = new LatencyHistogram();
+        long[] values = new long[NUM_VALUES];
+        for (int i = 0; i < NUM_VALUES; i++) {
+            values[i] = (long) Math.exp(rand.nextDouble() * 16);
+            histogram.record(values[i]);
+        }
+        Arrays.sort(values);
+
+        Assert.assertEquals(NUM_VALUES, histogram.getCount());
+        Assert.assertEquals(values[NUM_VALUES - 1], histogram.getMax());
+
+        // A bucket is 1/2^SUB_BUCKET_BITS of the power of two it's in, about 3%
+        final int PRECISION = 1 << LatencyHistogram.SUB_BUCKET_BITS;
+        for (double percentile : new double[]{1, 50, 90, 99, 99.9, 100}) {
+
+            long exact = values[(int) Math.ceil(percentile / 100 * NUM_VALUES) - 1];
+            long reported = histogram.getValueAtPercentile(percentile);
+            Assert.assertTrue("p" + percentile + " was " + reported + " instead of " + exact,
+                    reported >= exact && reported <= exact + exact / PRECISION);
+        }
+    }
+
+    @Test
+    public void testBucketsCoverEveryValue() {
+
+        for (long value = 0; value < 100000; value++) {
+
+            int index = LatencyHistogram.indexFor(value);
+            Assert.assertTrue(LatencyHistogram.highestValueFor(index) >= value);
+            Assert.assertTrue(LatencyHistogram.highestValueFor(index) - value <= value /
+                    (1 << LatencyHistogram.SUB_BUCKET_BITS));
+            Assert.assertTrue(index == 0 || LatencyHistogram.highestValueFor(index - 1) < value);
+        }
+    }
+}
@@ -0,0 +1,157 @@
+import junit.framework.Assert;
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class TestResultSink {
+
+    static final int NUM_THREADS = 4;
+    static final int TRIPS_PER_THREAD = 500000;
+
+    @Test
+    public void testMillionsOfTripsFromManyThreadsAreAllWritten() throws IOException,
+            InterruptedException {
+
+        File columnarFile = File.createTempFile("trips", ".bin");
+        columnarFile.deleteOnExit();
+        File csvFile = File.createTempFile("trips", ".csv");
+        csvFile.deleteOnExit();
+
+        final ResultSink columnar = new ColumnarResultSink(columnarFile);
+        final ResultSink csv = new CsvResultSink(csvFile);
+        columnar.start();
+        csv.start();
+
+        Thread[] threads = new Thread[NUM_THREADS];
+        for (int t = 0; t < NUM_THREADS; t++) {
+            final int carId = t;
+            threads[t] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < TRIPS_PER_THREAD; i++) {
+                        int riderId = carId * TRIPS_PER_THREAD + i;
+                        columnar.record(riderId, i % 50, 49 - i % 50, carId, i, i + 10L, i +
+                                100L);
+                        csv.record(riderId, i % 50, 49 - i % 50, carId, i, i + 10L, i + 100L);
+                    }
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        columnar.close();
+        csv.close();
+
+        final long totalTrips = (long) NUM_THREADS * TRIPS_PER_THREAD;
+        Assert.assertEquals(totalTrips, columnar.getTripsWritten());
+        Assert.assertEquals(totalTrips, csv.getTripsWritten());
+
+        final AtomicLong riderIdSum = new AtomicLong();
+        final AtomicLong waitSum = new AtomicLong();
+        long tripsRead = ColumnarResultSink.read(columnarFile, new ColumnarResultSink
+                .TripVisitor() {
+            @Override
+            public void trip(int riderId, int startFloor, int destinationFloor, int carId,
+                             long requestTime, long boardTime, long alightTime) {
+
+                Assert.assertEquals(49, startFloor + destinationFloor);
+                Assert.assertEquals(riderId / TRIPS_PER_THREAD, carId);
+                riderIdSum.addAndGet(riderId);
+                waitSum.addAndGet(boardTime - requestTime);
+            }
+        });
+        Assert.assertEquals(totalTrips, tripsRead);
+        Assert.assertEquals(totalTrips * (totalTrips - 1) / 2, riderIdSum.get());
+        Assert.assertEquals(totalTrips * 10, waitSum.get());
+
+        long lines = 0;
+        try (BufferedReader in = new BufferedReader(new FileReader(csvFile))) {
+            Assert.assertEquals(CsvResultSink.HEADER.trim(), in.readLine());
+            Assert.assertEquals(7, in.readLine().split(",").length);
+            lines = 1;
+            while (in.readLine() != null) {
+                lines++;
+            }
+        }
+        Assert.assertEquals(totalTrips, lines);
+    }
+
+    @Test
+    public void testSimulationTripsAreWritten() throws IOException, InterruptedException {
+
+        File columnarFile = File.createTempFile("trips", ".bin");
+        columnarFile.deleteOnExit();
+        ResultSink sink = new ColumnarResultSink(columnarFile, 16);
+        sink.start();
+
+        final BuildingSimulation simulation = new BuildingSimulation(3, 200, 60, 20);
+        simulation.addCompletedRiderListener(sink);
+        simulation.runDiscreteEventSimulation(42);
+        sink.close();
+
+        final AtomicLong tripTimeTotal = new AtomicLong();
+        long tripsRead = ColumnarResultSink.read(columnarFile, new ColumnarResultSink
+                .TripVisitor() {
+            @Override
+            public void trip(int riderId, int startFloor, int destinationFloor, int carId,
+                             long requestTime, long boardTime, long alightTime) {
+
+                Assert.assertTrue(carId >= 0 && carId < simulation.getElevators().size());
+                Assert.assertTrue(requestTime <= boardTime && boardTime < alightTime);
+                tripTimeTotal.addAndGet(alightTime - requestTime);
+            }
+        });
+        Assert.assertTrue(tripsRead > 0);
+        Assert.assertEquals(simulation.getTripTimes().getCount(), tripsRead);
+        Assert.assertEquals(simulation.getTripTimes().getMean(), (double) tripTimeTotal.get() /
+                tripsRead, 0.001);
+    }
+
+    @Test
+    public void testRecordFailsOnceTheWriterCantTakeMore() throws IOException {
+
+        File csvFile = File.createTempFile("trips", ".csv");
+        csvFile.deleteOnExit();
+        ResultSink closedSink = new CsvResultSink(csvFile);
+        closedSink.start();
+        closedSink.close();
+        try {
+            closedSink.record(1, 1, 2, 0, 0, 10, 100);
+            Assert.fail("A closed sink took a trip");
+        } catch (IllegalStateException expected) {
+        }
+
+        // A writer killed by its first trip leaves a ring that never drains
+        ResultSink brokenSink = new ResultSink(csvFile, 4) {
+            @Override
+            void writeTrip(int riderId, int startFloor, int destinationFloor, int carId,
+                           long requestTime, long boardTime, long alightTime) {
+                throw new IllegalArgumentException("Can't encode rider " + riderId);
+            }
+
+            @Override
+            void finish() {
+            }
+        };
+        brokenSink.start();
+        try {
+            for (int i = 0; i < 100; i++) {
+                brokenSink.record(i + 1, 1, 2, 0, 0, 10, 100);
+            }
+            Assert.fail("Trips were taken after the writer died");
+        } catch (IllegalStateException expected) {
+            Assert.assertTrue(expected.getCause() instanceof IllegalArgumentException);
+        }
+        try {
+            brokenSink.close();
+            Assert.fail("Closing hid the writer's failure");
+        } catch (IllegalStateException expected) {
+        }
+    }
+}
@@ -0,0 +1,88 @@
+import junit.framework.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+public class TestRiderRegistry {
+
+    static final int NUM_FLOORS = 20;
+
+    @Test
+    public void testEveryRiderEndsUpDelivered() throws InterruptedException {
+
+        final int TOTAL_RIDERS = 65;
+
+        BuildingSimulation simulation = new BuildingSimulation(10, TOTAL_RIDERS, 90, NUM_FLOORS);
+        RiderRegistry registry = simulation.getRiderRegistry();
+        Assert.assertEquals(TOTAL_RIDERS, registry.getNumberOfRiders(Rider.State.WAITING));
+
+        simulation.runDiscreteEventSimulation(42);
+
+        Assert.assertEquals(TOTAL_RIDERS, registry.getNumberOfRiders(Rider.State.DELIVERED));
+        Assert.assertEquals(0, registry.getNumberInFlight());
+        Assert.assertTrue(registry.getActiveRiders().isEmpty());
+        Assert.assertTrue(registry.getUnassignedRiders().isEmpty());
+    }
+
+    @Test
+    public void testConcurrentProducersAndConsumers() throws Exception {
+
+        final int NUM_PRODUCERS = 8;
+        final int RIDERS_PER_PRODUCER = 5000;
+
+        final BuildingSimulation simulation = new BuildingSimulation(1, 0, NUM_FLOORS);
+        final Elevator car = simulation.buildElevators().get(0);
+        final RiderRegistry registry = simulation.getRiderRegistry();
+
+        ExecutorService execService = Executors.newFixedThreadPool(NUM_PRODUCERS + 1);
+        List<Future<?>> producers = new ArrayList<>();
+        for (int p = 0; p < NUM_PRODUCERS; p++) {
+            producers.add(execService.submit(new Callable<Void>() {
+                @Override
+                public Void call() {
+
+                    for (int i = 0; i < RIDERS_PER_PRODUCER; i++) {
+                        Rider r = simulation.manufactureRandomRider();
+                        registry.arrive(r);
+                        registry.getUnassignedRiders().add(r);
+                    }
+                    return null;
+                }
+            }));
+        }
+
+        // Takes riders off the queue as they arrive and assigns them
+        Future<Integer> consumer = execService.submit(new Callable<Integer>() {
+            @Override
+            public Integer call() throws InterruptedException {
+
+                int assigned = 0;
+                while (assigned < NUM_PRODUCERS * RIDERS_PER_PRODUCER) {
+                    Rider r = registry.getUnassignedRiders().poll(10, TimeUnit.SECONDS);
+                    Assert.assertNotNull("Ran out of riders after " + assigned, r);
+                    registry.assign(r, car);
+                    assigned++;
+                }
+                return assigned;
+            }
+        });
+
+        for (Future<?> producer : producers) {
+            producer.get();
+        }
+        Assert.assertEquals(NUM_PRODUCERS * RIDERS_PER_PRODUCER, consumer.get().intValue());
+        execService.shutdown();
+
+        Assert.assertEquals(0, registry.getNumberOfRiders(Rider.State.WAITING));
+        Assert.assertEquals(NUM_PRODUCERS * RIDERS_PER_PRODUCER, registry.getNumberOfRiders(Rider
+                .State.ASSIGNED));
+        Assert.assertEquals(NUM_PRODUCERS * RIDERS_PER_PRODUCER, registry.getActiveRiders()
+                .size());
+    }
+}
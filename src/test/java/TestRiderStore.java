@@ -0,0 +1,49 @@
+import junit.framework.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class TestRiderStore {
+
+    @Test
+    public void testReleasedSlotsAreReused() {
+
+        RiderStore store = new RiderStore();
+        final int NUM_RIDERS = RiderStore.PAGE_SIZE + 1;
+
+        List<Rider> riders = new ArrayList<>();
+        for (int i = 0; i < NUM_RIDERS; i++) {
+            riders.add(new Rider(store, i % 20 + 1, (i + 7) % 20 + 1));
+        }
+        Assert.assertEquals(NUM_RIDERS, store.size());
+        int capacity = store.capacity();
+
+        for (Rider r : riders) {
+            r.release();
+        }
+        Assert.assertEquals(0, store.size());
+
+        for (int i = 0; i < NUM_RIDERS; i++) {
+            Rider r = new Rider(store, 3, 9);
+            Assert.assertEquals(3, r.getStartFloor());
+            Assert.assertEquals(9, r.getDestinationFloor());
+            Assert.assertEquals(Rider.State.WAITING, r.getState());
+            Assert.assertEquals(RiderStore.NO_ELEVATOR, r.getElevatorId());
+        }
+        Assert.assertEquals("Store grew instead of reusing slots", capacity, store.capacity());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testReleasedRiderCantBeRead() {
+
+        RiderStore store = new RiderStore();
+        Rider released = new Rider(store, 1, 5);
+        released.release();
+
+        // Takes the slot that was just released
+        new Rider(store, 2, 6);
+
+        released.getDestinationFloor();
+    }
+}
@@ -0,0 +1,114 @@
+import junit.framework.Assert;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class TestShardCoordinator {
+
+    static final int NUM_FLOORS = 12;
+    static final int DURATION_SECONDS = 10 * 60;
+
+    @Test
+    public void testShardsGiveTheSameResultsAsInProcessRuns() throws InterruptedException {
+
+        List<ShardSpec> shards = Arrays.asList(
+                new ShardSpec(3, NUM_FLOORS, DURATION_SECONDS, ShardSpec.Traffic.UP_PEAK, 30, 1),
+                new ShardSpec(4, NUM_FLOORS, DURATION_SECONDS, ShardSpec.Traffic.POISSON, 20, 2)
+                        .withDispatchPolicy(EtaDispatchPolicy.class),
+                new ShardSpec(2, NUM_FLOORS, DURATION_SECONDS, ShardSpec.Traffic.DOWN_PEAK, 15, 3)
+                        .withCarMotion(SweepMotion.SCAN));
+
+        final AtomicLong tripsStreamed = new AtomicLong();
+        ShardCoordinator coordinator = new ShardCoordinator(2);
+        List<ShardResult> results = coordinator.run(shards, new ShardCoordinator.TripListener() {
+            @Override
+            public void tripCompleted(int shard, int startFloor, int destinationFloor,
+                                      long waitMs, long tripMs) {
+                tripsStreamed.incrementAndGet();
+            }
+        });
+
+        long totalDelivered = 0;
+        for (int shard = 0; shard < shards.size(); shard++) {
+
+            ShardResult result = results.get(shard);
+            BuildingSimulation expected = runInProcess(shards.get(shard));
+            Assert.assertFalse(result.getSummary(), result.isFailed());
+            Assert.assertEquals(shard, result.getShard());
+            Assert.assertEquals("Shard " + shard + " delivered a different number of riders",
+                    expected.getTripTimes().getCount(), result.getRidersDelivered());
+            Assert.assertEquals(expected.getWaitTimes().getMean(),
+                    result.getWaitTimes().getMean(), 0.001);
+            Assert.assertEquals(1, result.getAttempts());
+            totalDelivered += result.getRidersDelivered();
+        }
+        Assert.assertTrue(totalDelivered > 0);
+        Assert.assertEquals(totalDelivered, tripsStreamed.get());
+        Assert.assertEquals(totalDelivered, coordinator.getTripTimes().getCount());
+        Assert.assertEquals(0, coordinator.getWorkerRestarts());
+    }
+
+    @Test
+    public void testFailedWorkerIsRestarted() throws InterruptedException, IOException {
+
+        File marker = File.createTempFile("crashed", ".marker");
+        Assert.assertTrue(marker.delete());
+
+        ShardSpec crashing = new ShardSpec(2, NUM_FLOORS, DURATION_SECONDS, ShardSpec.Traffic
+                .POISSON, 20, 4).withDispatchPolicy(CrashOncePolicy.class);
+        ShardSpec healthy = new ShardSpec(2, NUM_FLOORS, DURATION_SECONDS, ShardSpec.Traffic
+                .POISSON, 20, 5);
+
+        ShardCoordinator coordinator = new ShardCoordinator(1, 2);
+        coordinator.setWorkerJvmOptions("-D" + CrashOncePolicy.MARKER_PROPERTY + "=" + marker
+                .getAbsolutePath());
+        try {
+            List<ShardResult> results = coordinator.run(Arrays.asList(crashing, healthy), null);
+
+            Assert.assertEquals(1, coordinator.getWorkerRestarts());
+            Assert.assertEquals(2, results.get(0).getAttempts());
+            Assert.assertEquals(1, results.get(1).getAttempts());
+
+            // The rerun starts from scratch, so nothing from the lost attempt is counted twice
+            Assert.assertEquals(runInProcess(crashing.withDispatchPolicy(ClosestAcceptPolicy
+                    .class)).getTripTimes().getCount(), results.get(0).getRidersDelivered());
+            Assert.assertEquals(runInProcess(healthy).getTripTimes().getCount(),
+                    results.get(1).getRidersDelivered());
+        } finally {
+            marker.delete();
+        }
+    }
+
+    private BuildingSimulation runInProcess(final ShardSpec spec) throws InterruptedException {
+
+        BuildingSimulation simulation = spec.newSimulation();
+        simulation.runDiscreteEventSimulation();
+        return simulation;
+    }
+
+    /**
+     * Takes down the worker JVM the first time it dispatches a rider, and
+     * behaves like ClosestAcceptPolicy from then on
+     */
+    public static class CrashOncePolicy extends ClosestAcceptPolicy {
+
+        static final String MARKER_PROPERTY = "test.crashMarker";
+
+        @Override
+        public Elevator chooseCar(final BuildingSimulation simulation, final Rider r) {
+
+            try {
+                if (new File(System.getProperty(MARKER_PROPERTY)).createNewFile()) {
+                    Runtime.getRuntime().halt(1);
+                }
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+            return super.chooseCar(simulation, r);
+        }
+    }
+}
@@ -0,0 +1,106 @@
+import junit.framework.Assert;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+public class TestSimulationCheckpoint {
+
+    static final int NUM_ELEVATORS = 6;
+    static final int NUM_FLOORS = 20;
+    static final int DURATION_SECONDS = 30 * 60;
+    static final long SEED = 42;
+
+    @Test
+    public void testRestoredRunCarriesOnLikeTheOriginal() throws IOException,
+            InterruptedException {
+
+        BuildingSimulation original = new BuildingSimulation(NUM_ELEVATORS, newWorkload(),
+                DURATION_SECONDS, NUM_FLOORS, SEED);
+        original.startDiscreteEventSimulation(SEED);
+        original.runDiscreteEventSimulationUntil(10 * 60 * 1000);
+        long inFlight = original.getRiderRegistry().getNumberInFlight();
+        long delivered = original.getTripTimes().getCount();
+        Assert.assertTrue("Nobody to checkpoint", inFlight > 0 && delivered > 0);
+
+        File checkpoint = File.createTempFile("simulation", ".checkpoint");
+        try {
+            SimulationCheckpoint.write(original, checkpoint);
+            BuildingSimulation restored = SimulationCheckpoint.restore(checkpoint,
+                    newWorkload());
+            BuildingSimulation branch = SimulationCheckpoint.restore(checkpoint,
+                    newWorkload());
+
+            Assert.assertEquals(inFlight, restored.getRiderRegistry().getNumberInFlight());
+            Assert.assertEquals(delivered, restored.getTripTimes().getCount());
+            Assert.assertEquals(original.getRemainingMillis(), restored.getRemainingMillis());
+
+            original.resumeDiscreteEventSimulation();
+            restored.resumeDiscreteEventSimulation();
+            branch.setDispatchPolicy(new EtaDispatchPolicy());
+            branch.resumeDiscreteEventSimulation();
+
+            Assert.assertEquals(original.getTripTimes().getCount(), restored.getTripTimes()
+                    .getCount());
+            Assert.assertEquals(original.getWaitTimes().getMean(), restored.getWaitTimes()
+                    .getMean(), 0.001);
+            Assert.assertEquals(original.getTripTimes().getMax(), restored.getTripTimes()
+                    .getMax());
+            Assert.assertEquals(original.getDispatcher().getRidersDispatched(),
+                    restored.getDispatcher().getRidersDispatched());
+            for (int eId = 0; eId < NUM_ELEVATORS; eId++) {
+                Assert.assertEquals("Elevator " + eId + " differed after the restore",
+                        totalRidersTransported(original, eId),
+                        totalRidersTransported(restored, eId));
+            }
+
+            Assert.assertTrue(branch.getTripTimes().getCount() > delivered);
+        } finally {
+            checkpoint.delete();
+        }
+    }
+
+    @Test
+    public void testOnlyAStartedRunCanBeCheckpointed() throws IOException,
+            InterruptedException {
+
+        BuildingSimulation simulation = new BuildingSimulation(2, new ArrayList<>(Arrays
+                .asList(new Rider(1, 5), new Rider(7, 2))), 60, NUM_FLOORS, SEED);
+        File checkpoint = File.createTempFile("simulation", ".checkpoint");
+        try {
+            try {
+                SimulationCheckpoint.write(simulation, checkpoint);
+                Assert.fail("Checkpointed a simulation that never ran");
+            } catch (IllegalStateException e) {
+                // expected
+            }
+
+            simulation.startDiscreteEventSimulation(SEED);
+            try {
+                SimulationCheckpoint.write(simulation, checkpoint);
+                Assert.fail("Checkpointed a run before its start");
+            } catch (IllegalStateException e) {
+                // expected
+            }
+
+            simulation.runDiscreteEventSimulationUntil(0);
+            SimulationCheckpoint.write(simulation, checkpoint);
+            BuildingSimulation restored = SimulationCheckpoint.restore(checkpoint, null);
+            restored.resumeDiscreteEventSimulation();
+            Assert.assertEquals(2, restored.getTripTimes().getCount());
+        } finally {
+            checkpoint.delete();
+        }
+    }
+
+    private TrafficGenerator newWorkload() {
+        return TrafficGenerator.upPeak(NUM_FLOORS, 120, DURATION_SECONDS * 1000L, SEED);
+    }
+
+    private int totalRidersTransported(final BuildingSimulation simulation, final int eId) {
+        return ((ClosestAcceptElevator) simulation.getElevators().get(eId))
+                .getTotalRidersTransported();
+    }
+}
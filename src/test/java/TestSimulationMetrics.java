@@ -0,0 +1,69 @@
+import junit.framework.Assert;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+public class TestSimulationMetrics {
+
+    static final int NUM_ELEVATORS = 3;
+    static final int NUM_FLOORS = 20;
+
+    @Test
+    public void testRunIsCountedAndPublished() throws InterruptedException, JMException {
+
+        BuildingSimulation simulation = new BuildingSimulation(NUM_ELEVATORS, 100, 60,
+                NUM_FLOORS, 42);
+        SimulationMetrics metrics = new SimulationMetrics(simulation, "test");
+        simulation.setMetrics(metrics);
+        metrics.registerMBeans();
+        try {
+            simulation.runDiscreteEventSimulation(42);
+
+            long delivered = simulation.getTripTimes().getCount();
+            Assert.assertTrue(delivered > 0);
+            Assert.assertEquals(100, metrics.getRidersRequested());
+            Assert.assertEquals(simulation.getDispatcher().getRidersDispatched(), metrics
+                    .getRidersDispatched());
+            Assert.assertEquals(simulation.getWaitTimes().getCount(), metrics
+                    .getRidersBoarded());
+            Assert.assertEquals(delivered, metrics.getRidersDelivered());
+            Assert.assertTrue(metrics.getStops() > 0 && metrics.getStopNanos() > 0);
+            Assert.assertTrue(metrics.getNextDestinationCalls() > 0);
+            Assert.assertEquals(metrics.getRidersDispatched(), metrics.getLockWaits());
+
+            long deliveredByCars = 0;
+            for (int id = 0; id < NUM_ELEVATORS; id++) {
+                Assert.assertEquals(((ClosestAcceptElevator) simulation.getElevators().get(id))
+                        .getTotalRidersTransported(), metrics.getCar(id).getRidersDelivered());
+                deliveredByCars += metrics.getCar(id).getRidersDelivered();
+            }
+            Assert.assertEquals(delivered, deliveredByCars);
+
+            int waiting = 0;
+            for (int floorWaiting : metrics.getWaitingRidersPerFloor()) {
+                waiting += floorWaiting;
+            }
+            RiderRegistry riders = simulation.getRiderRegistry();
+            Assert.assertEquals(riders.getNumberOfRiders(Rider.State.WAITING) + riders
+                    .getNumberOfRiders(Rider.State.ASSIGNED), waiting);
+
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            Assert.assertEquals(delivered, server.getAttribute(new ObjectName(SimulationMetrics
+                    .DOMAIN + ":type=Building,name=test"), "RidersDelivered"));
+            Assert.assertEquals(metrics.getCar(1).getFloorsTravelled(), server.getAttribute(
+                    new ObjectName(SimulationMetrics.DOMAIN + ":type=Car,building=test,id=1"),
+                    "FloorsTravelled"));
+
+            String dump = metrics.getDump();
+            Assert.assertTrue(dump, dump.contains("delivered=" + delivered));
+            Assert.assertTrue(dump, dump.contains(SimulationMetrics.Phase.STOP.name()));
+        } finally {
+            metrics.close();
+        }
+        Assert.assertTrue(ManagementFactory.getPlatformMBeanServer().queryNames(new ObjectName(
+                SimulationMetrics.DOMAIN + ":*"), null).isEmpty());
+    }
+}
@@ -0,0 +1,120 @@
+import junit.framework.Assert;
+import org.junit.Test;
+
+public class TestTrafficGenerator {
+
+    static final int NUM_FLOORS = 20;
+    static final long SEED = 42;
+
+    @Test
+    public void testPoissonArrivalRate() {
+
+        final double RIDERS_PER_MINUTE = 600;
+        final long DURATION_MS = 60 * 60000;
+
+        TrafficGenerator generator = TrafficGenerator.poisson(NUM_FLOORS, RIDERS_PER_MINUTE,
+                DURATION_MS, SEED);
+
+        long arrivals = 0;
+        long lastArrivalTime = 0;
+        while (generator.advance()) {
+
+            Assert.assertTrue(generator.getArrivalTime() >= lastArrivalTime);
+            Assert.assertTrue(generator.getArrivalTime() < DURATION_MS);
+            Assert.assertTrue(generator.getStartFloor() != generator.getDestinationFloor());
+            lastArrivalTime = generator.getArrivalTime();
+            arrivals++;
+        }
+
+        // 36000 expected, and the standard deviation is about 190
+        Assert.assertTrue("Got " + arrivals + " arrivals", Math.abs(arrivals - 36000) < 1000);
+    }
+
+    @Test
+    public void testUpPeakStartsAtTheLobbyAndRampsUp() {
+
+        final long DURATION_MS = 80 * 60000;
+
+        TrafficGenerator generator = TrafficGenerator.upPeak(NUM_FLOORS, 100, DURATION_MS,
+                SEED);
+
+        long firstTenMinutes = 0;
+        long middleTenMinutes = 0;
+        while (generator.advance()) {
+
+            Assert.assertEquals(OriginDestinationMatrix.LOBBY, generator.getStartFloor());
+            if (generator.getArrivalTime() < 10 * 60000) {
+                firstTenMinutes++;
+            } else if (generator.getArrivalTime() >= 35 * 60000 && generator.getArrivalTime()
+                    < 45 * 60000) {
+                middleTenMinutes++;
+            }
+        }
+
+        // 250 and 1000 expected
+        Assert.assertTrue(firstTenMinutes + " vs " + middleTenMinutes,
+                firstTenMinutes * 3 < middleTenMinutes);
+    }
+
+    @Test
+    public void testMemoryFollowsRidersInFlight() throws InterruptedException {
+
+        final int TIMEOUT_SECONDS = 60 * 60;
+
+        BuildingSimulation simulation = new BuildingSimulation(8, TrafficGenerator.lunch
+                (NUM_FLOORS, 60, TIMEOUT_SECONDS * 1000, SEED), TIMEOUT_SECONDS, NUM_FLOORS);
+        simulation.startDiscreteEventSimulation(SEED);
+
+        // Pause every ten minutes while riders are still in the building: the
+        // store only ever holds the ones in flight
+        int maxStored = 0;
+        for (long elapsedMs = 10 * 60000; elapsedMs < TIMEOUT_SECONDS * 1000; elapsedMs += 10 *
+                60000) {
+
+            simulation.runDiscreteEventSimulationUntil(elapsedMs);
+            int stored = simulation.getRiderStore().size();
+            Assert.assertEquals(simulation.getActiveRiders().size(), stored);
+            maxStored = Math.max(maxStored, stored);
+        }
+        Assert.assertTrue("Held " + maxStored + " riders at once", maxStored > 0 && maxStored <
+                100);
+
+        simulation.resumeDiscreteEventSimulation();
+        long delivered = simulation.getTripTimes().getCount();
+        Assert.assertTrue("Only " + delivered + " riders were delivered", delivered > 1500);
+        Assert.assertEquals(0, simulation.getRiderStore().size());
+    }
+
+    @Test
+    public void testShortPeaksAreFlat() {
+
+        for (long durationMs = 1; durationMs <= 16; durationMs++) {
+
+            RateCurve curve = TrafficGenerator.peakCurve(60, durationMs);
+            Assert.assertEquals(durationMs, curve.getDuration());
+            Assert.assertEquals(durationMs < 8 ? 1.0 : 0.25, curve.getRate(0) / curve
+                    .getMaxRate(), 1e-9);
+        }
+    }
+
+    @Test
+    public void testSimulationSeedRepeatsTheTraffic() throws InterruptedException {
+
+        final int TIMEOUT_SECONDS = 20 * 60;
+
+        long[] tripCounts = new long[2];
+        double[] meanWaits = new double[2];
+        for (int run = 0; run < 2; run++) {
+
+            BuildingSimulation simulation = new BuildingSimulation(4, TrafficGenerator.upPeak
+                    (NUM_FLOORS, 60, TIMEOUT_SECONDS * 1000), TIMEOUT_SECONDS, NUM_FLOORS, SEED);
+            simulation.runDiscreteEventSimulation();
+            tripCounts[run] = simulation.getTripTimes().getCount();
+            meanWaits[run] = simulation.getWaitTimes().getMean();
+        }
+
+        Assert.assertTrue(tripCounts[0] > 0);
+        Assert.assertEquals(tripCounts[0], tripCounts[1]);
+        Assert.assertEquals(meanWaits[0], meanWaits[1], 0.0);
+    }
+}
@@ -0,0 +1,108 @@
+import junit.framework.Assert;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+
+public class TestWorkloadReplay {
+
+    static final int NUM_FLOORS = 20;
+    static final int NUM_ELEVATORS = 4;
+    static final long SEED = 42;
+
+    @Test
+    public void testTripsRoundTrip() throws IOException {
+
+        final int NUM_TRIPS = 10000;
+
+        File traceFile = File.createTempFile("workload", ".bin");
+        traceFile.deleteOnExit();
+        try (WorkloadRecorder recorder = new WorkloadRecorder(traceFile)) {
+            for (int i = 0; i < NUM_TRIPS; i++) {
+                recorder.record(i * 3, i % NUM_FLOORS + 1, (i + 5) % NUM_FLOORS + 1);
+            }
+        }
+
+        try (WorkloadReplay replay = new WorkloadReplay(traceFile)) {
+
+            Assert.assertEquals(NUM_TRIPS, replay.getNumTrips());
+            for (int i = 0; i < NUM_TRIPS; i++) {
+                Assert.assertTrue(replay.advance());
+                Assert.assertEquals(i * 3, replay.getArrivalTime());
+                Assert.assertEquals(i % NUM_FLOORS + 1, replay.getStartFloor());
+                Assert.assertEquals((i + 5) % NUM_FLOORS + 1, replay.getDestinationFloor());
+            }
+            Assert.assertFalse(replay.advance());
+        }
+    }
+
+    @Test
+    public void testReplaysSeeTheRecordedTraffic() throws IOException, InterruptedException {
+
+        final int TOTAL_RIDERS = 30;
+
+        File traceFile = File.createTempFile("workload", ".bin");
+        traceFile.deleteOnExit();
+        try (WorkloadRecorder recorder = new WorkloadRecorder(traceFile)) {
+
+            BuildingSimulation recorded = new BuildingSimulation(NUM_ELEVATORS, TOTAL_RIDERS,
+                    60, NUM_FLOORS);
+            recorded.setWorkloadRecorder(recorder);
+            recorded.runDiscreteEventSimulation(SEED);
+            Assert.assertEquals(TOTAL_RIDERS, recorder.getTripsRecorded());
+        }
+
+        int[] firstReplay = replay(traceFile);
+        int[] secondReplay = replay(traceFile);
+
+        int totalRidersTransported = 0;
+        for (int eId = 0; eId < NUM_ELEVATORS; eId++) {
+            Assert.assertEquals("Elevator " + eId + " differed between replays",
+                    firstReplay[eId], secondReplay[eId]);
+            totalRidersTransported += firstReplay[eId];
+        }
+        Assert.assertEquals("Not all riders were dropped off.", TOTAL_RIDERS,
+                totalRidersTransported);
+    }
+
+    @Test
+    public void testRealTimeReplay() throws IOException, InterruptedException {
+
+        final int TOTAL_RIDERS = 8;
+        final int FLOORS = 10;
+
+        File traceFile = File.createTempFile("workload", ".bin");
+        traceFile.deleteOnExit();
+        try (WorkloadRecorder recorder = new WorkloadRecorder(traceFile)) {
+            for (int i = 0; i < TOTAL_RIDERS; i++) {
+                recorder.record(i * 100, i % FLOORS + 1, (i + 4) % FLOORS + 1);
+            }
+        }
+
+        try (WorkloadReplay replay = new WorkloadReplay(traceFile)) {
+
+            BuildingSimulation simulation = new BuildingSimulation(NUM_ELEVATORS, replay, 8,
+                    FLOORS);
+            simulation.runSimulation().awaitCompletion();
+
+            Assert.assertEquals("Not all riders were dropped off.", TOTAL_RIDERS,
+                    simulation.getTripTimes().getCount());
+        }
+    }
+
+    private int[] replay(final File traceFile) throws IOException, InterruptedException {
+
+        try (WorkloadReplay replay = new WorkloadReplay(traceFile)) {
+
+            BuildingSimulation simulation = new BuildingSimulation(NUM_ELEVATORS, replay, 60,
+                    NUM_FLOORS);
+            simulation.runDiscreteEventSimulation(SEED);
+
+            int[] transportedPerElevator = new int[NUM_ELEVATORS];
+            for (Elevator e : simulation.getElevators()) {
+                transportedPerElevator[e.getId()] = e.getTotalRidersTransported();
+            }
+            return transportedPerElevator;
+        }
+    }
+}
@@ -0,0 +1,74 @@
+import junit.framework.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+public class TestZonedBuilding {
+
+    static final int TIMEOUT_SECONDS = 15;
+
+    // Floors 1-10, then a sky lobby on 10 for floors 10-20, then one on 20 for 20-30
+    static final List<BuildingZone> ZONES = Arrays.asList(new BuildingZone(1, 10, 2),
+            new BuildingZone(10, 20, 2), new BuildingZone(20, 30, 2));
+
+    @Test
+    public void testRidersChangeCarsAtSkyLobbies() throws InterruptedException {
+
+        // start floor, destination floor, legs in zones 0, 1 and 2
+        int[][] trips = {
+                {1, 30, 1, 1, 1},
+                {28, 2, 1, 1, 1},
+                {12, 18, 0, 1, 0},
+                {10, 15, 0, 1, 0},
+                {10, 5, 1, 0, 0},
+                {5, 15, 1, 1, 0},
+                {20, 1, 1, 1, 0},
+                {25, 29, 0, 0, 1}};
+
+        ZonedBuilding building = new ZonedBuilding(ZONES, TIMEOUT_SECONDS, 42, null);
+        building.runSimulation(CarExecutionMode.THREAD_PER_CAR);
+
+        int[] expectedLegs = new int[ZONES.size()];
+        for (int[] trip : trips) {
+            building.submit(trip[0], trip[1]);
+            for (int zone = 0; zone < ZONES.size(); zone++) {
+                expectedLegs[zone] += trip[2 + zone];
+            }
+        }
+        building.awaitCompletion();
+
+        Assert.assertEquals(trips.length, building.getJourneysStarted());
+        Assert.assertEquals(building.getSummary(), trips.length, building
+                .getJourneysCompleted());
+
+        int totalLegs = 0;
+        for (int zone = 0; zone < ZONES.size(); zone++) {
+            BuildingSimulation simulation = building.getZoneSimulations().get(zone);
+            Assert.assertEquals("Zone " + zone + " carried a different number of legs",
+                    expectedLegs[zone], simulation.getTripTimes().getCount());
+            totalLegs += expectedLegs[zone];
+        }
+        Assert.assertEquals(totalLegs - trips.length, building.getTransfers());
+    }
+
+    @Test
+    public void testRidersOnASkyLobbyRideTowardsTheirDestination() throws InterruptedException {
+
+        ZonedBuilding building = new ZonedBuilding(ZONES, TIMEOUT_SECONDS, 42, null);
+        Assert.assertEquals(30, building.getNumFloors());
+        Assert.assertEquals(1, building.zoneFor(10, 11));
+        Assert.assertEquals(0, building.zoneFor(10, 9));
+        Assert.assertEquals(2, building.zoneFor(20, 30));
+        Assert.assertEquals(1, building.zoneFor(20, 1));
+        Assert.assertEquals(0, building.zoneFor(1, 30));
+        Assert.assertEquals(2, building.zoneFor(30, 1));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testZonesMustMeetAtSkyLobbies() throws InterruptedException {
+
+        new ZonedBuilding(Arrays.asList(new BuildingZone(1, 10, 2), new BuildingZone(11, 20,
+                2)), TIMEOUT_SECONDS, 42, null);
+    }
+}